@@ -42,6 +42,20 @@ application {
     mainClass.set("org.chess.web.Main")
 }
 
+// Partidas engine contra engine: ./gradlew app:selfPlay -PselfPlayArgs="100 2"
+tasks.register<JavaExec>("selfPlay") {
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("org.chess.engine.SelfPlay")
+    args = (project.findProperty("selfPlayArgs") as String?)?.split(" ") ?: listOf()
+}
+
+// Vazão da notação de posições: ./gradlew app:notationBenchmark -PnotationBenchmarkArgs="2000 2"
+tasks.register<JavaExec>("notationBenchmark") {
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("org.chess.board.PositionNotationBenchmark")
+    args = (project.findProperty("notationBenchmarkArgs") as String?)?.split(" ") ?: listOf()
+}
+
 tasks.test {
     useJUnitPlatform()
     testLogging {
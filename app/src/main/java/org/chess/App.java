@@ -1,9 +1,15 @@
 package org.chess;
 
+import org.chess.board.BinaryGameSerializer;
 import org.chess.board.Board;
+import org.chess.board.Ply;
 import org.chess.pieces.Piece;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.io.*;
 
 /**
@@ -18,30 +24,63 @@ import java.io.*;
  * Verde começa o jogo.
  */
 public class App {
+    // Tempo padrão: 10 minutos por jogador (em nanosegundos)
+    public static final long DEFAULT_TIME_NANOSECS = 10L * 60L * 1000000000L;
+
     private Board board;
     private Map<Color, Player> players;
     private Color currentTurn;
     private boolean gameOver;
     private List<Move> gameHistory;
+    // Um listener pode se remover enquanto é avisado (por exemplo quando o jogo termina)
+    private final List<Consumer<Move>> moveListeners = new CopyOnWriteArrayList<>();
+    // Registros dos movimentos desfeitos, do mais recente para o mais antigo.
+    // Guardam a peça de cada promoção, que o redo põe de volta no tabuleiro
+    private final Deque<Ply> redoStack = new ArrayDeque<>();
+    // Jogo completo sendo refeito depois de um carregamento que só trouxe a
+    // posição atual (ver replaceGame); null quando o histórico está completo
+    private CompletableFuture<App> pendingHistory;
+    // Peças da posição carregada e as do jogo completo na mesma casa, para os
+    // lances escolhidos antes de o jogo completo ser instalado
+    private Map<Piece, Piece> previewPieces = Collections.emptyMap();
+    // O jogo de antes de um carregamento com o histórico pendente, que volta se
+    // o histórico não puder ser refeito
+    private ReplacedGame replacedGame;
+
+    private record ReplacedGame(Board board, Map<Color, Player> players, Color currentTurn, boolean gameOver,
+            List<Move> gameHistory) {
+    }
 
     public App() {
         initializeGame();
     }
 
+    /**
+     * Jogo já em andamento, por exemplo reconstruído por um importador. O
+     * tabuleiro deve ter as peças dos jogadores; o relógio de quem joga volta a
+     * correr.
+     */
+    public App(Board board, Map<Color, Player> players, Color currentTurn, boolean gameOver) {
+        this.board = board;
+        this.players = new EnumMap<>(players);
+        this.currentTurn = currentTurn;
+        this.gameOver = gameOver;
+        this.gameHistory = new ArrayList<>(board.history.getMoves());
+        if (!gameOver)
+            this.players.get(currentTurn).clock.resume();
+    }
+
     /**
      * Inicializa o jogo: cria jogadores, posiciona peças e cria o tabuleiro.
      */
     private void initializeGame() {
-        // Tempo padrão: 10 minutos por jogador (em nanosegundos)
-        long defaultTime = 10L * 60L * 1000000000L;
-
         // Criar estado inicial do tabuleiro
         Map<Pos, Piece> initialState = new HashMap<>();
         players = new EnumMap<>(Color.class);
 
         // Criar cada jogador e posicionar suas peças
         for (Color color : Color.values()) {
-            Clock clock = new Clock(defaultTime);
+            Clock clock = new Clock(DEFAULT_TIME_NANOSECS);
             Player player = new Player(clock, color);
             players.put(color, player);
 
@@ -60,6 +99,11 @@ public class App {
         currentTurn = Color.GREEN;
         gameOver = false;
         gameHistory = new ArrayList<>();
+        redoStack.clear();
+        pendingHistory = null;
+        previewPieces = Collections.emptyMap();
+        replacedGame = null;
+        players.get(currentTurn).clock.resume();
     }
 
     public Color getCurrentTurn() {
@@ -83,23 +127,114 @@ public class App {
 
     public void resetGame() {
         initializeGame();
+        notifyListeners(null);
     }
 
     public void doMove(Move move) {
+        awaitHistory();
+        play(ownMove(move), null);
+        redoStack.clear();
+    }
+
+    /**
+     * Desfaz o último movimento, em tempo constante: restaura as peças, o turno e
+     * os relógios de antes do movimento. Se eles não são conhecidos (lances de
+     * um jogo carregado), os relógios ficam como estão.
+     *
+     * @return o movimento desfeito, ou null se não há o que desfazer.
+     */
+    public Move undo() {
+        awaitHistory();
+        Ply ply = board.history.getLastPly();
+        if (ply == null)
+            return null;
+        Move move = board.undo();
+        gameHistory.remove(gameHistory.size() - 1);
+        redoStack.push(ply);
+        currentTurn = move.piece().color;
+        gameOver = false;
+        for (Player player : players.values())
+            player.clock.pause();
+        long[] clockTimes = ply.getClockTimes();
+        if (clockTimes != null)
+            for (Player player : players.values())
+                player.clock.setTimeLeftNanosecs(clockTimes[player.color.ordinal()]);
+        players.get(currentTurn).clock.resume();
+        notifyListeners(move);
+        return move;
+    }
+
+    /**
+     * Refaz o último movimento desfeito. Uma promoção refeita volta com a mesma
+     * peça, então os lances desfeitos da peça promovida também podem ser refeitos.
+     *
+     * @return o movimento refeito, ou null se não há o que refazer.
+     */
+    public Move redo() {
+        awaitHistory();
+        Ply ply = redoStack.peek();
+        if (ply == null)
+            return null;
+        play(ply.getMove(), ply.getPromotedPiece());
+        redoStack.pop();
+        return ply.getMove();
+    }
+
+    /* `promoted`: a peça de uma promoção refeita, ou null para uma nova. */
+    private void play(Move move, Piece promoted) {
+        if (gameOver)
+            throw new IllegalArgumentException("Game is over.");
         if (currentTurn != move.piece().color)
             throw new IllegalArgumentException("It's not your turn.");
         Clock clock = players.get(currentTurn).clock;
-        if (clock.getTimeLeftNanosecs() < 0)
+        if (clock.getTimeLeftNanosecs() <= 0)
             throw new IllegalArgumentException("Time is over.");
-        board.doMove(move);
+        long[] clockTimes = new long[Color.values().length];
+        for (Player player : players.values())
+            clockTimes[player.color.ordinal()] = player.clock.getTimeLeftNanosecs();
+        board.doMove(move, promoted);
+        board.history.getLastPly().setClockTimes(clockTimes);
         clock.pause();
         gameHistory.add(move); // Adicionar ao histórico
+        // Pula os jogadores sem movimentos (eliminados ou em xeque-mate)
+        Color mover = currentTurn;
         currentTurn = currentTurn.getLeftColor();
-        if (board.isCheckmate(currentTurn)) {
+        while (currentTurn != mover && board.isCheckmate(currentTurn)) {
             board.remove(currentTurn);
             currentTurn = currentTurn.getLeftColor();
         }
-        players.get(currentTurn).clock.resume();
+        // O jogo acaba quando resta apenas um jogador
+        gameOver = currentTurn == mover || !board.isInGame(currentTurn);
+        if (!gameOver)
+            players.get(currentTurn).clock.resume();
+        notifyListeners(move);
+    }
+
+    private void notifyListeners(Move move) {
+        for (Consumer<Move> listener : moveListeners)
+            listener.accept(move);
+    }
+
+    /**
+     * Registra um listener chamado sempre que a posição muda (doMove, undo e
+     * redo), na mesma thread que fez a mudança. Quando o jogo inteiro é trocado
+     * (resetGame e loadGame), o movimento passado é null.
+     */
+    public void addMoveListener(Consumer<Move> listener) {
+        moveListeners.add(listener);
+    }
+
+    public void removeMoveListener(Consumer<Move> listener) {
+        moveListeners.remove(listener);
+    }
+
+    /**
+     * Retorna uma cópia independente do tabuleiro atual, que pode ser usada em
+     * outra thread (por exemplo, pela engine).
+     */
+    public Board getBoardSnapshot() {
+        awaitHistory();
+        return board.copy();
     }
 
     public Player getPlayer(Color color) {
@@ -107,13 +242,32 @@ public class App {
     }
 
     public List<Move> getGameHistory() {
+        awaitHistory();
         return new ArrayList<>(gameHistory);
     }
 
+    /** Número de lances do jogo, sem copiar o histórico. */
+    public int getPlyCount() {
+        awaitHistory();
+        return gameHistory.size();
+    }
+
+    /** Hash da posição das peças (ver `Board.getPositionHash`), sem copiar o tabuleiro. */
+    public long getPositionHash() {
+        return board.getPositionHash();
+    }
+
+    /** Registro do último lance (casa de origem, captura...), ou null. */
+    public Ply getLastPly() {
+        awaitHistory();
+        return board.history.getLastPly();
+    }
+
     // ===== MÉTODOS DE PERSISTÊNCIA =====
 
     /**
-     * Salva o estado atual do jogo em um arquivo
+     * Salva o estado atual do jogo em um arquivo, no formato de
+     * BinaryGameSerializer.
      */
     public boolean saveGame(String gameName) {
         try {
@@ -124,24 +278,8 @@ public class App {
 
             File saveFile = new File(saveDir, gameName + ".chess");
             
-            try (ObjectOutputStream oos = new ObjectOutputStream(
-                    new FileOutputStream(saveFile))) {
-                
-                // Salvar estado do tabuleiro
-                oos.writeObject(board);
-                
-                // Salvar estado dos jogadores
-                oos.writeObject(new HashMap<>(players));
-                
-                // Salvar turno atual
-                oos.writeObject(currentTurn);
-                
-                // Salvar estado do jogo
-                oos.writeBoolean(gameOver);
-                
-                // Salvar histórico
-                oos.writeObject(gameHistory);
-                
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(saveFile))) {
+                BinaryGameSerializer.write(this, out);
                 System.out.println("Jogo salvo com sucesso: " + gameName);
                 return true;
             }
@@ -153,7 +291,8 @@ public class App {
     }
 
     /**
-     * Carrega um jogo salvo de um arquivo
+     * Carrega um jogo salvo de um arquivo. O tabuleiro e o histórico são
+     * reconstruídos refazendo os lances gravados.
      */
     public boolean loadGame(String gameName) {
         try {
@@ -164,34 +303,177 @@ public class App {
                 return false;
             }
 
-            try (ObjectInputStream ois = new ObjectInputStream(
-                    new FileInputStream(saveFile))) {
-                
-                // Carregar estado do tabuleiro
-                board = (Board) ois.readObject();
-                
-                // Carregar estado dos jogadores
-                players = (Map<Color, Player>) ois.readObject();
-                
-                // Carregar turno atual
-                currentTurn = (Color) ois.readObject();
-                
-                // Carregar estado do jogo
-                gameOver = ois.readBoolean();
-                
-                // Carregar histórico
-                gameHistory = (List<Move>) ois.readObject();
-                
+            try (InputStream in = new BufferedInputStream(new FileInputStream(saveFile))) {
+                loadGame(in);
                 System.out.println("Jogo carregado com sucesso: " + gameName);
                 return true;
             }
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             System.err.println("Erro ao carregar jogo: " + e.getMessage());
             e.printStackTrace();
             return false;
         }
     }
 
+    /**
+     * Carrega um jogo no formato de BinaryGameSerializer, mostrando a posição
+     * atual na hora: o histórico é refeito em segundo plano (ver
+     * replaceGame(App, CompletableFuture)). Jogos gravados sem a posição atual
+     * são carregados por inteiro.
+     */
+    public void loadGame(InputStream in) throws IOException {
+        byte[] save = in.readAllBytes();
+        App preview = BinaryGameSerializer.readPosition(new ByteArrayInputStream(save));
+        if (preview == null) {
+            replaceGame(BinaryGameSerializer.read(new ByteArrayInputStream(save)));
+            return;
+        }
+        replaceGame(preview, CompletableFuture.supplyAsync(() -> {
+            try {
+                return BinaryGameSerializer.read(new ByteArrayInputStream(save));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+
+    /**
+     * Passa a jogar o jogo de outro App (por exemplo, um jogo carregado). Os
+     * listeners continuam os mesmos.
+     */
+    public void replaceGame(App other) {
+        install(other);
+        pendingHistory = null;
+        previewPieces = Collections.emptyMap();
+        replacedGame = null;
+        notifyListeners(null);
+    }
+
+    /**
+     * Passa a jogar a posição de `preview`, que não tem histórico, enquanto o
+     * jogo completo, que termina na mesma posição, é refeito em `full`. O
+     * tabuleiro, o turno e os relógios valem na hora; o que depende do histórico
+     * (doMove, undo, redo, getBoardSnapshot, getGameHistory, getPlyCount e
+     * getLastPly) espera pelo jogo completo e o instala. Os listeners só são
+     * avisados quando ele é instalado. Se `full` falha, o carregamento é
+     * desfeito: volta o jogo de antes, já que a posição sozinha não pode ser
+     * desfeita nem gravada no diário.
+     */
+    public void replaceGame(App preview, CompletableFuture<App> full) {
+        for (Player player : players.values())
+            player.clock.pause();
+        // Se outro carregamento ainda está pendente, o jogo a voltar é o de antes dele
+        if (pendingHistory == null)
+            replacedGame = new ReplacedGame(board, players, currentTurn, gameOver, gameHistory);
+        install(preview);
+        pendingHistory = full;
+        previewPieces = Collections.emptyMap();
+    }
+
+    /**
+     * Se o histórico está completo. Instala o jogo completo, sem esperar, se ele
+     * já foi refeito.
+     */
+    public boolean isHistoryLoaded() {
+        if (pendingHistory != null && pendingHistory.isDone())
+            awaitHistory();
+        return pendingHistory == null;
+    }
+
+    /**
+     * Completa quando o histórico de um carregamento terminou de ser refeito (na
+     * hora, se não há nenhum). Não instala o jogo completo: isso fica para
+     * isHistoryLoaded ou para o próximo uso do histórico, na thread do jogo.
+     */
+    public CompletableFuture<Void> whenHistoryReady() {
+        CompletableFuture<App> pending = pendingHistory;
+        if (pending == null)
+            return CompletableFuture.completedFuture(null);
+        return pending.handle((full, error) -> null);
+    }
+
+    private void install(App other) {
+        board = other.board;
+        players = other.players;
+        currentTurn = other.currentTurn;
+        gameOver = other.gameOver;
+        gameHistory = other.gameHistory;
+        redoStack.clear();
+    }
+
+    /*
+     * Instala o jogo completo de um carregamento, esperando por ele se ainda está
+     * sendo refeito. Os relógios continuam de onde estão.
+     */
+    private void awaitHistory() {
+        if (pendingHistory == null)
+            return;
+        CompletableFuture<App> pending = pendingHistory;
+        pendingHistory = null;
+        ReplacedGame replaced = replacedGame;
+        replacedGame = null;
+        App full;
+        try {
+            full = pending.join();
+        } catch (CompletionException e) {
+            System.err.println("Erro ao refazer o histórico do jogo; carregamento desfeito: "
+                    + e.getCause().getMessage());
+            restore(replaced);
+            return;
+        }
+        if (full.board.getPositionHash() != board.getPositionHash() || full.currentTurn != currentTurn)
+            System.err.println("Posição gravada não confere com os lances; vale a dos lances");
+
+        Map<Piece, Piece> pieces = new IdentityHashMap<>();
+        for (Pos pos : Pos.getValidPositions()) {
+            Piece piece = board.getPiece(pos);
+            if (piece != null && full.board.getPiece(pos) != null)
+                pieces.put(piece, full.board.getPiece(pos));
+        }
+        for (Color color : Color.values()) {
+            Clock clock = full.players.get(color).clock;
+            clock.pause();
+            clock.setTimeLeftNanosecs(players.get(color).clock.getTimeLeftNanosecs());
+            players.get(color).clock.pause();
+        }
+        install(full);
+        previewPieces = pieces;
+        if (!gameOver)
+            players.get(currentTurn).clock.resume();
+        notifyListeners(null);
+    }
+
+    /* Volta ao jogo de antes de um carregamento cujo histórico falhou. */
+    private void restore(ReplacedGame replaced) {
+        for (Player player : players.values())
+            player.clock.pause();
+        board = replaced.board();
+        players = replaced.players();
+        currentTurn = replaced.currentTurn();
+        gameOver = replaced.gameOver();
+        gameHistory = replaced.gameHistory();
+        redoStack.clear();
+        previewPieces = Collections.emptyMap();
+        if (!gameOver)
+            players.get(currentTurn).clock.resume();
+        notifyListeners(null);
+    }
+
+    /* O mesmo lance no tabuleiro atual, se foi escolhido na posição carregada. */
+    private Move ownMove(Move move) {
+        Piece piece = previewPieces.get(move.piece());
+        if (piece == null) {
+            // Escolhido num tabuleiro que não é mais o do jogo (carregamento desfeito)
+            if (board.getPos(move.piece()) == null)
+                throw new IllegalArgumentException("Invalid move.");
+            return move;
+        }
+        for (Move own : board.getReadonlyMoves(piece))
+            if (own.toPos().equals(move.toPos()) && own.type() == move.type())
+                return own;
+        throw new IllegalArgumentException("Invalid move.");
+    }
+
     /**
      * Lista todos os jogos salvos disponíveis
      */
@@ -5,7 +5,8 @@ import java.io.Serializable;
 public class Clock implements Serializable {
   private long timeLeftNanosecs;
   private long resumedTimestamp;
-  private boolean paused;
+  // Clocks start stopped; App resumes the clock of whoever is to move.
+  private boolean paused = true;
 
   public Clock(long timeLeftNanosecs) {
     this.timeLeftNanosecs = timeLeftNanosecs;
@@ -31,6 +32,10 @@ public class Clock implements Serializable {
     paused = false;
   }
 
+  public boolean isPaused() {
+    return paused;
+  }
+
   public long getTimeLeftNanosecs() {
     if (paused) {
       return timeLeftNanosecs;
@@ -38,6 +43,14 @@ public class Clock implements Serializable {
     return Math.max(0, timeLeftNanosecs - System.nanoTime() + resumedTimestamp);
   }
 
+  /* Only for a paused clock, e.g. when a move is taken back. */
+  public void setTimeLeftNanosecs(long timeLeftNanosecs) {
+    if (!paused) {
+      throw new IllegalStateException("Clock must be paused.");
+    }
+    this.timeLeftNanosecs = timeLeftNanosecs;
+  }
+
   public String formatTimeLeft() {
     // format getTimeLeft, which is nanoseconds, into string.
     // TODO
@@ -8,11 +8,17 @@ import org.chess.exception.InvalidPosition;
 
 public record Pos(int row, int column) implements Serializable {
   public Pos {
-    if (row < 1 || column < 1 || row > 14 || column > 14 || (row < 4 || row > 11) && (column < 4 || column > 11)) {
+    if (!isValid(row, column)) {
       throw new InvalidPosition("Invalid position");
     }
   }
 
+  /** Whether `new Pos(row, column)` is on the board, without throwing. */
+  public static boolean isValid(int row, int column) {
+    return row >= 1 && column >= 1 && row <= 14 && column <= 14
+        && !((row < 4 || row > 11) && (column < 4 || column > 11));
+  }
+
   public static List<Pos> getValidPositions() {
     List<Pos> list = new ArrayList<Pos>();
     for (int i = 1; i <= 14; i++) {
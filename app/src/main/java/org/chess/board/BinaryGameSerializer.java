@@ -0,0 +1,441 @@
+package org.chess.board;
+
+import org.chess.App;
+import org.chess.Clock;
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.Player;
+import org.chess.Pos;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Formato binário compacto dos jogos salvos.
+ *
+ * É gravado o que não pode ser recalculado: a posição inicial, os lances, os
+ * relógios e o turno. O tabuleiro, o histórico e os jogadores eliminados são
+ * reconstruídos ao carregar, refazendo os lances com `App.doMove`. A posição
+ * atual também é gravada, para que `readPosition` mostre o jogo sem refazer os
+ * lances.
+ *
+ * Layout (big-endian, versão 4):
+ * <pre>
+ * int   MAGIC
+ * short versão
+ * byte  posição inicial (0 = padrão)
+ * byte  turno atual (ordinal de Color)
+ * byte  jogadores eliminados (um bit por cor, pelo ordinal; só a partir da versão 2)
+ * long  tempo restante de cada cor, em ordem de Color (nanossegundos)
+ * UTF   posição atual em PositionNotation (só a partir da versão 4)
+ * int   número de lances
+ * byte  codificação dos lances (só a partir da versão 3): 0 = MoveCodec,
+ *       1 = MoveCodec comprimido com Deflate
+ * lances, em MoveCodec (versões 1 e 2: byte casa de origem, byte casa de
+ *       destino, byte tipo, por lance)
+ * </pre>
+ *
+ * O cabeçalho basta para resumir o jogo (`readSummary`) sem refazer os lances.
+ */
+public class BinaryGameSerializer {
+    public static final int MAGIC = 0x43345356; // "C4SV"
+    public static final short VERSION = 4;
+
+    private static final byte STANDARD_SETUP = 0;
+    private static final int SIDE = 14;
+    private static final Move.MoveType[] MOVE_TYPES = Move.MoveType.values();
+    private static final byte PLAIN_MOVES = 0;
+    private static final byte DEFLATED_MOVES = 1;
+
+    /**
+     * Recebe os lances de um jogo lido por `readMoves`, na ordem, e os faz.
+     */
+    public interface MoveHandler {
+        /**
+         * @param index o número do lance, a partir de 0.
+         * @return a cor de quem joga depois do lance, que a decodificação do
+         *         próximo lance precisa, ou null para parar a leitura aqui.
+         * @throws IOException se o lance não pode ser feito.
+         */
+        Color apply(Pos from, Pos to, Move.MoveType type, int index) throws IOException;
+    }
+
+    /** O que o cabeçalho diz do jogo. */
+    public record Summary(Color currentTurn, int plies, Set<Color> eliminated) {
+    }
+
+    /**
+     * Um jogo como está gravado, sem refazer os lances: o resumo, os relógios, a
+     * posição atual em PositionNotation (null se não é conhecida) e os lances em
+     * MoveCodec, sem compressão (um varint por lance).
+     */
+    public record Encoded(Summary summary, long[] clockTimes, String position, byte[] moves) {
+    }
+
+    /**
+     * Grava o jogo, sem comprimir os lances. O stream não é fechado.
+     *
+     * @throws IOException se algum lance não tem registro de origem (por exemplo,
+     *                     um histórico restaurado sem `Board.doMove`).
+     */
+    public static void write(App app, OutputStream out) throws IOException {
+        write(app, out, false);
+    }
+
+    /**
+     * @param compress se os lances são comprimidos com Deflate; vale a pena em
+     *                 jogos longos e em arquivos com muitos jogos.
+     */
+    public static void write(App app, OutputStream out, boolean compress) throws IOException {
+        Board board = app.getBoardSnapshot();
+        History history = board.history;
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeByte(STANDARD_SETUP);
+        data.writeByte(app.getCurrentTurn().ordinal());
+        int eliminated = 0;
+        for (Color color : Color.values())
+            if (!board.isInGame(color))
+                eliminated |= 1 << color.ordinal();
+        data.writeByte(eliminated);
+        for (Color color : Color.values())
+            data.writeLong(app.getPlayer(color).clock.getTimeLeftNanosecs());
+        data.writeUTF(PositionNotation.write(board, app.getCurrentTurn()));
+
+        data.writeInt(history.size());
+        data.writeByte(compress ? DEFLATED_MOVES : PLAIN_MOVES);
+        Deflater deflater = compress ? new Deflater(Deflater.BEST_COMPRESSION) : null;
+        try {
+            DeflaterOutputStream deflated = compress ? new DeflaterOutputStream(data, deflater) : null;
+            MoveCodec.Encoder moves = new MoveCodec.Encoder(app, compress ? deflated : data);
+            for (int i = 0; i < history.size(); i++) {
+                Ply ply = history.getPly(i);
+                if (ply == null)
+                    throw new IOException("Lance " + i + " sem casa de origem registrada");
+                moves.write(ply);
+            }
+            if (compress)
+                deflated.finish();
+        } finally {
+            if (deflater != null)
+                deflater.end();
+        }
+        data.flush();
+    }
+
+    /**
+     * Lê um jogo gravado por `write`, refazendo os seus lances em um novo App.
+     *
+     * @throws IOException se o arquivo não está no formato, é de uma versão mais
+     *                     nova ou tem lances inválidos.
+     */
+    public static App read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        return readGame(data, readHeader(data));
+    }
+
+    /**
+     * Lê só a posição atual, os relógios e o turno, sem refazer os lances. O App
+     * pode ser mostrado e jogado na hora, mas não tem histórico: o jogo completo,
+     * lido por `read`, é instalado nele por `App.replaceGame(App,
+     * CompletableFuture)`.
+     *
+     * @return null se o jogo foi gravado antes da versão 4, sem a posição.
+     * @throws IOException se o arquivo não está no formato ou a posição é
+     *                     inválida.
+     */
+    public static App readPosition(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        short version = readHeader(data);
+        if (version < 4)
+            return null;
+        Color currentTurn = color(data.readUnsignedByte());
+        data.readByte(); // os eliminados estão na posição
+        long[] clockTimes = new long[Color.values().length];
+        for (int i = 0; i < clockTimes.length; i++)
+            clockTimes[i] = data.readLong();
+        PositionNotation.Position position;
+        try {
+            position = PositionNotation.parse(data.readUTF());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Posição inválida: " + e.getMessage(), e);
+        }
+        if (position.getToMove() != currentTurn)
+            throw new IOException("Turno gravado não confere com a posição");
+
+        Board board = position.toBoard();
+        Map<Color, Player> players = new EnumMap<>(Color.class);
+        int inGame = 0;
+        for (Color color : Color.values()) {
+            players.put(color, new Player(new Clock(App.DEFAULT_TIME_NANOSECS), color));
+            if (board.isInGame(color))
+                inGame++;
+        }
+        App app = new App(board, players, currentTurn, inGame <= 1);
+        restoreClocks(app, clockTimes);
+        return app;
+    }
+
+    /**
+     * Lê um jogo gravado por `write` sem montar um App: cada lance vai para
+     * `handler`, que o faz onde quiser (por exemplo, num tabuleiro reaproveitado
+     * entre jogos).
+     *
+     * @return o resumo do jogo, mesmo se o handler parou antes do fim; os
+     *         eliminados são os do cabeçalho (vazio na versão 1).
+     * @throws IOException se o arquivo não está no formato, o handler recusa um
+     *                     lance, ou o turno gravado não confere com os lances.
+     */
+    public static Summary readMoves(InputStream in, MoveHandler handler) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        short version = readHeader(data);
+        Color currentTurn = color(data.readUnsignedByte());
+        int eliminatedMask = version >= 2 ? data.readUnsignedByte() : 0;
+        data.skipNBytes(8L * Color.values().length);
+        if (version >= 4)
+            data.readUTF();
+        int plies = readMoves(data, version, Color.GREEN, currentTurn, handler);
+        Set<Color> eliminated = EnumSet.noneOf(Color.class);
+        for (Color color : Color.values())
+            if ((eliminatedMask & 1 << color.ordinal()) != 0)
+                eliminated.add(color);
+        return new Summary(currentTurn, plies, Collections.unmodifiableSet(eliminated));
+    }
+
+    /**
+     * Lê um jogo gravado por `write` sem refazer os lances. Os jogos de antes da
+     * versão 4 não têm a posição atual (e os das versões 1 e 2 nem os lances em
+     * MoveCodec): esses são refeitos e gravados de novo.
+     *
+     * @throws IOException se o arquivo não está no formato ou acaba antes dos
+     *                     lances.
+     */
+    public static Encoded readEncoded(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        short version = readHeader(data);
+        if (version < 4) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            write(readGame(data, version), bytes);
+            return readEncoded(new ByteArrayInputStream(bytes.toByteArray()));
+        }
+        Color currentTurn = color(data.readUnsignedByte());
+        int eliminatedMask = data.readUnsignedByte();
+        long[] clockTimes = new long[Color.values().length];
+        for (int i = 0; i < clockTimes.length; i++)
+            clockTimes[i] = data.readLong();
+        String position = version >= 4 ? data.readUTF() : null;
+        int moveCount = data.readInt();
+        int encoding = data.readUnsignedByte();
+        if (encoding != PLAIN_MOVES && encoding != DEFLATED_MOVES)
+            throw new IOException("Codificação de lances desconhecida: " + encoding);
+        ByteArrayOutputStream moves = new ByteArrayOutputStream();
+        Inflater inflater = encoding == DEFLATED_MOVES ? new Inflater() : null;
+        try {
+            InputStream source = inflater != null ? new InflaterInputStream(data, inflater) : data;
+            for (int i = 0; i < moveCount; i++)
+                MoveCodec.writeVarint(moves, MoveCodec.readVarint(source));
+        } finally {
+            if (inflater != null)
+                inflater.end();
+        }
+        Set<Color> eliminated = EnumSet.noneOf(Color.class);
+        for (Color color : Color.values())
+            if ((eliminatedMask & 1 << color.ordinal()) != 0)
+                eliminated.add(color);
+        return new Encoded(new Summary(currentTurn, moveCount, Collections.unmodifiableSet(eliminated)),
+                clockTimes, position, moves.toByteArray());
+    }
+
+    /**
+     * Grava um jogo lido por `readEncoded`, sem comprimir os lances: na versão
+     * atual, ou na 3 se o jogo não tem a posição atual. O stream não é fechado.
+     */
+    public static void writeEncoded(Encoded game, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(game.position() != null ? VERSION : 3);
+        data.writeByte(STANDARD_SETUP);
+        data.writeByte(game.summary().currentTurn().ordinal());
+        int eliminated = 0;
+        for (Color color : game.summary().eliminated())
+            eliminated |= 1 << color.ordinal();
+        data.writeByte(eliminated);
+        for (long clockTime : game.clockTimes())
+            data.writeLong(clockTime);
+        if (game.position() != null)
+            data.writeUTF(game.position());
+        data.writeInt(game.summary().plies());
+        data.writeByte(PLAIN_MOVES);
+        data.write(game.moves());
+        data.flush();
+    }
+
+    private static App readGame(DataInputStream data, short version) throws IOException {
+        Color currentTurn = color(data.readUnsignedByte());
+        if (version >= 2)
+            data.readByte(); // os eliminados são recalculados
+        long[] clockTimes = new long[Color.values().length];
+        for (int i = 0; i < clockTimes.length; i++)
+            clockTimes[i] = data.readLong();
+        if (version >= 4)
+            data.readUTF(); // a posição sai dos lances
+
+        App app = new App();
+        readMoves(data, version, app.getCurrentTurn(), currentTurn, (from, to, type, index) -> {
+            applyMove(app, from, to, type, index);
+            return app.getCurrentTurn();
+        });
+        restoreClocks(app, clockTimes);
+        return app;
+    }
+
+    /* Os lances, do número de lances em diante; devolve o número de lances. */
+    private static int readMoves(DataInputStream data, short version, Color firstTurn, Color currentTurn,
+            MoveHandler handler) throws IOException {
+        Color turn = firstTurn;
+        int moveCount = data.readInt();
+        if (version < 3) {
+            for (int i = 0; i < moveCount; i++) {
+                Pos from = square(data.readUnsignedByte());
+                Pos to = square(data.readUnsignedByte());
+                int type = data.readUnsignedByte();
+                if (type >= MOVE_TYPES.length)
+                    throw new IOException("Tipo de lance inválido: " + type);
+                turn = handler.apply(from, to, MOVE_TYPES[type], i);
+                if (turn == null)
+                    return moveCount;
+            }
+        } else {
+            int encoding = data.readUnsignedByte();
+            if (encoding != PLAIN_MOVES && encoding != DEFLATED_MOVES)
+                throw new IOException("Codificação de lances desconhecida: " + encoding);
+            Inflater inflater = encoding == DEFLATED_MOVES ? new Inflater() : null;
+            try {
+                MoveCodec.Decoder moves = new MoveCodec.Decoder(inflater != null
+                        ? new InflaterInputStream(data, inflater) : data);
+                for (int i = 0; i < moveCount; i++) {
+                    // A cor é a de quem joga no jogo refeito até aqui
+                    MoveCodec.Decoded move = moves.read(turn);
+                    turn = handler.apply(square(move.from()), square(move.to()), move.type(), i);
+                    if (turn == null)
+                        return moveCount;
+                }
+            } finally {
+                if (inflater != null)
+                    inflater.end();
+            }
+        }
+        if (turn != currentTurn)
+            throw new IOException("Turno gravado não confere com os lances");
+        return moveCount;
+    }
+
+    /**
+     * Lê só o cabeçalho. Arquivos da versão 1 não têm os eliminados, e são lidos
+     * por inteiro.
+     */
+    public static Summary readSummary(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        short version = readHeader(data);
+        if (version < 2) {
+            App app = readGame(data, version);
+            Set<Color> eliminated = EnumSet.noneOf(Color.class);
+            Board board = app.getBoardSnapshot();
+            for (Color color : Color.values())
+                if (!board.isInGame(color))
+                    eliminated.add(color);
+            return new Summary(app.getCurrentTurn(), app.getPlyCount(), Collections.unmodifiableSet(eliminated));
+        }
+        Color currentTurn = color(data.readUnsignedByte());
+        int eliminatedMask = data.readUnsignedByte();
+        data.skipNBytes(8L * Color.values().length);
+        if (version >= 4)
+            data.readUTF();
+        int plies = data.readInt();
+        Set<Color> eliminated = EnumSet.noneOf(Color.class);
+        for (Color color : Color.values())
+            if ((eliminatedMask & 1 << color.ordinal()) != 0)
+                eliminated.add(color);
+        return new Summary(currentTurn, plies, Collections.unmodifiableSet(eliminated));
+    }
+
+    /* MAGIC, versão e posição inicial; devolve a versão. */
+    private static short readHeader(DataInputStream data) throws IOException {
+        if (data.readInt() != MAGIC)
+            throw new IOException("Arquivo não está no formato binário de jogo");
+        short version = data.readShort();
+        if (version > VERSION)
+            throw new IOException("Versão do arquivo não suportada: " + version);
+        if (data.readByte() != STANDARD_SETUP)
+            throw new IOException("Posição inicial desconhecida");
+        return version;
+    }
+
+    /**
+     * Encontra, entre os lances possíveis da peça em `from`, o lance gravado e o
+     * faz no jogo. Os relógios de antes do lance não foram gravados: os do Ply
+     * ficam null (desconhecidos), e não os do próprio replay.
+     */
+    public static void applyMove(App app, Pos from, Pos to, Move.MoveType type, int index) throws IOException {
+        for (Move move : app.getPossibleMoves(from)) {
+            if (move.toPos().equals(to) && move.type() == type) {
+                try {
+                    app.doMove(move);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Lance " + index + " inválido: " + e.getMessage(), e);
+                }
+                app.getLastPly().setClockTimes(null);
+                return;
+            }
+        }
+        throw new IOException("Lance " + index + " inválido: " + from + " -> " + to + " (" + type + ")");
+    }
+
+    /* Os relógios são parados, ajustados, e o de quem joga volta a correr. */
+    public static void restoreClocks(App app, long[] clockTimes) {
+        for (Color color : Color.values()) {
+            Clock clock = app.getPlayer(color).clock;
+            clock.pause();
+            clock.setTimeLeftNanosecs(clockTimes[color.ordinal()]);
+        }
+        if (!app.isGameOver())
+            app.getPlayer(app.getCurrentTurn()).clock.resume();
+    }
+
+    /** Índice da casa no tabuleiro 14x14, de 0 a 195, linha por linha. */
+    public static int squareIndex(Pos pos) {
+        return (pos.row() - 1) * SIDE + pos.column() - 1;
+    }
+
+    /**
+     * @throws IOException se o índice não é de uma casa válida.
+     */
+    public static Pos square(int index) throws IOException {
+        try {
+            return new Pos(index / SIDE + 1, index % SIDE + 1);
+        } catch (RuntimeException e) {
+            throw new IOException("Casa inválida: " + index, e);
+        }
+    }
+
+    private static Color color(int ordinal) throws IOException {
+        if (ordinal >= Color.values().length)
+            throw new IOException("Cor inválida: " + ordinal);
+        return Color.values()[ordinal];
+    }
+}
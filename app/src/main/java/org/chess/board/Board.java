@@ -17,13 +17,18 @@ import org.chess.exception.PieceNotInBoard;
 import org.chess.PieceType;
 import org.chess.Pos;
 import org.chess.pieces.Bishop;
+import org.chess.pieces.Direction;
 import org.chess.pieces.King;
+import org.chess.pieces.Knight;
 import org.chess.pieces.NonKing;
 import org.chess.pieces.Pawn;
 import org.chess.pieces.Piece;
+import org.chess.pieces.Queen;
+import org.chess.pieces.Rook;
 
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.ImmutableMap;
 
 /**
  * Manages the relation between each piece and its position.
@@ -40,74 +45,212 @@ public class Board implements Serializable {
 
     /**
      * It is used to store pieces' moves. It should only be mutated within the
-     * `reevaluate` method. Read the method's docstring to know when it must be
-     * called.
+     * `reevaluate` method, or put back by `undo`. Read the method's docstring to
+     * know when it must be called.
      */
     private PossibleMoves moves;
 
     private final Map<Color, King> kingsMap = new EnumMap<>(Color.class);
 
     /** Match's history. */
-    public final History history = new History();
+    public final History history;
 
     private boolean recursiveReevaluate = true;
 
+    /** Zobrist hash of the pieces on the board. Kept up to date on every change. */
+    private long positionHash;
+
+    /** How many of the last moves `undo` can take back without `reevaluate`. */
+    private static final int SAVED_MOVES = 32;
+
+    /**
+     * The `moves` each of the last plies replaced, so that `undo` can put them
+     * back. Ply `i` uses slot `i % SAVED_MOVES`, which is only valid while
+     * `savedPlies` holds that same ply.
+     */
+    private final PossibleMoves[] savedMoves = new PossibleMoves[SAVED_MOVES];
+    private final Ply[] savedPlies = new Ply[SAVED_MOVES];
+
+    /**
+     * For a board set up in the middle of a game (see `PositionNotation`), the
+     * double step each color's pawn had just made, by color, so that it can
+     * still be taken en passant. They are not in `history`, which only has the
+     * moves played on this board; a color's entry is used until it moves.
+     */
+    private final Move[] setUpDoubleSteps = new Move[Color.values().length];
+
     // ###########################################################################
     // Public interface
     // ###########################################################################
 
     public Board(Map<Pos, Piece> state) {
+        this.history = new History();
         for (Entry<Pos, Piece> entrySet : state.entrySet())
             addPiece(entrySet.getKey(), entrySet.getValue());
         reevaluate();
     }
 
     public Collection<Move> getReadonlyMoves(Piece piece) {
-        return moves.get(piece);
+        return moves().get(piece);
     }
 
+    public Collection<Move> getAllMoves(Color color) {
+        return moves().getAllMoves(color);
+    }
+
+    /** Same as `getAllMoves(color).size()`, without copying the moves. */
+    public int countMoves(Color color) {
+        return moves().countMoves(color);
+    }
+
+    /**
+     * Returns only the tactical moves of a color: captures (including en passant)
+     * and promotions. They are generated from the pieces, without the move table,
+     * so quiet moves are never calculated, and it also works after `doCapture`.
+     *
+     * As in the move table, a color in check only gets the captures that get it
+     * out of check. Attacks are found on the pieces themselves, though, so a king
+     * never takes a piece that another piece defends.
+     */
+    public Collection<Move> getCaptureMoves(Color color) {
+        Collection<Move> captures = new ArrayList<>();
+        try {
+            for (Piece piece : getPieces(color)) {
+                Collection<Move> pieceCaptures;
+                if (piece instanceof NonKing nonKing)
+                    pieceCaptures = nonKing.calculateCaptures(makeGetPiece(color), makeGetPos(color));
+                else if (piece instanceof Pawn pawn)
+                    pieceCaptures = pawn.calculateCaptures(makeGetPiece(color), makeGetPos(color),
+                            makeGetLastMove());
+                else {
+                    addKingCaptures((King) piece, captures);
+                    continue;
+                }
+                for (Move m : pieceCaptures)
+                    captures.add(new Move(m.piece(), m.type(), m.toPos().fromPerspective(color), m.enPassantVictim()));
+            }
+        } catch (PieceNotInBoard e) {
+            throw new IllegalStateException("This should not run. Tried to calculate piece that's not on the board");
+        }
+        King king = kingsMap.get(color);
+        if (king != null && isAttacked(getPos(king), color, makeGetPiece()))
+            captures.removeIf(move -> leavesKingAttacked(move, king));
+        return captures;
+    }
+
+    /**
+     * Creates an independent board with the same pieces and history. Pieces are
+     * shared, so moves calculated on this board are valid on the copy.
+     */
+    public Board copy() {
+        return new Board(this);
+    }
+
+    /**
+     * Hash of the piece placement. Equal placements have equal hashes, regardless
+     * of the moves that led to them. Castling rights, en passant and the side to
+     * move are not part of it.
+     */
+    public long getPositionHash() {
+        return positionHash;
+    }
+
+    /**
+     * @return false if the color's king is no longer on the board.
+     */
+    public boolean isInGame(Color color) {
+        return kingsMap.containsKey(color);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the move doesn't fit the board (see
+     *                                  `doMove(Move, Piece)`).
+     */
     public void doMove(Move move) {
+        doMove(move, null, true);
+    }
+
+    /**
+     * Plays a move returned by `getCaptureMoves` without calculating the moves
+     * that follow it, for searches that only look at captures (see `Search`).
+     * Until `undo` takes it back, only the pieces are up to date: the move table
+     * (getAllMoves, getReadonlyMoves, countMoves and isCheckmate) can't be used,
+     * and colors left without moves are not eliminated. Taking a king still
+     * eliminates its color.
+     *
+     * @throws IllegalArgumentException like `doMove(Move, Piece)`.
+     */
+    public void doCapture(Move move) {
+        doMove(move, null, false);
+    }
+
+    /**
+     * Same as `doMove(Move)`, but a promotion puts `promoted` on the board instead
+     * of a new piece, so that a replay (e.g. a redo) keeps the pieces of the
+     * original game and later moves of the promoted piece still apply.
+     *
+     * @param promoted the piece the pawn is promoted to, or null for a new one.
+     * @throws IllegalArgumentException if the moving piece, the castling rook or
+     *                                  the en passant victim is not on the board,
+     *                                  if the move takes a piece of its own color,
+     *                                  or if `promoted` is already on the board.
+     *                                  Nothing is changed in that case.
+     */
+    public void doMove(Move move, Piece promoted) {
+        doMove(move, promoted, true);
+    }
+
+    /* Without `calculateMoves`, the move table is left out (see `doCapture`). */
+    private void doMove(Move move, Piece promoted, boolean calculateMoves) {
         MoveType moveType = move.type();
         Piece piece = move.piece();
         Pos toPos = move.toPos();
         Color color = piece.color;
-
-        history.addMove(move);
+        Pos fromPos = getPos(piece);
+        if (fromPos == null)
+            throw new IllegalArgumentException("Invalid move: the piece is not on the board.");
+
+        Piece promotionPiece = promoted != null ? promoted : switch (moveType) {
+            case BISHOP_PROMOTION -> new Bishop(color);
+            case QUEEN_PROMOTION -> new Queen(color);
+            case ROOK_PROMOTION -> new Rook(color);
+            case KNIGHT_PROMOTION -> new Knight(color);
+            default -> null;
+        };
+        Piece capturedPiece = moveType == MoveType.EN_PASSANT ? move.enPassantVictim() : getPiece(toPos);
+        Pos capturedPos = capturedPiece != null ? getPos(capturedPiece) : null;
+        // Checked before anything is recorded, so a rejected move leaves no trace.
+        if (capturedPiece != null && (capturedPos == null || capturedPiece.color == color))
+            throw new IllegalArgumentException("Invalid move: it can't take " + capturedPiece + ".");
+        if (moveType == MoveType.EN_PASSANT && capturedPiece == null)
+            throw new IllegalArgumentException("Invalid move: en passant without a victim.");
+        if ((moveType == MoveType.KINGSIDE_CASTLING || moveType == MoveType.QUEENSIDE_CASTLING)
+                && !(getPiece(rookInitialPos(moveType, color)) instanceof Rook rook && rook.color == color))
+            throw new IllegalArgumentException("Invalid move: there is no rook to castle with.");
+        if (promotionPiece != null && getPos(promotionPiece) != null)
+            throw new IllegalArgumentException("Invalid move: the promoted piece is already on the board.");
+        // Hypothetical boards (see `preventMovesIfInCheck`) are never sought.
+        if (recursiveReevaluate && history.needsCheckpoint())
+            history.addCheckpoint(ImmutableMap.copyOf(boardState));
+        Ply ply = new Ply(move, fromPos, capturedPiece, capturedPos, promotionPiece);
+        history.addPly(ply);
+        int slot = (history.size() - 1) % SAVED_MOVES;
+        savedPlies[slot] = ply;
+        savedMoves[slot] = moves;
 
         switch (moveType) {
-            case SIMPLE_MOVE:
-                movePiece(piece, toPos);
-                break;
-
-            case PAWN_DOUBLE:
+            case SIMPLE_MOVE, PAWN_DOUBLE:
                 movePiece(piece, toPos);
                 break;
 
             case BISHOP_PROMOTION, QUEEN_PROMOTION, ROOK_PROMOTION, KNIGHT_PROMOTION:
-                Piece promotionPiece = switch (moveType) {
-                    case BISHOP_PROMOTION -> new Bishop(color);
-                    case QUEEN_PROMOTION -> new Bishop(color);
-                    case ROOK_PROMOTION -> new Bishop(color);
-                    case KNIGHT_PROMOTION -> new Bishop(color);
-                    default -> throw new IllegalStateException("Unexpected Enum.");
-                };
                 movePiece(piece, toPos);
                 removePiece(piece);
                 addPiece(toPos, promotionPiece);
                 break;
 
             case KINGSIDE_CASTLING, QUEENSIDE_CASTLING:
-                Pos rookInitialPos = switch (moveType) {
-                    case KINGSIDE_CASTLING -> rookInitialPos = PieceType.KINGSIDE_ROOK.initialPos(color);
-                    case QUEENSIDE_CASTLING -> rookInitialPos = PieceType.QUEENSIDE_ROOK.initialPos(color);
-                    default -> throw new IllegalStateException("Unexpected Enum.");
-                };
-                Pos rookCastlingPos = switch (moveType) {
-                    case KINGSIDE_CASTLING -> rookCastlingPos = PieceType.KINGSIDE_BISHOP.initialPos(color);
-                    case QUEENSIDE_CASTLING -> rookCastlingPos = PieceType.QUEEN.initialPos(color);
-                    default -> throw new IllegalStateException("Unexpected Enum.");
-                };
-                movePiece(getPiece(rookInitialPos), rookCastlingPos);
+                movePiece(getPiece(rookInitialPos(moveType, color)), rookCastlingPos(moveType, color));
                 movePiece(piece, toPos);
                 break;
 
@@ -119,7 +262,88 @@ public class Board implements Serializable {
             default:
                 throw new IllegalStateException("Unexpected Enum.");
         }
-        reevaluate();
+        // A king can only be taken if its player left it exposed; the color is out.
+        if (capturedPiece instanceof King king)
+            remove(king.color);
+        if (calculateMoves)
+            reevaluate();
+        else
+            moves = null;
+    }
+
+    /**
+     * Takes back the last move made with `doMove`. It only restores what the move
+     * changed, so its cost doesn't depend on the length of the game. The moves
+     * the board had before one of the last `SAVED_MOVES` moves are put back as
+     * they were, so taking those back doesn't even pay `reevaluate`.
+     *
+     * @return the move taken back, or null if there is none.
+     */
+    public Move undo() {
+        Ply ply = history.removeLastPly();
+        if (ply == null)
+            return null;
+        Move move = ply.getMove();
+        MoveType moveType = move.type();
+        Piece piece = move.piece();
+
+        ply.getEliminatedPieces().forEach(this::addPiece);
+        switch (moveType) {
+            case BISHOP_PROMOTION, QUEEN_PROMOTION, ROOK_PROMOTION, KNIGHT_PROMOTION:
+                removePiece(ply.getPromotedPiece());
+                addPiece(ply.getFromPos(), piece);
+                break;
+
+            case KINGSIDE_CASTLING, QUEENSIDE_CASTLING:
+                movePiece(piece, ply.getFromPos());
+                movePiece(getPiece(rookCastlingPos(moveType, piece.color)), rookInitialPos(moveType, piece.color));
+                break;
+
+            default:
+                movePiece(piece, ply.getFromPos());
+        }
+        if (ply.getCapturedPiece() != null)
+            addPiece(ply.getCapturedPos(), ply.getCapturedPiece());
+        int slot = history.size() % SAVED_MOVES;
+        if (savedPlies[slot] == ply) {
+            moves = savedMoves[slot];
+            savedPlies[slot] = null;
+            savedMoves[slot] = null;
+        } else {
+            reevaluate();
+        }
+        return move;
+    }
+
+    /**
+     * Rebuilds the board as it was after the first `ply` moves, replaying moves
+     * from the closest checkpoint, so at most `History.CHECKPOINT_INTERVAL` of
+     * them. This board is not changed.
+     *
+     * @throws IllegalArgumentException if ply is not between 0 and the number of
+     *                                  moves.
+     * @throws IllegalStateException    if the history has no checkpoint before
+     *                                  ply, e.g. if it was filled with
+     *                                  `History.addMove`.
+     */
+    public Board getBoardAt(int ply) {
+        if (ply < 0 || ply > history.size())
+            throw new IllegalArgumentException("Invalid ply: " + ply);
+        int checkpoint = history.getCheckpointBefore(ply);
+        if (checkpoint < 0)
+            throw new IllegalStateException("There is no checkpoint before ply " + ply);
+
+        Board board = new Board(history.getCheckpoint(checkpoint), history.prefix(checkpoint), setUpDoubleSteps);
+        for (int i = checkpoint; i < ply; i++) {
+            Ply played = history.getPly(i);
+            board.doMove(history.getMoves().get(i), played != null ? played.getPromotedPiece() : null);
+            // Colors eliminated after the move (e.g. without moves on their turn).
+            if (played != null)
+                for (Piece piece : played.getEliminatedPieces().values())
+                    if (board.getPos(piece) != null)
+                        board.remove(piece.color);
+        }
+        return board;
     }
 
     public Pos getPos(Piece piece) {
@@ -159,16 +383,160 @@ public class Board implements Serializable {
     }
 
     private Function<Color, Move> makeGetLastMove() {
-        return color -> history.getLastMove(color);
+        return this::getLastMove;
+    }
+
+    /* The color's last move, including a double step from the set-up position. */
+    Move getLastMove(Color color) {
+        Move move = history.getLastMove(color);
+        return move != null ? move : setUpDoubleSteps[color.ordinal()];
+    }
+
+    /* The move table, which `doCapture` leaves out until its move is taken back. */
+    private PossibleMoves moves() {
+        if (moves == null)
+            throw new IllegalStateException("The moves after doCapture are not calculated; undo it first.");
+        return moves;
+    }
+
+    /* What `getPiece` would return after `piece` goes from `from` to `to`, taking the piece at `taken`. */
+    private Function<Pos, Piece> makeGetPieceAfter(Piece piece, Pos from, Pos to, Pos taken) {
+        return pos -> pos.equals(to) ? piece : pos.equals(from) || pos.equals(taken) ? null : getPiece(pos);
+    }
+
+    /* Captures of the pieces next to the king that don't put it where it can be taken. */
+    private void addKingCaptures(King king, Collection<Move> captures) {
+        Pos kingPos = getPos(king);
+        for (int row = kingPos.row() - 1; row <= kingPos.row() + 1; row++) {
+            for (int column = kingPos.column() - 1; column <= kingPos.column() + 1; column++) {
+                if (!Pos.isValid(row, column))
+                    continue;
+                Pos pos = new Pos(row, column);
+                Piece target = getPiece(pos);
+                if (target != null && target.color != king.color
+                        && !isAttacked(pos, king.color, makeGetPieceAfter(king, kingPos, pos, pos)))
+                    captures.add(new Move(king, MoveType.SIMPLE_MOVE, pos));
+            }
+        }
+    }
+
+    private boolean leavesKingAttacked(Move move, King king) {
+        Piece piece = move.piece();
+        Pos taken = move.enPassantVictim() != null ? getPos(move.enPassantVictim()) : move.toPos();
+        Pos kingPos = piece == king ? move.toPos() : getPos(king);
+        return isAttacked(kingPos, king.color, makeGetPieceAfter(piece, getPos(piece), move.toPos(), taken));
+    }
+
+    /*
+     * Whether a piece of another color than `color` could take a piece at
+     * `target`, with the pieces given by `getPiece`. Unlike the move table, it
+     * doesn't need the moves of every piece, just the lines that reach `target`.
+     */
+    private static boolean isAttacked(Pos target, Color color, Function<Pos, Piece> getPiece) {
+        for (Direction direction : Direction.values()) {
+            boolean diagonal = direction.rowDirection != 0 && direction.columnDirection != 0;
+            int row = target.row() + direction.rowDirection;
+            int column = target.column() + direction.columnDirection;
+            for (int distance = 1; Pos.isValid(row, column); distance++) {
+                Piece piece = getPiece.apply(new Pos(row, column));
+                if (piece != null) {
+                    if (piece.color != color && (piece instanceof Queen
+                            || (diagonal ? piece instanceof Bishop : piece instanceof Rook)
+                            || distance == 1 && piece instanceof King
+                            || distance == 1 && diagonal && piece instanceof Pawn
+                                    && pawnAttacks(new Pos(row, column), target, piece.color)))
+                        return true;
+                    break;
+                }
+                row += direction.rowDirection;
+                column += direction.columnDirection;
+            }
+        }
+        for (int[] jump : KNIGHT_JUMPS) {
+            int row = target.row() + jump[0];
+            int column = target.column() + jump[1];
+            if (Pos.isValid(row, column)
+                    && getPiece.apply(new Pos(row, column)) instanceof Knight knight && knight.color != color)
+                return true;
+        }
+        return false;
+    }
+
+    private static final int[][] KNIGHT_JUMPS = { { 2, 1 }, { 2, -1 }, { -2, 1 }, { -2, -1 }, { 1, 2 }, { -1, 2 },
+            { 1, -2 }, { -1, -2 } };
+
+    /* Pawns take forward, which depends on the side of the board of their color. */
+    private static boolean pawnAttacks(Pos pawnPos, Pos target, Color pawnColor) {
+        Pos pawn = pawnPos.toPerspective(pawnColor);
+        Pos square = target.toPerspective(pawnColor);
+        return square.row() == pawn.row() - 1;
+    }
+
+    static Pos rookInitialPos(MoveType castling, Color color) {
+        return switch (castling) {
+            case KINGSIDE_CASTLING -> PieceType.KINGSIDE_ROOK.initialPos(color);
+            case QUEENSIDE_CASTLING -> PieceType.QUEENSIDE_ROOK.initialPos(color);
+            default -> throw new IllegalStateException("Unexpected Enum.");
+        };
+    }
+
+    static Pos rookCastlingPos(MoveType castling, Color color) {
+        return switch (castling) {
+            case KINGSIDE_CASTLING -> PieceType.KINGSIDE_BISHOP.initialPos(color);
+            case QUEENSIDE_CASTLING -> PieceType.QUEEN.initialPos(color);
+            default -> throw new IllegalStateException("Unexpected Enum.");
+        };
     }
 
     private Board(Map<Pos, Piece> state, boolean recursiveReevaluate) {
+        this.history = new History();
         this.recursiveReevaluate = recursiveReevaluate;
         for (Entry<Pos, Piece> entrySet : state.entrySet())
             addPiece(entrySet.getKey(), entrySet.getValue());
         reevaluate();
     }
 
+    /*
+     * A board set up in the middle of a game, where the pawns at `enPassant` have
+     * just advanced two squares and can be taken en passant. Its history is
+     * empty.
+     *
+     * @throws IllegalArgumentException if there is no pawn at one of `enPassant`.
+     */
+    Board(Map<Pos, Piece> state, Collection<Pos> enPassant) {
+        this.history = new History();
+        for (Entry<Pos, Piece> entrySet : state.entrySet())
+            addPiece(entrySet.getKey(), entrySet.getValue());
+        for (Pos pos : enPassant) {
+            if (!(getPiece(pos) instanceof Pawn pawn))
+                throw new IllegalArgumentException("Invalid Position: There's no pawn to take en passant at " + pos);
+            setUpDoubleSteps[pawn.color.ordinal()] = new Move(pawn, MoveType.PAWN_DOUBLE, pos);
+        }
+        reevaluate();
+    }
+
+    /* A board with `state` reached through `history`, used by `getBoardAt`. */
+    private Board(Map<Pos, Piece> state, History history, Move[] setUpDoubleSteps) {
+        this.history = history;
+        System.arraycopy(setUpDoubleSteps, 0, this.setUpDoubleSteps, 0, setUpDoubleSteps.length);
+        for (Entry<Pos, Piece> entrySet : state.entrySet())
+            addPiece(entrySet.getKey(), entrySet.getValue());
+        reevaluate();
+    }
+
+    /*
+     * Copy constructor. `moves` can be shared because `reevaluate` always replaces
+     * it with a new instance instead of mutating it.
+     */
+    private Board(Board other) {
+        this.history = new History(other.history);
+        this.recursiveReevaluate = other.recursiveReevaluate;
+        System.arraycopy(other.setUpDoubleSteps, 0, setUpDoubleSteps, 0, setUpDoubleSteps.length);
+        for (Entry<Pos, Piece> entrySet : other.boardState.entrySet())
+            addPiece(entrySet.getKey(), entrySet.getValue());
+        this.moves = other.moves;
+    }
+
     // ###########################################################################
     // Private mutating operations
     // ###########################################################################
@@ -194,6 +562,7 @@ public class Board implements Serializable {
             throw new IllegalArgumentException(
                     "Invalid Piece: This piece is already at another position. Use .move instead.");
         }
+        positionHash ^= Zobrist.key(piece, pos);
 
         if (piece instanceof King king) {
             if (kingsMap.get(king.color) != null)
@@ -212,6 +581,7 @@ public class Board implements Serializable {
         Pos pos = boardState.inverse().remove(piece);
         if (pos == null)
             throw new IllegalArgumentException("Invalid Piece: This piece is not on the board.");
+        positionHash ^= Zobrist.key(piece, pos);
         if (piece instanceof King king)
             kingsMap.remove(king.color);
     }
@@ -228,6 +598,9 @@ public class Board implements Serializable {
             throw new IllegalArgumentException("Invalid piece: This piece is not on the board.");
         Piece capturedPiece = getPiece(toPos);
         boardState.forcePut(toPos, piece);
+        positionHash ^= Zobrist.key(piece, fromPos) ^ Zobrist.key(piece, toPos);
+        if (capturedPiece != null)
+            positionHash ^= Zobrist.key(capturedPiece, toPos);
         return capturedPiece;
     }
 
@@ -262,13 +635,16 @@ public class Board implements Serializable {
             King.calculateMoves(kingsMap.values(), makeGetPiece(), makeGetPos(), makeDangerMap(), makeMovedBefore())
                     .forEach(moves::add);
 
-            if (recursiveReevaluate)
+            // Hypothetical boards only answer which squares are attacked: no color
+            // is eliminated there, or its king and its attacks would be missing.
+            if (recursiveReevaluate) {
                 preventMovesIfInCheck();
 
-            for (King king : kingsMap.values()) {
-                Color color = king.color;
-                if (moves.hasNoMoves(color)) {
-                    remove(color);
+                for (King king : new ArrayList<>(kingsMap.values())) {
+                    Color color = king.color;
+                    if (moves.hasNoMoves(color)) {
+                        remove(color);
+                    }
                 }
             }
 
@@ -296,19 +672,23 @@ public class Board implements Serializable {
     }
 
     public boolean isCheckmate(Color currentTurn) {
-        return moves.hasNoMoves(currentTurn);
+        return moves().hasNoMoves(currentTurn);
     }
 
     public void remove(Color color) {
+        // Recorded in the last move, so that taking it back brings the color back.
+        Ply ply = history.getLastPly();
         for (Piece piece : getPieces(color)) {
             if (piece.color == color) {
+                if (ply != null)
+                    ply.addEliminatedPiece(getPos(piece), piece);
                 removePiece(piece);
             }
         }
         kingsMap.remove(color);
     }
 
-    private Collection<Piece> getPieces(Color color) {
+    public Collection<Piece> getPieces(Color color) {
         Collection<Piece> pieces = new ArrayList<>();
         for (Piece piece : boardState.values()) {
             if (piece.color == color) {
@@ -2,65 +2,268 @@ package org.chess.board;
 
 import org.chess.Color;
 import org.chess.Move;
+import org.chess.Pos;
 import org.chess.pieces.Piece;
 
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.EnumMap;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Moves of the match, in order.
+ *
+ * Moves are stored once, in `gameHistory`; per piece and per color there are
+ * only lists of indices into it. The queries used by every `reevaluate`
+ * (`movedBefore` and `getLastMove`) are O(1) and don't allocate, and the lists
+ * returned are read-only views that follow later moves.
+ *
+ * Every `CHECKPOINT_INTERVAL` plies the placement of the pieces is stored, so
+ * that the board at any ply can be rebuilt by replaying at most that many moves
+ * (see `Board.getBoardAt`).
+ */
 public class History implements Serializable{
-  private final Map<Color, List<Move>> colorWiseHistory = new EnumMap<>(Color.class);
-  private final Map<Piece, List<Move>> pieceWiseHistory = new HashMap<>();
+  public static final int CHECKPOINT_INTERVAL = 16;
+
   private final List<Move> gameHistory = new ArrayList<>();
 
+  /* Pieces get a dense id the first time they move. */
+  private final Map<Piece, Integer> pieceIds = new IdentityHashMap<>();
+  private final List<Indices> pieceWiseHistory = new ArrayList<>();
+  private final BitSet movedPieces = new BitSet();
+
+  private final Indices[] colorWiseHistory = new Indices[Color.values().length];
+  private final Move[] lastMoveByColor = new Move[Color.values().length];
+
+  /* Undo stack, parallel to gameHistory. Moves added with addMove have no Ply
+   * and can't be taken back. */
+  private final List<Ply> plies = new ArrayList<>();
+
+  /* Placement before ply i * CHECKPOINT_INTERVAL, or null if it wasn't taken. */
+  private final List<Map<Pos, Piece>> checkpoints = new ArrayList<>();
+
   public History() {
+    for (int i = 0; i < colorWiseHistory.length; i++)
+      colorWiseHistory[i] = new Indices();
+  }
+
+  History(History other) {
+    gameHistory.addAll(other.gameHistory);
+    pieceIds.putAll(other.pieceIds);
+    for (Indices indices : other.pieceWiseHistory)
+      pieceWiseHistory.add(indices.copy());
+    movedPieces.or(other.movedPieces);
+    for (int i = 0; i < colorWiseHistory.length; i++)
+      colorWiseHistory[i] = other.colorWiseHistory[i].copy();
+    System.arraycopy(other.lastMoveByColor, 0, lastMoveByColor, 0, lastMoveByColor.length);
+    plies.addAll(other.plies);
+    checkpoints.addAll(other.checkpoints);
+    copyLastPly();
+  }
+
+  /* The last ply may still receive eliminations, so it's not shared. */
+  private void copyLastPly() {
+    int last = plies.size() - 1;
+    if (last >= 0 && plies.get(last) != null)
+      plies.set(last, plies.get(last).copy());
   }
 
   public void addMove(Move move) {
+    append(move, null);
+  }
+
+  void addPly(Ply ply) {
+    append(ply.getMove(), ply);
+  }
+
+  private void append(Move move, Ply ply) {
     if (move == null) return;
-    gameHistory.add(move); 
-    pieceWiseHistory.computeIfAbsent(move.piece(), k -> new ArrayList<>()).add(move);
-    colorWiseHistory.computeIfAbsent(move.piece().color, k -> new ArrayList<>()).add(move);
+    int index = gameHistory.size();
+    gameHistory.add(move);
+    plies.add(ply);
+
+    Integer id = pieceIds.get(move.piece());
+    if (id == null) {
+      id = pieceWiseHistory.size();
+      pieceIds.put(move.piece(), id);
+      pieceWiseHistory.add(new Indices());
+    }
+    pieceWiseHistory.get(id).add(index);
+    movedPieces.set(id);
+
+    int color = move.piece().color.ordinal();
+    colorWiseHistory[color].add(index);
+    lastMoveByColor[color] = move;
+  }
+
+  /**
+   * @return the record of the last move, or null if it can't be taken back.
+   */
+  public Ply getLastPly() {
+    return plies.isEmpty() ? null : plies.get(plies.size() - 1);
+  }
+
+  /** @return the record of the move at `index`, or null if there is none. */
+  public Ply getPly(int index) {
+    return plies.get(index);
+  }
+
+  /* Removes the last move in constant time. */
+  Ply removeLastPly() {
+    Ply ply = getLastPly();
+    if (ply == null)
+      return null;
+    plies.remove(plies.size() - 1);
+    Move move = gameHistory.remove(gameHistory.size() - 1);
+    // A checkpoint is taken before its ply, so only later ones become invalid.
+    while (checkpoints.size() > gameHistory.size() / CHECKPOINT_INTERVAL + 1)
+      checkpoints.remove(checkpoints.size() - 1);
+
+    int id = pieceIds.get(move.piece());
+    Indices pieceMoves = pieceWiseHistory.get(id);
+    pieceMoves.removeLast();
+    movedPieces.set(id, pieceMoves.size > 0);
+
+    int color = move.piece().color.ordinal();
+    Indices colorMoves = colorWiseHistory[color];
+    colorMoves.removeLast();
+    lastMoveByColor[color] = colorMoves.size > 0 ? gameHistory.get(colorMoves.last()) : null;
+    return ply;
   }
 
+  /** @return a read-only view of the piece's moves. */
   public List<Move> getMoves(Piece piece) {
-    List<Move> list = pieceWiseHistory.computeIfAbsent(piece, k -> new ArrayList<>());
-    return new ArrayList<>(list);
+    Integer id = pieceIds.get(piece);
+    return id != null ? new MovesView(pieceWiseHistory.get(id)) : Collections.emptyList();
   }
 
+  /** @return a read-only view of the color's moves. */
   public List<Move> getMoves(Color color) {
-    List<Move> list = colorWiseHistory.computeIfAbsent(color, k -> new ArrayList<>());
-    return new ArrayList<>(list);
+    return new MovesView(colorWiseHistory[color.ordinal()]);
   }
 
+  /** @return a read-only view of every move. */
   public List<Move> getMoves() {
-    return new ArrayList<>(gameHistory);
+    return Collections.unmodifiableList(gameHistory);
+  }
+
+  public int size() {
+    return gameHistory.size();
   }
-  /**
-  * Retorna uma visão imutável do histórico completo do jogo.
-  * 
-  * @return lista imutável de todos os movimentos realizados no jogo
-  */
 
   public Move getLastMove() {
     return (gameHistory.size() > 0) ? gameHistory.get(gameHistory.size() - 1) : null;
   }
 
   public Move getLastMove(Color color) {
-    var playerMoves = colorWiseHistory.computeIfAbsent(color, k-> new ArrayList<>());
-    return (playerMoves.size() > 0) ? playerMoves.get(playerMoves.size() - 1) : null;
+    return lastMoveByColor[color.ordinal()];
   }
 
-    public Move getLastMove(Piece piece) {
-      var pieceMoves = pieceWiseHistory.computeIfAbsent(piece, k-> new ArrayList<>());
-    return (pieceMoves.size() > 0) ? pieceMoves.get(pieceMoves.size() - 1) : null;
+  public Move getLastMove(Piece piece) {
+    Integer id = pieceIds.get(piece);
+    if (id == null || !movedPieces.get(id))
+      return null;
+    return gameHistory.get(pieceWiseHistory.get(id).last());
   }
 
   public boolean movedBefore(Piece piece) {
-    return getLastMove(piece) != null;
+    Integer id = pieceIds.get(piece);
+    return id != null && movedPieces.get(id);
+  }
+
+  // ###########################################################################
+  // Checkpoints
+  // ###########################################################################
+
+  /* Whether the placement should be stored before the next move. */
+  boolean needsCheckpoint() {
+    int index = gameHistory.size() / CHECKPOINT_INTERVAL;
+    return gameHistory.size() % CHECKPOINT_INTERVAL == 0
+        && (checkpoints.size() <= index || checkpoints.get(index) == null);
+  }
+
+  /* Stores the placement before the next move. `placement` must not change. */
+  void addCheckpoint(Map<Pos, Piece> placement) {
+    int index = gameHistory.size() / CHECKPOINT_INTERVAL;
+    while (checkpoints.size() <= index)
+      checkpoints.add(null);
+    checkpoints.set(index, placement);
+  }
+
+  /**
+   * @return the last ply, not after `ply`, that has a checkpoint, or -1 if
+   *         there is none.
+   */
+  int getCheckpointBefore(int ply) {
+    for (int index = Math.min(ply / CHECKPOINT_INTERVAL, checkpoints.size() - 1); index >= 0; index--)
+      if (checkpoints.get(index) != null)
+        return index * CHECKPOINT_INTERVAL;
+    return -1;
+  }
+
+  Map<Pos, Piece> getCheckpoint(int ply) {
+    return checkpoints.get(ply / CHECKPOINT_INTERVAL);
+  }
+
+  /* Copy of the history up to, not including, `ply`. */
+  History prefix(int ply) {
+    History prefix = new History();
+    for (int i = 0; i < ply; i++)
+      prefix.append(gameHistory.get(i), plies.get(i));
+    prefix.checkpoints.addAll(checkpoints.subList(0, Math.min(checkpoints.size(), ply / CHECKPOINT_INTERVAL + 1)));
+    prefix.copyLastPly();
+    return prefix;
+  }
+
+  /* Growable list of primitive indices into `gameHistory`. */
+  private static final class Indices implements Serializable {
+    private int[] values = new int[8];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length)
+        values = Arrays.copyOf(values, size * 2);
+      values[size++] = value;
+    }
+
+    void removeLast() {
+      size--;
+    }
+
+    int last() {
+      return values[size - 1];
+    }
+
+    Indices copy() {
+      Indices copy = new Indices();
+      copy.values = Arrays.copyOf(values, Math.max(size, 8));
+      copy.size = size;
+      return copy;
+    }
+  }
+
+  private final class MovesView extends AbstractList<Move> {
+    private final Indices indices;
+
+    MovesView(Indices indices) {
+      this.indices = indices;
+    }
+
+    @Override
+    public Move get(int index) {
+      if (index < 0 || index >= indices.size)
+        throw new IndexOutOfBoundsException(index);
+      return gameHistory.get(indices.values[index]);
+    }
+
+    @Override
+    public int size() {
+      return indices.size;
+    }
   }
-  
 }
@@ -1,495 +1,466 @@
 package org.chess.board;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.StreamWriteFeature;
 import org.chess.*;
 import org.chess.pieces.*;
 
-import java.lang.reflect.Field;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
- * Serializa e deserializa o jogo COMPLETO incluindo todo o histórico.
- * Captura o estado atual sem modificar classes existentes.
+ * Serializa e deserializa o jogo COMPLETO em JSON, incluindo todo o histórico.
+ *
+ * A escrita e a leitura são em streaming (Jackson), direto de/para o stream,
+ * sem montar uma árvore de objetos intermediária, e as duas são lineares no
+ * número de lances: a origem, a captura e as eliminações de cada lance vêm do
+ * seu `Ply`. A saída pode ser indentada ou compacta.
+ *
+ * Formato:
+ * <pre>
+ * {
+ *   "gameInfo": {"currentTurn", "gameOver", "totalMoves", "eliminatedPlayers": [cor]},
+ *   "boardState": {
+ *     "pieces": [{"position": {"row", "column"}, "piece": {"type", "color", "id"}}],
+ *     "pieceMetadata": {id: {"pieceId", "hasMoved", "moveCount", "lastMoveType"}}
+ *   },
+ *   "players": {cor: {"color", "timeLeftNanos", "clockPaused", "eliminated", "movesCount", "capturedPieces": [id]}},
+ *   "history": {"allMoves": [{"moveNumber", "pieceId", "pieceType", "pieceColor", "fromPosition",
+ *     "toPosition", "moveType", "captureInfo", "enPassantVictimId",
+ *     "eliminatedPieces": [{"pieceId", "position"}], "notation"}]}
+ * }
+ * </pre>
+ *
+ * Peças promovidas têm o id do peão seguido do tipo, por exemplo
+ * "GREEN_KING_PAWN_QUEEN".
  */
 public class JsonGameSerializer {
 
-    private static final Gson gson = new GsonBuilder()
-            .setPrettyPrinting()
-            .create();
+    private static final JsonFactory factory = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+            .build();
+
+    private static final List<Pos> VALID_POSITIONS = Pos.getValidPositions();
+    private static final int SQUARES = 14 * 14;
 
     /**
-     * Converte o estado COMPLETO do jogo para JSON.
-     * Reconstrói as informações de origem dos movimentos através de simulação reversa.
+     * Converte o estado COMPLETO do jogo para JSON indentado.
      */
-    public static String toJson(App app) throws Exception {
-        JsonGameState state = new JsonGameState();
-        
-        // Acessar campos privados
-        Field boardField = App.class.getDeclaredField("board");
-        boardField.setAccessible(true);
-        Board board = (Board) boardField.get(app);
-
-        Field playersField = App.class.getDeclaredField("players");
-        playersField.setAccessible(true);
-        @SuppressWarnings("unchecked")
-        Map<Color, Player> players = (Map<Color, Player>) playersField.get(app);
-
-        // Acessar histórico do Board
-        History history = board.history;
+    public static String toJson(App app) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(app, out, true);
+        return out.toString(StandardCharsets.UTF_8);
+    }
 
-        // Criar mapeamento de peças para IDs
-        Map<Piece, String> pieceToIdMap = createPieceIdMap(players);
-        Map<String, Piece> idToPieceMap = createReversePieceMap(pieceToIdMap);
-
-        // === INFORMAÇÕES DO JOGO ===
-        JsonGameState.GameInfo gameInfo = new JsonGameState.GameInfo();
-        gameInfo.setCurrentTurn(app.getCurrentTurn().name());
-        gameInfo.setGameOver(app.isGameOver());
-        
-        List<Move> allMoves = history.getMoves();
-        gameInfo.setTotalMoves(allMoves.size());
-        
-        // Detectar jogadores eliminados
-        List<String> eliminated = new ArrayList<>();
-        for (Color color : Color.values()) {
-            Player player = players.get(color);
-            if (player != null) {
-                Piece king = player.pieces.get(PieceType.KING);
-                if (board.getPos(king) == null) {
-                    eliminated.add(color.name());
-                }
+    /**
+     * Reconstrói o jogo COMPLETO a partir de JSON, substituindo o jogo do App.
+     */
+    public static void fromJson(App app, String json) throws IOException {
+        app.replaceGame(read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    /**
+     * Escreve o jogo no stream, que não é fechado.
+     *
+     * @param pretty se false, a saída é compacta (sem espaços nem quebras de linha).
+     * @throws IOException se algum lance não tem registro de origem.
+     */
+    public static void write(App app, OutputStream out, boolean pretty) throws IOException {
+        Board board = app.getBoardSnapshot();
+        History history = board.history;
+        Map<Piece, String> pieceIds = createPieceIdMap(app, history);
+
+        try (JsonGenerator json = factory.createGenerator(out)) {
+            if (pretty)
+                json.useDefaultPrettyPrinter();
+            json.writeStartObject();
+
+            // === INFORMAÇÕES DO JOGO ===
+            json.writeObjectFieldStart("gameInfo");
+            json.writeStringField("currentTurn", app.getCurrentTurn().name());
+            json.writeBooleanField("gameOver", app.isGameOver());
+            json.writeNumberField("totalMoves", history.size());
+            json.writeArrayFieldStart("eliminatedPlayers");
+            for (Color color : Color.values())
+                if (!board.isInGame(color))
+                    json.writeString(color.name());
+            json.writeEndArray();
+            json.writeEndObject();
+
+            // === ESTADO DO TABULEIRO ===
+            json.writeObjectFieldStart("boardState");
+            json.writeArrayFieldStart("pieces");
+            for (Pos pos : VALID_POSITIONS) {
+                Piece piece = board.getPiece(pos);
+                if (piece == null)
+                    continue;
+                json.writeStartObject();
+                writePosition(json, "position", pos);
+                json.writeObjectFieldStart("piece");
+                json.writeStringField("type", getPieceTypeName(piece));
+                json.writeStringField("color", piece.color.name());
+                json.writeStringField("id", pieceIds.get(piece));
+                json.writeEndObject();
+                json.writeEndObject();
             }
-        }
-        gameInfo.setEliminatedPlayers(eliminated);
-        state.setGameInfo(gameInfo);
-
-        // === ESTADO DO TABULEIRO ===
-        JsonGameState.BoardState boardState = new JsonGameState.BoardState();
-        List<JsonGameState.PiecePosition> pieces = new ArrayList<>();
-        Map<String, JsonGameState.PieceMetadata> pieceMetadata = new HashMap<>();
-        
-        for (Pos pos : Pos.getValidPositions()) {
-            Piece piece = board.getPiece(pos);
-            if (piece != null) {
-                String pieceId = pieceToIdMap.get(piece);
-                
-                // Adicionar posição da peça
-                JsonGameState.Position position = new JsonGameState.Position(pos.row(), pos.column());
-                String pieceType = getPieceTypeName(piece);
-                
-                JsonGameState.Piece jsonPiece = new JsonGameState.Piece(
-                    pieceType,
-                    piece.color.name(),
-                    pieceId
-                );
-                
-                pieces.add(new JsonGameState.PiecePosition(position, jsonPiece));
-                
-                // Adicionar metadados da peça
-                JsonGameState.PieceMetadata metadata = new JsonGameState.PieceMetadata();
-                metadata.setPieceId(pieceId);
-                metadata.setHasMoved(history.movedBefore(piece));
-                
-                List<Move> pieceMoves = history.getMoves(piece);
-                metadata.setMoveCount(pieceMoves.size());
-                
-                if (!pieceMoves.isEmpty()) {
-                    Move lastMove = pieceMoves.get(pieceMoves.size() - 1);
-                    metadata.setLastMoveType(lastMove.type().name());
-                }
-                
-                pieceMetadata.put(pieceId, metadata);
+            json.writeEndArray();
+            json.writeObjectFieldStart("pieceMetadata");
+            for (Pos pos : VALID_POSITIONS) {
+                Piece piece = board.getPiece(pos);
+                if (piece == null)
+                    continue;
+                String pieceId = pieceIds.get(piece);
+                Move lastMove = history.getLastMove(piece);
+                json.writeObjectFieldStart(pieceId);
+                json.writeStringField("pieceId", pieceId);
+                json.writeBooleanField("hasMoved", history.movedBefore(piece));
+                json.writeNumberField("moveCount", history.getMoves(piece).size());
+                if (lastMove != null)
+                    json.writeStringField("lastMoveType", lastMove.type().name());
+                json.writeEndObject();
             }
-        }
-        
-        boardState.setPieces(pieces);
-        boardState.setPieceMetadata(pieceMetadata);
-        state.setBoardState(boardState);
-
-        // === ESTADO DOS JOGADORES ===
-        Map<String, JsonGameState.PlayerState> playerStates = new HashMap<>();
-        for (Color color : Color.values()) {
-            Player player = players.get(color);
-            if (player != null) {
-                JsonGameState.PlayerState playerState = new JsonGameState.PlayerState();
-                playerState.setColor(color.name());
-                playerState.setTimeLeftNanos(player.clock.getTimeLeftNanosecs());
-                
-                // Acessar estado do Clock
-                Field pausedField = Clock.class.getDeclaredField("paused");
-                pausedField.setAccessible(true);
-                boolean isPaused = (boolean) pausedField.get(player.clock);
-                playerState.setClockPaused(isPaused);
-                
-                Field resumedTimestampField = Clock.class.getDeclaredField("resumedTimestamp");
-                resumedTimestampField.setAccessible(true);
-                long resumedTimestamp = (long) resumedTimestampField.get(player.clock);
-                playerState.setLastResumedTimestamp(resumedTimestamp);
-                
-                playerState.setEliminated(eliminated.contains(color.name()));
-                playerState.setMovesCount(history.getMoves(color).size());
-                
-                // Lista de peças capturadas
-                List<String> capturedPieces = new ArrayList<>();
-                for (Map.Entry<PieceType, Piece> entry : player.pieces.entrySet()) {
-                    Piece piece = entry.getValue();
-                    if (board.getPos(piece) == null) {
-                        capturedPieces.add(pieceToIdMap.get(piece));
-                    }
-                }
-                playerState.setCapturedPieces(capturedPieces);
-                
-                playerStates.put(color.name(), playerState);
+            json.writeEndObject();
+            json.writeEndObject();
+
+            // === ESTADO DOS JOGADORES ===
+            json.writeObjectFieldStart("players");
+            for (Color color : Color.values()) {
+                Player player = app.getPlayer(color);
+                json.writeObjectFieldStart(color.name());
+                json.writeStringField("color", color.name());
+                json.writeNumberField("timeLeftNanos", player.clock.getTimeLeftNanosecs());
+                json.writeBooleanField("clockPaused", player.clock.isPaused());
+                json.writeBooleanField("eliminated", !board.isInGame(color));
+                json.writeNumberField("movesCount", history.getMoves(color).size());
+                json.writeArrayFieldStart("capturedPieces");
+                for (Piece piece : player.pieces.values())
+                    if (board.getPos(piece) == null)
+                        json.writeString(pieceIds.get(piece));
+                json.writeEndArray();
+                json.writeEndObject();
             }
-        }
-        state.setPlayers(playerStates);
+            json.writeEndObject();
 
-        // === HISTÓRICO COMPLETO COM RECONSTRUÇÃO ===
-        JsonGameState.HistoryState historyState = buildCompleteHistory(
-            allMoves, board, players, pieceToIdMap
-        );
-        state.setHistory(historyState);
+            // === HISTÓRICO ===
+            json.writeObjectFieldStart("history");
+            json.writeArrayFieldStart("allMoves");
+            for (int i = 0; i < history.size(); i++)
+                writeMove(json, i, history.getPly(i), pieceIds);
+            json.writeEndArray();
+            json.writeEndObject();
 
-        return gson.toJson(state);
+            json.writeEndObject();
+        }
     }
 
     /**
-     * Reconstrói o histórico completo através de simulação do jogo.
-     * Cria um jogo inicial e replica cada movimento para capturar as posições de origem.
+     * Lê um jogo escrito por `write` (ou pela versão anterior do formato) e o
+     * reconstrói refazendo os lances com `App.doMove`: cada lance precisa estar
+     * entre os lances possíveis da posição, e as capturas e eliminações saem das
+     * regras. O custo é linear no número de lances, e o jogo pode ser desfeito
+     * normalmente.
+     *
+     * Só a origem, o destino e o tipo de cada lance são usados; "captureInfo" e
+     * "eliminatedPieces" são opcionais. Sem a origem (exportações antigas não a
+     * têm para as peças promovidas), o lance é o único da vez com aquele tipo de
+     * peça, destino e tipo de lance. A posição final é conferida com a de
+     * "boardState".
+     *
+     * @throws IOException se o JSON é inválido ou algum lance não é possível.
      */
-    private static JsonGameState.HistoryState buildCompleteHistory(
-            List<Move> originalMoves, Board currentBoard, 
-            Map<Color, Player> currentPlayers, Map<Piece, String> pieceToIdMap) {
-        
-        JsonGameState.HistoryState historyState = new JsonGameState.HistoryState();
-        List<JsonGameState.MoveRecord> moveRecords = new ArrayList<>();
-        
-        // Criar um jogo simulado para rastrear posições
-        Map<Piece, Pos> simulatedPositions = new HashMap<>();
-        
-        // Inicializar posições iniciais
-        for (Color color : Color.values()) {
-            Player player = currentPlayers.get(color);
-            if (player != null) {
-                for (PieceType pieceType : PieceType.values()) {
-                    Piece piece = player.pieces.get(pieceType);
-                    Pos initialPos = pieceType.initialPos(color);
-                    simulatedPositions.put(piece, initialPos);
+    public static App read(InputStream in) throws IOException {
+        Color currentTurn = null;
+        long[] clockTimes = null;
+        String[] savedTypes = null;
+        List<MoveRecord> moves = new ArrayList<>();
+
+        try (JsonParser json = factory.createParser(in)) {
+            expect(json.nextToken(), JsonToken.START_OBJECT);
+            while (json.nextToken() == JsonToken.FIELD_NAME) {
+                String field = json.getCurrentName();
+                json.nextToken();
+                switch (field) {
+                    case "gameInfo" -> {
+                        while (json.nextToken() == JsonToken.FIELD_NAME) {
+                            String infoField = json.getCurrentName();
+                            json.nextToken();
+                            if (infoField.equals("currentTurn"))
+                                currentTurn = parseColor(json.getValueAsString());
+                            else
+                                json.skipChildren();
+                        }
+                    }
+                    case "boardState" -> savedTypes = readBoardState(json);
+                    case "players" -> clockTimes = readClockTimes(json);
+                    case "history" -> {
+                        while (json.nextToken() == JsonToken.FIELD_NAME) {
+                            String historyField = json.getCurrentName();
+                            json.nextToken();
+                            if (!historyField.equals("allMoves")) {
+                                json.skipChildren();
+                                continue;
+                            }
+                            expect(json.currentToken(), JsonToken.START_ARRAY);
+                            while (json.nextToken() == JsonToken.START_OBJECT)
+                                moves.add(readMove(json));
+                        }
+                    }
+                    default -> json.skipChildren();
                 }
             }
         }
-        
-        // Processar cada movimento
-        for (int i = 0; i < originalMoves.size(); i++) {
-            Move move = originalMoves.get(i);
-            JsonGameState.MoveRecord record = new JsonGameState.MoveRecord();
-            
-            record.setMoveNumber(i + 1);
-            record.setTimestamp(System.currentTimeMillis()); // Aproximação
-            
-            Piece movingPiece = move.piece();
-            record.setPieceId(pieceToIdMap.get(movingPiece));
-            record.setPieceType(getPieceTypeName(movingPiece));
-            record.setPieceColor(movingPiece.color.name());
-            
-            // Capturar posição de origem da simulação
-            Pos fromPos = simulatedPositions.get(movingPiece);
-            if (fromPos != null) {
-                record.setFromPosition(new JsonGameState.Position(fromPos.row(), fromPos.column()));
-            }
-            
-            Pos toPos = move.toPos();
-            record.setToPosition(new JsonGameState.Position(toPos.row(), toPos.column()));
-            record.setMoveType(move.type().name());
-            
-            // Verificar se houve captura
-            Piece capturedPiece = findPieceAtPosition(simulatedPositions, toPos, movingPiece);
-            if (capturedPiece != null) {
-                JsonGameState.CaptureInfo captureInfo = new JsonGameState.CaptureInfo();
-                captureInfo.setCapturedPieceId(pieceToIdMap.get(capturedPiece));
-                captureInfo.setCapturedPieceType(getPieceTypeName(capturedPiece));
-                captureInfo.setCapturedPieceColor(capturedPiece.color.name());
-                captureInfo.setCapturedAtPosition(new JsonGameState.Position(toPos.row(), toPos.column()));
-                record.setCaptureInfo(captureInfo);
-                
-                // Remover peça capturada da simulação
-                simulatedPositions.remove(capturedPiece);
-            }
-            
-            // En passant
-            if (move.enPassantVictim() != null) {
-                record.setEnPassantVictimId(pieceToIdMap.get(move.enPassantVictim()));
-                simulatedPositions.remove(move.enPassantVictim());
-            }
-            
-            // Atualizar posição simulada
-            simulatedPositions.put(movingPiece, toPos);
-            
-            // Tratamento especial para roque
-            if (move.type() == Move.MoveType.KINGSIDE_CASTLING || 
-                move.type() == Move.MoveType.QUEENSIDE_CASTLING) {
-                handleCastlingInSimulation(move, movingPiece.color, simulatedPositions, currentPlayers);
-            }
-            
-            // Notação
-            record.setNotation(generateNotation(move, fromPos, toPos, capturedPiece != null));
-            
-            moveRecords.add(record);
+        if (currentTurn == null)
+            throw new IOException("JSON sem gameInfo.currentTurn");
+
+        App app = new App();
+        for (int i = 0; i < moves.size(); i++) {
+            MoveRecord record = moves.get(i);
+            Pos from = record.from() != null ? record.from() : findOrigin(app, record, i);
+            BinaryGameSerializer.applyMove(app, from, record.to(), record.type(), i);
         }
-        
-        historyState.setAllMoves(moveRecords);
-        
-        // Índices por cor
-        Map<String, List<Integer>> movesByColor = new HashMap<>();
-        for (Color color : Color.values()) {
-            List<Integer> indices = new ArrayList<>();
-            for (int i = 0; i < originalMoves.size(); i++) {
-                if (originalMoves.get(i).piece().color == color) {
-                    indices.add(i);
-                }
+        if (app.getCurrentTurn() != currentTurn)
+            throw new IOException("Turno gravado não confere com os lances");
+        if (savedTypes != null)
+            for (Pos pos : VALID_POSITIONS) {
+                Piece piece = app.getPiece(pos);
+                if (!Objects.equals(savedTypes[BinaryGameSerializer.squareIndex(pos)],
+                        piece != null ? getPieceTypeName(piece) : null))
+                    throw new IOException("Lances não chegam à posição gravada (casa " + pos + ")");
             }
-            movesByColor.put(color.name(), indices);
-        }
-        historyState.setMovesByColor(movesByColor);
-        
-        // Índices por peça
-        Map<String, List<Integer>> movesByPiece = new HashMap<>();
-        for (int i = 0; i < originalMoves.size(); i++) {
-            Move move = originalMoves.get(i);
-            String pieceId = pieceToIdMap.get(move.piece());
-            movesByPiece.computeIfAbsent(pieceId, k -> new ArrayList<>()).add(i);
-        }
-        historyState.setMovesByPiece(movesByPiece);
-        
-        return historyState;
+        if (clockTimes != null)
+            BinaryGameSerializer.restoreClocks(app, clockTimes);
+        return app;
     }
 
-    /**
-     * Encontra uma peça em uma posição específica na simulação.
+    /*
+     * Casa de origem de um lance gravado sem ela: a da única peça da vez, do
+     * tipo gravado, que tem o lance.
      */
-    private static Piece findPieceAtPosition(Map<Piece, Pos> positions, Pos targetPos, Piece excludePiece) {
-        for (Map.Entry<Piece, Pos> entry : positions.entrySet()) {
-            if (entry.getKey() != excludePiece && entry.getValue().equals(targetPos)) {
-                return entry.getKey();
+    private static Pos findOrigin(App app, MoveRecord record, int index) throws IOException {
+        Board board = app.getBoardSnapshot();
+        Pos origin = null;
+        for (Piece piece : board.getPieces(app.getCurrentTurn())) {
+            if (record.pieceType() != null && !record.pieceType().equals(getPieceTypeName(piece)))
+                continue;
+            Pos pos = board.getPos(piece);
+            for (Move move : app.getPossibleMoves(pos)) {
+                if (move.toPos().equals(record.to()) && move.type() == record.type()) {
+                    if (origin != null)
+                        throw new IOException("Lance " + index + " sem origem é ambíguo");
+                    origin = pos;
+                }
             }
         }
-        return null;
+        if (origin == null)
+            throw new IOException("Lance " + index + " inválido: " + record.to() + " (" + record.type() + ")");
+        return origin;
     }
 
-    /**
-     * Atualiza as posições das torres durante o roque na simulação.
-     */
-    private static void handleCastlingInSimulation(Move move, Color color, 
-                                                   Map<Piece, Pos> positions, 
-                                                   Map<Color, Player> players) {
-        Player player = players.get(color);
-        if (player == null) return;
-        
-        if (move.type() == Move.MoveType.KINGSIDE_CASTLING) {
-            Piece rook = player.pieces.get(PieceType.KINGSIDE_ROOK);
-            Pos rookNewPos = PieceType.KINGSIDE_BISHOP.initialPos(color);
-            positions.put(rook, rookNewPos);
-        } else if (move.type() == Move.MoveType.QUEENSIDE_CASTLING) {
-            Piece rook = player.pieces.get(PieceType.QUEENSIDE_ROOK);
-            Pos rookNewPos = PieceType.QUEEN.initialPos(color);
-            positions.put(rook, rookNewPos);
-        }
-    }
+    // ===== ESCRITA =====
 
-    /**
-     * Gera notação algébrica do movimento.
-     */
-    private static String generateNotation(Move move, Pos fromPos, Pos toPos, boolean isCapture) {
-        StringBuilder notation = new StringBuilder();
-        
+    private static void writeMove(JsonGenerator json, int index, Ply ply, Map<Piece, String> pieceIds)
+            throws IOException {
+        if (ply == null)
+            throw new IOException("Lance " + index + " sem casa de origem registrada");
+        Move move = ply.getMove();
         Piece piece = move.piece();
-        
-        // Roque tem notação especial
-        if (move.type() == Move.MoveType.KINGSIDE_CASTLING) {
-            return "O-O";
-        } else if (move.type() == Move.MoveType.QUEENSIDE_CASTLING) {
-            return "O-O-O";
-        }
-        
-        // Tipo da peça (exceto peão)
-        if (!(piece instanceof Pawn)) {
-            notation.append(getPieceTypeName(piece).charAt(0));
-        }
-        
-        // Para peão em captura, adicionar coluna de origem
-        if (piece instanceof Pawn && isCapture && fromPos != null) {
-            notation.append((char)('a' + fromPos.column() - 1));
+        Piece captured = ply.getCapturedPiece();
+
+        json.writeStartObject();
+        json.writeNumberField("moveNumber", index + 1);
+        json.writeStringField("pieceId", pieceIds.get(piece));
+        json.writeStringField("pieceType", getPieceTypeName(piece));
+        json.writeStringField("pieceColor", piece.color.name());
+        writePosition(json, "fromPosition", ply.getFromPos());
+        writePosition(json, "toPosition", move.toPos());
+        json.writeStringField("moveType", move.type().name());
+        if (captured != null) {
+            json.writeObjectFieldStart("captureInfo");
+            json.writeStringField("capturedPieceId", pieceIds.get(captured));
+            json.writeStringField("capturedPieceType", getPieceTypeName(captured));
+            json.writeStringField("capturedPieceColor", captured.color.name());
+            writePosition(json, "capturedAtPosition", ply.getCapturedPos());
+            json.writeEndObject();
         }
-        
-        // Captura
-        if (isCapture || move.type() == Move.MoveType.EN_PASSANT) {
-            notation.append("x");
-        }
-        
-        // Posição de destino
-        notation.append((char)('a' + toPos.column() - 1));
-        notation.append(15 - toPos.row());
-        
-        // Promoção
-        switch (move.type()) {
-            case QUEEN_PROMOTION -> notation.append("=Q");
-            case ROOK_PROMOTION -> notation.append("=R");
-            case BISHOP_PROMOTION -> notation.append("=B");
-            case KNIGHT_PROMOTION -> notation.append("=N");
-            default -> {}
+        if (move.enPassantVictim() != null)
+            json.writeStringField("enPassantVictimId", pieceIds.get(move.enPassantVictim()));
+        if (!ply.getEliminatedPieces().isEmpty()) {
+            json.writeArrayFieldStart("eliminatedPieces");
+            for (Map.Entry<Pos, Piece> entry : ply.getEliminatedPieces().entrySet()) {
+                json.writeStartObject();
+                json.writeStringField("pieceId", pieceIds.get(entry.getValue()));
+                writePosition(json, "position", entry.getKey());
+                json.writeEndObject();
+            }
+            json.writeEndArray();
         }
-        
-        return notation.toString();
+        json.writeStringField("notation", PgnGameSerializer.notation(move, ply.getFromPos(),
+                captured != null && move.type() != Move.MoveType.EN_PASSANT, false));
+        json.writeEndObject();
     }
 
-    /**
-     * Reconstrói o jogo COMPLETO a partir de JSON.
-     */
-    public static void fromJson(App app, String json) throws Exception {
-        JsonGameState state = gson.fromJson(json, JsonGameState.class);
-
-        Field boardField = App.class.getDeclaredField("board");
-        boardField.setAccessible(true);
-
-        Field playersField = App.class.getDeclaredField("players");
-        playersField.setAccessible(true);
+    private static void writePosition(JsonGenerator json, String field, Pos pos) throws IOException {
+        json.writeObjectFieldStart(field);
+        json.writeNumberField("row", pos.row());
+        json.writeNumberField("column", pos.column());
+        json.writeEndObject();
+    }
 
-        Field currentTurnField = App.class.getDeclaredField("currentTurn");
-        currentTurnField.setAccessible(true);
+    // ===== LEITURA =====
+
+    private static long[] readClockTimes(JsonParser json) throws IOException {
+        long[] clockTimes = new long[Color.values().length];
+        Arrays.fill(clockTimes, App.DEFAULT_TIME_NANOSECS);
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            Color color = parseColor(json.getCurrentName());
+            expect(json.nextToken(), JsonToken.START_OBJECT);
+            while (json.nextToken() == JsonToken.FIELD_NAME) {
+                String field = json.getCurrentName();
+                json.nextToken();
+                if (field.equals("timeLeftNanos"))
+                    clockTimes[color.ordinal()] = json.getLongValue();
+                else
+                    json.skipChildren();
+            }
+        }
+        return clockTimes;
+    }
 
-        Field gameOverField = App.class.getDeclaredField("gameOver");
-        gameOverField.setAccessible(true);
+    /*
+     * Um lance lido: origem (null se não foi gravada), destino, tipo do lance e
+     * tipo da peça (null se não foi gravado).
+     */
+    private record MoveRecord(Pos from, Pos to, Move.MoveType type, String pieceType) {
+    }
 
-        // Criar jogadores com tempos corretos
-        Map<Color, Player> newPlayers = new EnumMap<>(Color.class);
-        for (Color color : Color.values()) {
-            JsonGameState.PlayerState playerState = state.getPlayers().get(color.name());
-            long timeLeft = (playerState != null) ? playerState.getTimeLeftNanos() : 10L * 60L * 1000000000L;
-            
-            Clock clock = new Clock(timeLeft);
-            
-            // Restaurar estado do clock
-            if (playerState != null) {
-                Field pausedField = Clock.class.getDeclaredField("paused");
-                pausedField.setAccessible(true);
-                pausedField.set(clock, playerState.isClockPaused());
-                
-                Field resumedTimestampField = Clock.class.getDeclaredField("resumedTimestamp");
-                resumedTimestampField.setAccessible(true);
-                resumedTimestampField.set(clock, playerState.getLastResumedTimestamp());
+    private static MoveRecord readMove(JsonParser json) throws IOException {
+        Pos from = null;
+        Pos to = null;
+        Move.MoveType type = null;
+        String pieceType = null;
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            String field = json.getCurrentName();
+            json.nextToken();
+            switch (field) {
+                case "fromPosition" -> from = json.currentToken() == JsonToken.VALUE_NULL ? null : readPosition(json);
+                case "toPosition" -> to = readPosition(json);
+                case "moveType" -> type = parseMoveType(json.getValueAsString());
+                case "pieceType" -> pieceType = json.getValueAsString();
+                default -> json.skipChildren();
             }
-            
-            Player player = new Player(clock, color);
-            newPlayers.put(color, player);
         }
+        if (to == null || type == null)
+            throw new IOException("Lance sem destino ou tipo");
+        return new MoveRecord(from, to, type, pieceType);
+    }
 
-        // Mapear peças
-        Map<String, Piece> pieceMap = createPieceMap(newPlayers);
-        Map<Pos, Piece> initialState = new HashMap<>();
-
-        for (JsonGameState.PiecePosition piecePos : state.getBoardState().getPieces()) {
-            Pos pos = new Pos(piecePos.getPosition().getRow(), piecePos.getPosition().getColumn());
-            String pieceId = piecePos.getPiece().getId();
-            
-            Piece piece = pieceMap.get(pieceId);
-            if (piece != null) {
-                initialState.put(pos, piece);
+    /* Tipo da peça em cada casa, indexado por `BinaryGameSerializer.squareIndex`. */
+    private static String[] readBoardState(JsonParser json) throws IOException {
+        String[] types = new String[SQUARES];
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            String field = json.getCurrentName();
+            json.nextToken();
+            if (!field.equals("pieces")) {
+                json.skipChildren();
+                continue;
+            }
+            expect(json.currentToken(), JsonToken.START_ARRAY);
+            while (json.nextToken() == JsonToken.START_OBJECT) {
+                Pos pos = null;
+                String type = null;
+                while (json.nextToken() == JsonToken.FIELD_NAME) {
+                    String pieceField = json.getCurrentName();
+                    json.nextToken();
+                    if (pieceField.equals("position")) {
+                        pos = readPosition(json);
+                    } else if (pieceField.equals("piece")) {
+                        while (json.nextToken() == JsonToken.FIELD_NAME) {
+                            String typeField = json.getCurrentName();
+                            json.nextToken();
+                            if (typeField.equals("type"))
+                                type = json.getValueAsString();
+                            else
+                                json.skipChildren();
+                        }
+                    } else {
+                        json.skipChildren();
+                    }
+                }
+                if (pos == null || type == null)
+                    throw new IOException("Peça sem posição ou tipo");
+                types[BinaryGameSerializer.squareIndex(pos)] = type;
             }
         }
+        return types;
+    }
 
-        // Criar tabuleiro
-        Board newBoard = new Board(initialState);
-        
-        // RESTAURAR O HISTÓRICO através de reflexão
-        restoreHistoryViaReflection(newBoard, state.getHistory(), pieceMap);
-
-        // Atualizar App
-        boardField.set(app, newBoard);
-        playersField.set(app, newPlayers);
-        currentTurnField.set(app, Color.valueOf(state.getGameInfo().getCurrentTurn()));
-        gameOverField.set(app, state.getGameInfo().isGameOver());
-
-        // Gerenciar relógios
-        for (Player player : newPlayers.values()) {
-            Field pausedField = Clock.class.getDeclaredField("paused");
-            pausedField.setAccessible(true);
-            if (!pausedField.getBoolean(player.clock)) {
-                player.clock.pause();
+    private static Pos readPosition(JsonParser json) throws IOException {
+        expect(json.currentToken(), JsonToken.START_OBJECT);
+        int row = 0;
+        int column = 0;
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            String field = json.getCurrentName();
+            json.nextToken();
+            switch (field) {
+                case "row" -> row = json.getIntValue();
+                case "column" -> column = json.getIntValue();
+                default -> json.skipChildren();
             }
         }
-        
-        if (!state.getGameInfo().isGameOver()) {
-            Color currentTurn = Color.valueOf(state.getGameInfo().getCurrentTurn());
-            newPlayers.get(currentTurn).clock.resume();
+        try {
+            return new Pos(row, column);
+        } catch (RuntimeException e) {
+            throw new IOException("Posição inválida: " + row + ", " + column, e);
         }
     }
 
-    /**
-     * Restaura o histórico usando reflexão (sem modificar Board).
-     */
-    private static void restoreHistoryViaReflection(Board board, JsonGameState.HistoryState historyState, 
-                                                    Map<String, Piece> pieceMap) throws Exception {
-        History history = board.history;
-
-        Field gameHistoryField = History.class.getDeclaredField("gameHistory");
-        gameHistoryField.setAccessible(true);
-        @SuppressWarnings("unchecked")
-        List<Move> gameHistory = (List<Move>) gameHistoryField.get(history);
-
-        // Reconstruir movimentos
-        for (JsonGameState.MoveRecord record : historyState.getAllMoves()) {
-            Piece piece = pieceMap.get(record.getPieceId());
-            if (piece == null) continue;
-            
-            Pos toPos = new Pos(record.getToPosition().getRow(), record.getToPosition().getColumn());
-            Move.MoveType moveType = Move.MoveType.valueOf(record.getMoveType());
-            
-            Pawn enPassantVictim = null;
-            if (record.getEnPassantVictimId() != null) {
-                Piece victim = pieceMap.get(record.getEnPassantVictimId());
-                if (victim instanceof Pawn) {
-                    enPassantVictim = (Pawn) victim;
-                }
-            }
-            
-            Move move = new Move(piece, moveType, toPos, enPassantVictim);
-            gameHistory.add(move);
-        }
+    private static void expect(JsonToken token, JsonToken expected) throws IOException {
+        if (token != expected)
+            throw new IOException("JSON inválido: esperado " + expected + ", encontrado " + token);
     }
 
-    // Métodos auxiliares
-    private static Map<Piece, String> createPieceIdMap(Map<Color, Player> players) {
-        Map<Piece, String> map = new HashMap<>();
-        for (Color color : Color.values()) {
-            Player player = players.get(color);
-            if (player == null) continue;
-            
-            for (Map.Entry<PieceType, Piece> entry : player.pieces.entrySet()) {
-                map.put(entry.getValue(), color.name() + "_" + entry.getKey().name());
-            }
+    private static Color parseColor(String name) throws IOException {
+        try {
+            return Color.valueOf(name);
+        } catch (RuntimeException e) {
+            throw new IOException("Cor inválida: " + name, e);
         }
-        return map;
     }
 
-    private static Map<String, Piece> createReversePieceMap(Map<Piece, String> pieceToIdMap) {
-        Map<String, Piece> map = new HashMap<>();
-        for (Map.Entry<Piece, String> entry : pieceToIdMap.entrySet()) {
-            map.put(entry.getValue(), entry.getKey());
+    private static Move.MoveType parseMoveType(String name) throws IOException {
+        try {
+            return Move.MoveType.valueOf(name);
+        } catch (RuntimeException e) {
+            throw new IOException("Tipo de lance inválido: " + name, e);
         }
-        return map;
     }
 
-    private static Map<String, Piece> createPieceMap(Map<Color, Player> players) {
-        Map<String, Piece> map = new HashMap<>();
+    // Métodos auxiliares
+
+    /* Ids das peças iniciais (COR_TIPO) e das promovidas (id do peão + tipo). */
+    private static Map<Piece, String> createPieceIdMap(App app, History history) {
+        Map<Piece, String> map = new IdentityHashMap<>();
         for (Color color : Color.values()) {
-            Player player = players.get(color);
-            if (player == null) continue;
-            
-            for (Map.Entry<PieceType, Piece> entry : player.pieces.entrySet()) {
-                map.put(color.name() + "_" + entry.getKey().name(), entry.getValue());
+            for (Map.Entry<PieceType, Piece> entry : app.getPlayer(color).pieces.entrySet()) {
+                map.put(entry.getValue(), color.name() + "_" + entry.getKey().name());
             }
         }
+        for (int i = 0; i < history.size(); i++) {
+            Ply ply = history.getPly(i);
+            if (ply != null && ply.getPromotedPiece() != null)
+                map.put(ply.getPromotedPiece(),
+                        map.get(ply.getMove().piece()) + "_" + getPieceTypeName(ply.getPromotedPiece()));
+        }
         return map;
     }
 
@@ -502,4 +473,4 @@ public class JsonGameSerializer {
         if (piece instanceof King) return "KING";
         return "UNKNOWN";
     }
-}
\ No newline at end of file
+}
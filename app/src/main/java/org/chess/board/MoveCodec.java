@@ -0,0 +1,194 @@
+package org.chess.board;
+
+import org.chess.App;
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.PieceType;
+import org.chess.pieces.Piece;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Codificação compacta dos lances de um jogo, para armazenamento.
+ *
+ * Cada lance é um único varint com:
+ * <ul>
+ * <li>o índice da peça dentro da sua cor: o ordinal de PieceType para as peças
+ * iniciais, e 16, 17, ... para as promovidas, na ordem das promoções;</li>
+ * <li>a casa de destino, como a diferença (zig-zag) para a casa onde a peça
+ * está, que o decodificador acompanha;</li>
+ * <li>o tipo do lance, com SIMPLE_MOVE valendo 0.</li>
+ * </ul>
+ * Assim um lance curto ocupa 2 bytes, e os longos 3, contra 3 bytes fixos por
+ * lance no formato antigo e centenas de bytes por `Move` serializado.
+ *
+ * A cor de quem joga não é gravada: quem decodifica refaz o jogo e a informa.
+ */
+public class MoveCodec {
+    private static final int SIDE = 14;
+    private static final int TYPES = Move.MoveType.values().length;
+    private static final int PIECE_BITS = 5;
+    // 16 peças iniciais e no máximo 8 promoções
+    private static final int MAX_PIECES = 1 << PIECE_BITS;
+    private static final Move.MoveType[] MOVE_TYPES = Move.MoveType.values();
+
+    /** Lance decodificado: casas de origem e destino (ver `BinaryGameSerializer.squareIndex`). */
+    public record Decoded(int from, int to, Move.MoveType type) {
+    }
+
+    /** Codifica os lances de um jogo, do primeiro ao último. */
+    public static class Encoder {
+        private final OutputStream out;
+        private final Map<Piece, Integer> indices = new IdentityHashMap<>();
+        private final int[] nextIndex = new int[Color.values().length];
+
+        /** @param app o jogo, cujos jogadores dão os índices das peças iniciais. */
+        public Encoder(App app, OutputStream out) {
+            this.out = out;
+            for (Color color : Color.values())
+                for (Map.Entry<PieceType, Piece> entry : app.getPlayer(color).pieces.entrySet())
+                    indices.put(entry.getValue(), entry.getKey().ordinal());
+            Arrays.fill(nextIndex, PieceType.values().length);
+        }
+
+        public void write(Ply ply) throws IOException {
+            Move move = ply.getMove();
+            Integer piece = indices.get(move.piece());
+            if (piece == null)
+                throw new IOException("Peça desconhecida no lance para " + move.toPos());
+            int delta = BinaryGameSerializer.squareIndex(move.toPos())
+                    - BinaryGameSerializer.squareIndex(ply.getFromPos());
+            writeVarint(out, pack(delta, piece, move.type()));
+            if (ply.getPromotedPiece() != null) {
+                int color = move.piece().color.ordinal();
+                if (nextIndex[color] == MAX_PIECES)
+                    throw new IOException("Promoções demais");
+                indices.put(ply.getPromotedPiece(), nextIndex[color]++);
+            }
+        }
+    }
+
+    /** Decodifica os lances gravados por `Encoder`, na mesma ordem. */
+    public static class Decoder {
+        private final InputStream in;
+        // Casa de cada peça, por cor e índice; -1 se a peça não existe (mais)
+        private final int[][] squares = new int[Color.values().length][MAX_PIECES];
+        private final int[] nextIndex = new int[Color.values().length];
+
+        public Decoder(InputStream in) {
+            this.in = in;
+            for (Color color : Color.values()) {
+                Arrays.fill(squares[color.ordinal()], -1);
+                for (PieceType type : PieceType.values())
+                    squares[color.ordinal()][type.ordinal()] = BinaryGameSerializer.squareIndex(type.initialPos(color));
+            }
+            Arrays.fill(nextIndex, PieceType.values().length);
+        }
+
+        /**
+         * @param mover a cor de quem faz o lance.
+         * @throws IOException se o stream acabou ou o lance não é coerente.
+         */
+        public Decoded read(Color mover) throws IOException {
+            long value = readVarint(in);
+            int type = (int) (value % TYPES);
+            value /= TYPES;
+            int piece = (int) (value & (MAX_PIECES - 1));
+            int delta = unzigzag(value >>> PIECE_BITS);
+
+            int[] colorSquares = squares[mover.ordinal()];
+            int from = colorSquares[piece];
+            if (from < 0)
+                throw new IOException("Lance de peça inexistente: " + piece);
+            int to = from + delta;
+            if (to < 0 || to >= SIDE * SIDE)
+                throw new IOException("Casa de destino inválida: " + to);
+            Move.MoveType moveType = MOVE_TYPES[(type + TYPES - 1) % TYPES];
+
+            colorSquares[piece] = to;
+            switch (moveType) {
+                case KINGSIDE_CASTLING, QUEENSIDE_CASTLING -> {
+                    PieceType rook = moveType == Move.MoveType.KINGSIDE_CASTLING ? PieceType.KINGSIDE_ROOK
+                            : PieceType.QUEENSIDE_ROOK;
+                    colorSquares[rook.ordinal()] = BinaryGameSerializer
+                            .squareIndex(Board.rookCastlingPos(moveType, mover));
+                }
+                case QUEEN_PROMOTION, ROOK_PROMOTION, BISHOP_PROMOTION, KNIGHT_PROMOTION -> {
+                    if (nextIndex[mover.ordinal()] == MAX_PIECES)
+                        throw new IOException("Promoções demais");
+                    colorSquares[piece] = -1;
+                    colorSquares[nextIndex[mover.ordinal()]++] = to;
+                }
+                default -> {
+                }
+            }
+            return new Decoded(from, to, moveType);
+        }
+    }
+
+    /**
+     * Onde começa cada um dos `count` lances codificados em `moves`, sem
+     * decodificá-los; a última posição é o fim do último lance. Serve para
+     * separar os lances de um jogo em blocos.
+     *
+     * @throws IOException se `moves` não tem exatamente `count` lances.
+     */
+    public static int[] moveOffsets(byte[] moves, int count) throws IOException {
+        int[] offsets = new int[count + 1];
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = position;
+            do {
+                if (position == moves.length)
+                    throw new EOFException("Lance incompleto");
+            } while ((moves[position++] & 0x80) != 0);
+        }
+        if (position != moves.length)
+            throw new IOException("Bytes sobrando depois do último lance");
+        offsets[count] = position;
+        return offsets;
+    }
+
+    // ===== EMPACOTAMENTO =====
+
+    /* SIMPLE_MOVE, o mais comum, vira 0. */
+    private static long pack(int delta, int piece, Move.MoveType type) {
+        long value = (long) zigzag(delta) << PIECE_BITS | piece;
+        return value * TYPES + (type.ordinal() + 1) % TYPES;
+    }
+
+    private static int zigzag(int value) {
+        return value << 1 ^ value >> 31;
+    }
+
+    private static int unzigzag(long value) {
+        return (int) (value >>> 1) ^ -(int) (value & 1);
+    }
+
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException("Lance incompleto");
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Varint longo demais");
+    }
+}
@@ -0,0 +1,478 @@
+package org.chess.board;
+
+import org.chess.App;
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.PieceType;
+import org.chess.Pos;
+import org.chess.pieces.*;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Importa e exporta jogos num formato texto no estilo PGN, para trocar jogos
+ * com outras ferramentas. Um arquivo pode ter qualquer número de jogos:
+ * <pre>
+ * [Event "Torneio"]
+ * [Clocks "598000000000 600000000000 600000000000 600000000000"]
+ * [Result "*"]
+ *
+ * 1. h2-h4 h13-h11 b8-d8 m7-k7 2. Nj1-i3 ... *
+ * </pre>
+ * As etiquetas vêm entre colchetes, uma por linha. "Clocks" tem o tempo
+ * restante de cada cor, em nanossegundos e na ordem de `Color`; "Result" é "*"
+ * ou a cor vencedora, que também termina a lista de lances.
+ *
+ * Cada lance é a notação de `notation` com a casa de origem (K, Q, R, B ou N
+ * para a peça, nada para o peão; a origem; '-' ou 'x'; o destino; "=Q" etc.
+ * para promoções; "O-O" e "O-O-O" para os roques), de modo que a leitura não
+ * precisa desambiguar. Os números dos lances, a cada quatro lances, e os
+ * comentários entre chaves ou depois de ';' são ignorados na leitura.
+ *
+ * A escrita vai direto do `History` para o `Writer`. A leitura é em streaming:
+ * `GameReader` lê um jogo por vez, com memória proporcional só ao jogo atual,
+ * e refaz cada lance com `App.doMove`, que só aceita lances legais.
+ */
+public class PgnGameSerializer {
+    public static final String CLOCKS_TAG = "Clocks";
+    public static final String RESULT_TAG = "Result";
+    public static final String NO_RESULT = "*";
+
+    private static final int LINE_WIDTH = 80;
+    private static final int SIDE = 14;
+
+    /** Um jogo lido, com as suas etiquetas na ordem do arquivo. */
+    public record Game(Map<String, String> tags, App app) {
+    }
+
+    // ===== ESCRITA =====
+
+    /**
+     * Escreve o jogo, seguido de uma linha em branco, no `Writer`, que não é
+     * fechado. As etiquetas "Clocks" e "Result" são sempre as do jogo.
+     *
+     * @param tags etiquetas do jogo, na ordem em que devem ser escritas.
+     * @throws IOException se algum lance não tem registro de origem.
+     */
+    public static void write(App app, Map<String, String> tags, Writer out) throws IOException {
+        Board board = app.getBoardSnapshot();
+        History history = board.history;
+
+        for (Map.Entry<String, String> tag : tags.entrySet())
+            if (!tag.getKey().equals(CLOCKS_TAG) && !tag.getKey().equals(RESULT_TAG))
+                writeTag(out, tag.getKey(), tag.getValue());
+        StringBuilder clocks = new StringBuilder();
+        for (Color color : Color.values()) {
+            if (clocks.length() > 0)
+                clocks.append(' ');
+            clocks.append(app.getPlayer(color).clock.getTimeLeftNanosecs());
+        }
+        writeTag(out, CLOCKS_TAG, clocks.toString());
+        String result = result(app, board);
+        writeTag(out, RESULT_TAG, result);
+        out.write('\n');
+
+        int column = 0;
+        for (int i = 0; i < history.size(); i++) {
+            Ply ply = history.getPly(i);
+            if (ply == null)
+                throw new IOException("Lance " + i + " sem casa de origem registrada");
+            Move move = ply.getMove();
+            String text = notation(move, ply.getFromPos(), ply.getCapturedPiece() != null
+                    && move.type() != Move.MoveType.EN_PASSANT, true);
+            if (i % Color.values().length == 0)
+                text = (i / Color.values().length + 1) + ". " + text;
+            column = writeToken(out, text, column);
+        }
+        writeToken(out, result, column);
+        out.write("\n\n");
+    }
+
+    /**
+     * Notação algébrica do lance: coluna de 'a' a 'n' e linha 15 - `row`.
+     *
+     * @param withOrigin se true, a casa de origem vem sempre, separada do destino
+     *                   por '-' ou 'x'; se false, só a coluna de origem das
+     *                   capturas de peão.
+     */
+    static String notation(Move move, Pos fromPos, boolean isCapture, boolean withOrigin) {
+        StringBuilder notation = new StringBuilder();
+
+        Piece piece = move.piece();
+
+        // Roque tem notação especial
+        if (move.type() == Move.MoveType.KINGSIDE_CASTLING) {
+            return "O-O";
+        } else if (move.type() == Move.MoveType.QUEENSIDE_CASTLING) {
+            return "O-O-O";
+        }
+
+        // Tipo da peça (exceto peão)
+        if (!(piece instanceof Pawn)) {
+            notation.append(pieceLetter(piece));
+        }
+
+        if (withOrigin) {
+            appendSquare(notation, fromPos);
+        } else if (piece instanceof Pawn && isCapture && fromPos != null) {
+            // Para peão em captura, adicionar coluna de origem
+            notation.append((char) ('a' + fromPos.column() - 1));
+        }
+
+        // Captura
+        if (isCapture || move.type() == Move.MoveType.EN_PASSANT) {
+            notation.append("x");
+        } else if (withOrigin) {
+            notation.append("-");
+        }
+
+        // Posição de destino
+        appendSquare(notation, move.toPos());
+
+        // Promoção
+        switch (move.type()) {
+            case QUEEN_PROMOTION -> notation.append("=Q");
+            case ROOK_PROMOTION -> notation.append("=R");
+            case BISHOP_PROMOTION -> notation.append("=B");
+            case KNIGHT_PROMOTION -> notation.append("=N");
+            default -> {}
+        }
+
+        return notation.toString();
+    }
+
+    private static void writeTag(Writer out, String name, String value) throws IOException {
+        out.write('[');
+        out.write(name);
+        out.write(" \"");
+        out.write(value.replace("\\", "\\\\").replace("\"", "\\\""));
+        out.write("\"]\n");
+    }
+
+    /* Escreve o token, quebrando a linha antes de passar de LINE_WIDTH; devolve a nova coluna. */
+    private static int writeToken(Writer out, String token, int column) throws IOException {
+        if (column > 0 && column + 1 + token.length() > LINE_WIDTH) {
+            out.write('\n');
+            column = 0;
+        } else if (column > 0) {
+            out.write(' ');
+            column++;
+        }
+        out.write(token);
+        return column + token.length();
+    }
+
+    /* A cor vencedora, se o jogo acabou com uma só cor em jogo, ou "*". */
+    private static String result(App app, Board board) {
+        if (!app.isGameOver())
+            return NO_RESULT;
+        Color winner = null;
+        for (Color color : Color.values()) {
+            if (board.isInGame(color)) {
+                if (winner != null)
+                    return NO_RESULT;
+                winner = color;
+            }
+        }
+        return winner != null ? winner.name() : NO_RESULT;
+    }
+
+    // ===== LEITURA =====
+
+    /**
+     * Lê os jogos de um `Reader`, um por vez.
+     */
+    public static class GameReader implements Closeable {
+        private final Reader in;
+        // Próximo caractere já lido, ou NONE
+        private int peeked = NONE;
+        private int line = 1;
+
+        private static final int NONE = -2;
+
+        public GameReader(Reader in) {
+            this.in = in instanceof BufferedReader ? in : new BufferedReader(in);
+        }
+
+        /**
+         * Lê o próximo jogo. Um jogo termina no seu resultado, ou no fim do arquivo.
+         *
+         * @return o jogo, ou null se não há mais jogos.
+         * @throws IOException se o texto é inválido ou algum lance é ilegal; a
+         *                     mensagem tem o número da linha.
+         */
+        public Game next() throws IOException {
+            Map<String, String> tags = new LinkedHashMap<>();
+            App app = null;
+            while (true) {
+                skipSpaceAndComments();
+                int c = peek();
+                if (c < 0) {
+                    if (app == null && tags.isEmpty())
+                        return null;
+                    return finish(tags, app, null);
+                }
+                if (c == '[') {
+                    if (app != null)
+                        throw error("etiqueta no meio dos lances");
+                    readTag(tags);
+                    continue;
+                }
+
+                String token = readToken();
+                // Número do lance, possivelmente grudado no lance ("12.Nj1-i3")
+                int digits = 0;
+                while (digits < token.length() && Character.isDigit(token.charAt(digits)))
+                    digits++;
+                int dots = digits;
+                while (digits > 0 && dots < token.length() && token.charAt(dots) == '.')
+                    dots++;
+                if (dots > digits)
+                    token = token.substring(dots);
+                if (token.isEmpty())
+                    continue;
+
+                if (app == null)
+                    app = new App();
+                if (token.equals(NO_RESULT) || isColor(token))
+                    return finish(tags, app, token);
+                play(app, token);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private Game finish(Map<String, String> tags, App app, String result) throws IOException {
+            if (app == null)
+                app = new App();
+            if (result != null && !result.equals(NO_RESULT)
+                    && !result.equals(PgnGameSerializer.result(app, app.getBoardSnapshot())))
+                throw error("o resultado " + result + " não confere com os lances");
+            String clocks = tags.get(CLOCKS_TAG);
+            if (clocks != null)
+                BinaryGameSerializer.restoreClocks(app, parseClocks(clocks));
+            return new Game(tags, app);
+        }
+
+        /* Encontra o lance entre os lances legais da peça e o faz. */
+        private void play(App app, String text) throws IOException {
+            Color color = app.getCurrentTurn();
+            Pos from;
+            Pos to = null;
+            Move.MoveType type = null;
+            char letter = 0;
+            boolean capture = false;
+
+            String move = text;
+            while (move.endsWith("+") || move.endsWith("#"))
+                move = move.substring(0, move.length() - 1);
+            if (move.equals("O-O") || move.equals("O-O-O")) {
+                type = move.equals("O-O") ? Move.MoveType.KINGSIDE_CASTLING : Move.MoveType.QUEENSIDE_CASTLING;
+                from = PieceType.KING.initialPos(color);
+                letter = 'K';
+            } else {
+                int index = 0;
+                if (index < move.length() && "KQRBN".indexOf(move.charAt(index)) >= 0)
+                    letter = move.charAt(index++);
+                int[] end = new int[1];
+                from = parseSquare(move, index, end, text);
+                index = end[0];
+                if (index >= move.length() || (move.charAt(index) != '-' && move.charAt(index) != 'x'))
+                    throw error("lance inválido: " + text);
+                capture = move.charAt(index++) == 'x';
+                to = parseSquare(move, index, end, text);
+                index = end[0];
+                if (index < move.length()) {
+                    if (index + 2 != move.length() || move.charAt(index) != '=')
+                        throw error("lance inválido: " + text);
+                    type = switch (move.charAt(index + 1)) {
+                        case 'Q' -> Move.MoveType.QUEEN_PROMOTION;
+                        case 'R' -> Move.MoveType.ROOK_PROMOTION;
+                        case 'B' -> Move.MoveType.BISHOP_PROMOTION;
+                        case 'N' -> Move.MoveType.KNIGHT_PROMOTION;
+                        default -> throw error("promoção inválida: " + text);
+                    };
+                }
+            }
+
+            Piece piece = app.getPiece(from);
+            if (piece == null || piece.color != color)
+                throw error("não há peça de " + color + " na origem de " + text);
+            if (letter != (piece instanceof Pawn ? 0 : pieceLetter(piece)))
+                throw error("a peça na origem não é a do lance " + text);
+
+            Move found = null;
+            Collection<Move> legal = app.getPossibleMoves(from);
+            for (Move candidate : legal) {
+                boolean matches = type != null && isCastling(type) ? candidate.type() == type
+                        : candidate.toPos().equals(to) && (type != null ? candidate.type() == type
+                                : !isPromotion(candidate.type()) && !isCastling(candidate.type()));
+                if (matches) {
+                    found = candidate;
+                    break;
+                }
+            }
+            if (found == null)
+                throw error("lance ilegal: " + text);
+            if (to != null && capture != (app.getPiece(to) != null || found.type() == Move.MoveType.EN_PASSANT))
+                throw error("captura não confere no lance " + text);
+            try {
+                app.doMove(found);
+            } catch (IllegalArgumentException e) {
+                throw error("lance " + text + " recusado: " + e.getMessage());
+            }
+            // Só os relógios do fim do jogo estão no arquivo
+            app.getLastPly().setClockTimes(null);
+        }
+
+        private Pos parseSquare(String move, int index, int[] end, String text) throws IOException {
+            if (index >= move.length())
+                throw error("lance inválido: " + text);
+            int column = move.charAt(index++) - 'a' + 1;
+            int rank = 0;
+            int start = index;
+            while (index < move.length() && index - start < 2 && Character.isDigit(move.charAt(index)))
+                rank = rank * 10 + move.charAt(index++) - '0';
+            end[0] = index;
+            if (index == start || column < 1 || column > SIDE || rank < 1 || rank > SIDE)
+                throw error("casa inválida no lance " + text);
+            try {
+                return new Pos(SIDE + 1 - rank, column);
+            } catch (RuntimeException e) {
+                throw error("casa inválida no lance " + text);
+            }
+        }
+
+        private long[] parseClocks(String value) throws IOException {
+            String[] parts = value.trim().split("\\s+");
+            if (parts.length != Color.values().length)
+                throw error("etiqueta Clocks inválida");
+            long[] clockTimes = new long[parts.length];
+            try {
+                for (int i = 0; i < parts.length; i++)
+                    clockTimes[i] = Long.parseLong(parts[i]);
+            } catch (NumberFormatException e) {
+                throw error("etiqueta Clocks inválida");
+            }
+            return clockTimes;
+        }
+
+        /* [Nome "valor"], com \" e \\ dentro do valor. */
+        private void readTag(Map<String, String> tags) throws IOException {
+            read();
+            StringBuilder name = new StringBuilder();
+            while (peek() >= 0 && !Character.isWhitespace(peek()) && peek() != '"' && peek() != ']')
+                name.append((char) read());
+            while (peek() == ' ' || peek() == '\t')
+                read();
+            if (read() != '"' || name.length() == 0)
+                throw error("etiqueta inválida");
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                int c = read();
+                if (c < 0 || c == '\n')
+                    throw error("etiqueta sem fim");
+                if (c == '"')
+                    break;
+                if (c == '\\')
+                    c = read();
+                value.append((char) c);
+            }
+            while (peek() == ' ' || peek() == '\t')
+                read();
+            if (read() != ']')
+                throw error("etiqueta sem ']'");
+            tags.put(name.toString(), value.toString());
+        }
+
+        private String readToken() throws IOException {
+            StringBuilder token = new StringBuilder();
+            while (peek() >= 0 && !Character.isWhitespace(peek()) && peek() != '{' && peek() != ';'
+                    && peek() != '[')
+                token.append((char) read());
+            if (token.length() == 0)
+                throw error("caractere inesperado '" + (char) peek() + "'");
+            return token.toString();
+        }
+
+        private void skipSpaceAndComments() throws IOException {
+            while (true) {
+                int c = peek();
+                if (c >= 0 && Character.isWhitespace(c)) {
+                    read();
+                } else if (c == '{') {
+                    while (c >= 0 && c != '}')
+                        c = read();
+                    if (c < 0)
+                        throw error("comentário sem fim");
+                } else if (c == ';') {
+                    while (c >= 0 && c != '\n')
+                        c = read();
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private int peek() throws IOException {
+            if (peeked == NONE)
+                peeked = in.read();
+            return peeked;
+        }
+
+        private int read() throws IOException {
+            int c = peek();
+            peeked = NONE;
+            if (c == '\n')
+                line++;
+            return c;
+        }
+
+        private IOException error(String message) {
+            return new IOException("Linha " + line + ": " + message);
+        }
+    }
+
+    // Métodos auxiliares
+
+    private static void appendSquare(StringBuilder notation, Pos pos) {
+        notation.append((char) ('a' + pos.column() - 1));
+        notation.append(SIDE + 1 - pos.row());
+    }
+
+    private static char pieceLetter(Piece piece) {
+        if (piece instanceof Knight) return 'N';
+        if (piece instanceof Bishop) return 'B';
+        if (piece instanceof Rook) return 'R';
+        if (piece instanceof Queen) return 'Q';
+        return 'K';
+    }
+
+    private static boolean isColor(String token) {
+        for (Color color : Color.values())
+            if (color.name().equals(token))
+                return true;
+        return false;
+    }
+
+    private static boolean isCastling(Move.MoveType type) {
+        return type == Move.MoveType.KINGSIDE_CASTLING || type == Move.MoveType.QUEENSIDE_CASTLING;
+    }
+
+    private static boolean isPromotion(Move.MoveType type) {
+        return switch (type) {
+            case QUEEN_PROMOTION, ROOK_PROMOTION, BISHOP_PROMOTION, KNIGHT_PROMOTION -> true;
+            default -> false;
+        };
+    }
+}
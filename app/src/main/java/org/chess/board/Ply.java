@@ -0,0 +1,87 @@
+package org.chess.board;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.chess.Move;
+import org.chess.Pos;
+import org.chess.pieces.Piece;
+
+/**
+ * Everything needed to take back one move in constant time.
+ *
+ * Castling and en passant rights don't need to be stored: they are derived from
+ * the history, so removing the ply from it restores them.
+ */
+public class Ply implements Serializable {
+  private final Move move;
+  private final Pos fromPos;
+  private final Piece capturedPiece;
+  private final Pos capturedPos;
+  private final Piece promotedPiece;
+
+  /* Pieces of colors eliminated right after the move, with their positions. */
+  private final Map<Pos, Piece> eliminatedPieces = new LinkedHashMap<>();
+
+  /*
+   * Time left of each player before the move, by Color ordinal. Set by App;
+   * null if unknown, e.g. for moves replayed from a save, which only keeps the
+   * clocks of the end of the game.
+   */
+  private long[] clockTimes;
+
+  Ply(Move move, Pos fromPos, Piece capturedPiece, Pos capturedPos, Piece promotedPiece) {
+    this.move = move;
+    this.fromPos = fromPos;
+    this.capturedPiece = capturedPiece;
+    this.capturedPos = capturedPos;
+    this.promotedPiece = promotedPiece;
+  }
+
+  Ply copy() {
+    Ply copy = new Ply(move, fromPos, capturedPiece, capturedPos, promotedPiece);
+    copy.eliminatedPieces.putAll(eliminatedPieces);
+    copy.clockTimes = clockTimes;
+    return copy;
+  }
+
+  public Move getMove() {
+    return move;
+  }
+
+  public Pos getFromPos() {
+    return fromPos;
+  }
+
+  /** @return the piece taken by the move (en passant included), or null. */
+  public Piece getCapturedPiece() {
+    return capturedPiece;
+  }
+
+  public Pos getCapturedPos() {
+    return capturedPos;
+  }
+
+  /** @return the piece the pawn was promoted to, or null. */
+  public Piece getPromotedPiece() {
+    return promotedPiece;
+  }
+
+  public Map<Pos, Piece> getEliminatedPieces() {
+    return Collections.unmodifiableMap(eliminatedPieces);
+  }
+
+  void addEliminatedPiece(Pos pos, Piece piece) {
+    eliminatedPieces.put(pos, piece);
+  }
+
+  public long[] getClockTimes() {
+    return clockTimes;
+  }
+
+  public void setClockTimes(long[] clockTimes) {
+    this.clockTimes = clockTimes;
+  }
+}
@@ -0,0 +1,483 @@
+package org.chess.board;
+
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.PieceType;
+import org.chess.Pos;
+import org.chess.pieces.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Notação de posição no estilo FEN para o tabuleiro 14x14 de quatro jogadores.
+ *
+ * Uma posição é uma linha com cinco campos separados por espaço:
+ * <pre>
+ * casas quem-joga roques en-passant eliminados
+ * </pre>
+ * <ul>
+ * <li>casas: as linhas 1 a 14, de cima (vermelho) para baixo (verde),
+ * separadas por '/'. Cada linha tem só as suas casas válidas (8 nas linhas 1-3
+ * e 12-14, 14 nas outras), da coluna 1 para a 14: uma peça é a letra da cor
+ * (g, r, y, b) e a do tipo (K, Q, R, B, N, P), e uma sequência de casas vazias é
+ * o seu número.</li>
+ * <li>quem-joga: a letra da cor.</li>
+ * <li>roques: para cada roque ainda possível, a letra da cor e K (lado do rei)
+ * ou Q (lado da dama); "-" se nenhum.</li>
+ * <li>en-passant: as casas dos peões que podem ser tomados en passant (o último
+ * lance da sua cor os avançou duas casas), em notação algébrica e separadas por
+ * ','; "-" se nenhuma.</li>
+ * <li>eliminados: as letras das cores eliminadas; "-" se nenhuma.</li>
+ * </ul>
+ * A casa em notação algébrica é a coluna (a a n) seguida de 15 menos a linha,
+ * como em `PgnGameSerializer.notation`.
+ *
+ * `parse` percorre o texto uma vez, sem criar substrings, e produz uma
+ * `Position` compacta (um byte por casa), que serve de chave de cache. Só
+ * `Position.toBoard` monta um `Board`, que calcula os lances de todas as peças.
+ */
+public class PositionNotation {
+    /** A posição inicial. */
+    public static final String STANDARD = "rRrNrBrQrKrBrNrR/rPrPrPrPrPrPrPrP/8/yRyP10bPbR/yNyP10bPbN/yByP10bPbB/"
+            + "yQyP10bPbK/yKyP10bPbQ/yByP10bPbB/yNyP10bPbN/yRyP10bPbR/8/gPgPgPgPgPgPgPgP/gRgNgBgKgQgBgNgR"
+            + " g gKgQrKrQyKyQbKbQ - -";
+
+    private static final int SIDE = 14;
+    private static final int SQUARES = SIDE * SIDE;
+    private static final Color[] COLORS = Color.values();
+    private static final char[] COLOR_LETTERS = new char[COLORS.length];
+    private static final String KINDS = "KQRBNP";
+    private static final int KING = 0;
+    private static final int ROOK = 2;
+    private static final int PAWN = 5;
+    private static final List<Pos> VALID_POSITIONS = Pos.getValidPositions();
+    private static final Pos[] POSITIONS = new Pos[SQUARES];
+    // Casas iniciais do rei e das torres (lado do rei, lado da dama), por cor
+    private static final int[] KING_SQUARES = new int[COLORS.length];
+    private static final int[][] ROOK_SQUARES = new int[COLORS.length][2];
+    // Maior texto possível: uma peça por casa, e todos os outros campos cheios
+    private static final int MAX_LENGTH = 2 * 160 + 13 + 2 + 2 + 8 + 1 + 4 * 4 + 1 + 4;
+
+    static {
+        for (Color color : COLORS)
+            COLOR_LETTERS[color.ordinal()] = Character.toLowerCase(color.name().charAt(0));
+        for (Pos pos : VALID_POSITIONS)
+            POSITIONS[BinaryGameSerializer.squareIndex(pos)] = pos;
+        for (Color color : COLORS) {
+            KING_SQUARES[color.ordinal()] = BinaryGameSerializer.squareIndex(PieceType.KING.initialPos(color));
+            ROOK_SQUARES[color.ordinal()][0] = BinaryGameSerializer.squareIndex(PieceType.KINGSIDE_ROOK.initialPos(color));
+            ROOK_SQUARES[color.ordinal()][1] = BinaryGameSerializer.squareIndex(PieceType.QUEENSIDE_ROOK.initialPos(color));
+        }
+    }
+
+    /**
+     * Posição imutável. Iguais se as cinco partes são iguais.
+     */
+    public static final class Position {
+        // 0 se vazia, senão 1 + cor * 6 + tipo (índice em KINDS)
+        private final byte[] squares;
+        private final Color toMove;
+        // Bit cor * 2 (lado do rei) e cor * 2 + 1 (lado da dama)
+        private final int castling;
+        // Casa do peão que pode ser tomado en passant, por cor, ou -1
+        private final int[] enPassant;
+        private final int eliminated;
+
+        private Position(byte[] squares, Color toMove, int castling, int[] enPassant, int eliminated) {
+            this.squares = squares;
+            this.toMove = toMove;
+            this.castling = castling;
+            this.enPassant = enPassant;
+            this.eliminated = eliminated;
+        }
+
+        public Color getToMove() {
+            return toMove;
+        }
+
+        public boolean canCastle(Color color, boolean kingside) {
+            return (castling & 1 << castlingBit(color, kingside)) != 0;
+        }
+
+        public Set<Color> getEliminated() {
+            Set<Color> colors = EnumSet.noneOf(Color.class);
+            for (Color color : COLORS)
+                if ((eliminated & 1 << color.ordinal()) != 0)
+                    colors.add(color);
+            return colors;
+        }
+
+        /**
+         * Monta o tabuleiro da posição. Os roques e os en passant possíveis são
+         * reproduzidos; o tabuleiro não tem histórico para desfazer (os en passant
+         * ficam no próprio tabuleiro, e não como lances no histórico).
+         */
+        public Board toBoard() {
+            Map<Pos, Piece> placement = new HashMap<>();
+            List<Pos> enPassantPawns = new ArrayList<>(COLORS.length);
+            Rook[][] castlingRooks = new Rook[COLORS.length][2];
+            for (Color color : COLORS)
+                for (int side = 0; side < 2; side++)
+                    if ((castling & 1 << color.ordinal() * 2 + side) != 0)
+                        castlingRooks[color.ordinal()][side] = new Rook(color);
+
+            for (int square = 0; square < SQUARES; square++) {
+                int code = squares[square];
+                if (code == 0)
+                    continue;
+                Color color = COLORS[(code - 1) / KINDS.length()];
+                int kind = (code - 1) % KINDS.length();
+                Pos pos = POSITIONS[square];
+                Piece piece = switch (kind) {
+                    case KING -> {
+                        Rook[] rooks = castlingRooks[color.ordinal()];
+                        // Sem o roque, o rei fica com uma torre fora do tabuleiro
+                        yield new King(color, rooks[0] != null ? rooks[0] : new Rook(color),
+                                rooks[1] != null ? rooks[1] : new Rook(color));
+                    }
+                    case 1 -> new Queen(color);
+                    case ROOK -> {
+                        Rook rook = null;
+                        for (int side = 0; side < 2; side++)
+                            if (castlingRooks[color.ordinal()][side] != null
+                                    && ROOK_SQUARES[color.ordinal()][side] == square)
+                                rook = castlingRooks[color.ordinal()][side];
+                        yield rook != null ? rook : new Rook(color);
+                    }
+                    case 3 -> new Bishop(color);
+                    case 4 -> new Knight(color);
+                    default -> new Pawn(color);
+                };
+                placement.put(pos, piece);
+                if (kind == PAWN && enPassant[color.ordinal()] == square)
+                    enPassantPawns.add(pos);
+            }
+            return new Board(placement, enPassantPawns);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Position position && toMove == position.toMove
+                    && castling == position.castling && eliminated == position.eliminated
+                    && Arrays.equals(enPassant, position.enPassant) && Arrays.equals(squares, position.squares);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((Arrays.hashCode(squares) * 31 + toMove.ordinal()) * 31 + castling) * 31
+                    + Arrays.hashCode(enPassant) * 7 + eliminated;
+        }
+
+        /** A posição na notação. */
+        @Override
+        public String toString() {
+            char[] text = new char[MAX_LENGTH];
+            int length = 0;
+            for (int row = 1; row <= SIDE; row++) {
+                if (row > 1)
+                    text[length++] = '/';
+                int empty = 0;
+                for (int column = firstColumn(row); column <= lastColumn(row); column++) {
+                    int code = squares[(row - 1) * SIDE + column - 1];
+                    if (code == 0) {
+                        empty++;
+                        continue;
+                    }
+                    if (empty > 0) {
+                        length = appendNumber(text, length, empty);
+                        empty = 0;
+                    }
+                    text[length++] = COLOR_LETTERS[(code - 1) / KINDS.length()];
+                    text[length++] = KINDS.charAt((code - 1) % KINDS.length());
+                }
+                if (empty > 0)
+                    length = appendNumber(text, length, empty);
+            }
+
+            text[length++] = ' ';
+            text[length++] = COLOR_LETTERS[toMove.ordinal()];
+            text[length++] = ' ';
+            if (castling == 0)
+                text[length++] = '-';
+            for (int bit = 0; bit < COLORS.length * 2; bit++) {
+                if ((castling & 1 << bit) != 0) {
+                    text[length++] = COLOR_LETTERS[bit / 2];
+                    text[length++] = bit % 2 == 0 ? 'K' : 'Q';
+                }
+            }
+
+            text[length++] = ' ';
+            int start = length;
+            for (int square : enPassant) {
+                if (square < 0)
+                    continue;
+                if (length > start)
+                    text[length++] = ',';
+                text[length++] = (char) ('a' + square % SIDE);
+                length = appendNumber(text, length, SIDE - square / SIDE);
+            }
+            if (length == start)
+                text[length++] = '-';
+
+            text[length++] = ' ';
+            if (eliminated == 0)
+                text[length++] = '-';
+            for (Color color : COLORS)
+                if ((eliminated & 1 << color.ordinal()) != 0)
+                    text[length++] = COLOR_LETTERS[color.ordinal()];
+            return new String(text, 0, length);
+        }
+    }
+
+    // ===== ESCRITA =====
+
+    /** A posição do tabuleiro, com `toMove` jogando. */
+    public static Position of(Board board, Color toMove) {
+        byte[] squares = new byte[SQUARES];
+        King[] kings = new King[COLORS.length];
+        for (Pos pos : VALID_POSITIONS) {
+            Piece piece = board.getPiece(pos);
+            if (piece == null)
+                continue;
+            int kind = kind(piece);
+            squares[BinaryGameSerializer.squareIndex(pos)] = (byte) (1 + piece.color.ordinal() * KINDS.length() + kind);
+            if (piece instanceof King king)
+                kings[king.color.ordinal()] = king;
+        }
+
+        History history = board.history;
+        int castling = 0;
+        int[] enPassant = new int[COLORS.length];
+        int eliminated = 0;
+        for (Color color : COLORS) {
+            King king = kings[color.ordinal()];
+            if (king != null && !history.movedBefore(king)) {
+                if (canCastleWith(board, king.getKingSideRook()))
+                    castling |= 1 << castlingBit(color, true);
+                if (canCastleWith(board, king.getQueenSideRook()))
+                    castling |= 1 << castlingBit(color, false);
+            }
+            Move last = board.getLastMove(color);
+            Pos pawnPos = last != null && last.type() == Move.MoveType.PAWN_DOUBLE ? board.getPos(last.piece()) : null;
+            enPassant[color.ordinal()] = pawnPos != null ? BinaryGameSerializer.squareIndex(pawnPos) : -1;
+            if (!board.isInGame(color))
+                eliminated |= 1 << color.ordinal();
+        }
+        return new Position(squares, toMove, castling, enPassant, eliminated);
+    }
+
+    /** A notação da posição do tabuleiro, com `toMove` jogando. */
+    public static String write(Board board, Color toMove) {
+        return of(board, toMove).toString();
+    }
+
+    // ===== LEITURA =====
+
+    /**
+     * @throws IllegalArgumentException se o texto não está na notação, ou se a
+     *                                  posição não é coerente (por exemplo, um
+     *                                  roque sem o rei e a torre nas suas casas).
+     */
+    public static Position parse(CharSequence text) {
+        Parser parser = new Parser(text);
+        byte[] squares = new byte[SQUARES];
+        int[] kings = new int[COLORS.length];
+        // Bit de cada cor com peças no tabuleiro
+        int present = 0;
+        for (int row = 1; row <= SIDE; row++) {
+            if (row > 1)
+                parser.expect('/');
+            int column = firstColumn(row);
+            while (column <= lastColumn(row)) {
+                char c = parser.peek();
+                if (c >= '1' && c <= '9') {
+                    column += parser.number();
+                    if (column > lastColumn(row) + 1)
+                        throw parser.error("casas demais na linha " + row);
+                } else {
+                    int color = parser.color();
+                    int kind = KINDS.indexOf(parser.next());
+                    if (kind < 0)
+                        throw parser.error("tipo de peça inválido");
+                    squares[(row - 1) * SIDE + column - 1] = (byte) (1 + color * KINDS.length() + kind);
+                    if (kind == KING)
+                        kings[color]++;
+                    present |= 1 << color;
+                    column++;
+                }
+            }
+        }
+
+        parser.expect(' ');
+        Color toMove = COLORS[parser.color()];
+
+        parser.expect(' ');
+        int castling = 0;
+        if (!parser.skip('-')) {
+            do {
+                int color = parser.color();
+                char side = parser.next();
+                if (side != 'K' && side != 'Q')
+                    throw parser.error("roque inválido");
+                castling |= 1 << color * 2 + (side == 'K' ? 0 : 1);
+            } while (parser.peek() != ' ');
+        }
+
+        parser.expect(' ');
+        int[] enPassant = new int[COLORS.length];
+        Arrays.fill(enPassant, -1);
+        if (!parser.skip('-')) {
+            do {
+                int column = parser.next() - 'a';
+                int rank = parser.number();
+                if (column < 0 || column >= SIDE || rank < 1 || rank > SIDE)
+                    throw parser.error("casa inválida");
+                int square = (SIDE - rank) * SIDE + column;
+                int code = squares[square];
+                if (code == 0 || (code - 1) % KINDS.length() != PAWN)
+                    throw parser.error("en passant sem peão");
+                enPassant[(code - 1) / KINDS.length()] = square;
+            } while (parser.skip(','));
+        }
+
+        parser.expect(' ');
+        int eliminated = 0;
+        if (!parser.skip('-')) {
+            do {
+                eliminated |= 1 << parser.color();
+            } while (!parser.atEnd());
+        }
+        if (!parser.atEnd())
+            throw parser.error("texto depois da posição");
+
+        validate(parser, squares, kings, present, toMove, castling, eliminated);
+        return new Position(squares, toMove, castling, enPassant, eliminated);
+    }
+
+    /* Cada cor em jogo tem um rei, as eliminadas não têm peças, e os roques têm o rei e a torre em casa. */
+    private static void validate(Parser parser, byte[] squares, int[] kings, int present, Color toMove,
+            int castling, int eliminated) {
+        if ((present & eliminated) != 0)
+            throw parser.error("peça de cor eliminada");
+        for (Color color : COLORS) {
+            boolean inGame = (eliminated & 1 << color.ordinal()) == 0;
+            if (inGame && kings[color.ordinal()] != 1)
+                throw parser.error("cor " + color + " sem exatamente um rei");
+            for (int side = 0; side < 2; side++) {
+                if ((castling & 1 << color.ordinal() * 2 + side) == 0)
+                    continue;
+                if (squares[KING_SQUARES[color.ordinal()]] != code(color, KING)
+                        || squares[ROOK_SQUARES[color.ordinal()][side]] != code(color, ROOK))
+                    throw parser.error("roque sem rei e torre nas suas casas");
+            }
+        }
+        if ((eliminated & 1 << toMove.ordinal()) != 0)
+            throw parser.error("a vez é de uma cor eliminada");
+    }
+
+    /* Cursor sobre o texto, sem cópias. */
+    private static final class Parser {
+        private final CharSequence text;
+        private int index;
+
+        Parser(CharSequence text) {
+            this.text = text;
+        }
+
+        boolean atEnd() {
+            return index == text.length();
+        }
+
+        char peek() {
+            if (atEnd())
+                throw error("fim inesperado");
+            return text.charAt(index);
+        }
+
+        char next() {
+            char c = peek();
+            index++;
+            return c;
+        }
+
+        boolean skip(char c) {
+            if (!atEnd() && text.charAt(index) == c) {
+                index++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!skip(c))
+                throw error("esperado '" + c + "'");
+        }
+
+        int number() {
+            int value = 0;
+            int start = index;
+            while (!atEnd() && text.charAt(index) >= '0' && text.charAt(index) <= '9' && index - start < 3)
+                value = value * 10 + text.charAt(index++) - '0';
+            if (index == start)
+                throw error("esperado um número");
+            return value;
+        }
+
+        int color() {
+            char c = next();
+            for (int color = 0; color < COLOR_LETTERS.length; color++)
+                if (COLOR_LETTERS[color] == c)
+                    return color;
+            throw error("cor inválida '" + c + "'");
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Notação de posição inválida na posição " + index + ": " + message);
+        }
+    }
+
+    // Métodos auxiliares
+
+    private static int firstColumn(int row) {
+        return row < 4 || row > 11 ? 4 : 1;
+    }
+
+    private static int lastColumn(int row) {
+        return row < 4 || row > 11 ? 11 : SIDE;
+    }
+
+    private static int castlingBit(Color color, boolean kingside) {
+        return color.ordinal() * 2 + (kingside ? 0 : 1);
+    }
+
+    /* Números de 1 a 14: casas vazias seguidas e linhas. */
+    private static int appendNumber(char[] text, int length, int number) {
+        if (number >= 10)
+            text[length++] = (char) ('0' + number / 10);
+        text[length++] = (char) ('0' + number % 10);
+        return length;
+    }
+
+    private static byte code(Color color, int kind) {
+        return (byte) (1 + color.ordinal() * KINDS.length() + kind);
+    }
+
+    private static boolean canCastleWith(Board board, Rook rook) {
+        return board.getPos(rook) != null && !board.history.movedBefore(rook);
+    }
+
+    private static int kind(Piece piece) {
+        if (piece instanceof King) return KING;
+        if (piece instanceof Queen) return 1;
+        if (piece instanceof Rook) return ROOK;
+        if (piece instanceof Bishop) return 3;
+        if (piece instanceof Knight) return 4;
+        return PAWN;
+    }
+}
@@ -0,0 +1,73 @@
+package org.chess.board;
+
+import org.chess.App;
+import org.chess.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mede quantas posições por segundo `PositionNotation` lê e escreve, sobre as
+ * posições de jogos com lances aleatórios (reprodutíveis).
+ *
+ * Uso: ./gradlew app:notationBenchmark -PnotationBenchmarkArgs="posições segundos"
+ * (padrão: 2000 posições, 2 segundos por medida).
+ */
+public class PositionNotationBenchmark {
+    // Guarda os resultados das operações, para que o JIT não as elimine
+    private static int sink;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long nanos = (long) ((args.length > 1 ? Double.parseDouble(args[1]) : 2) * 1e9);
+
+        List<Board> boards = new ArrayList<>(count);
+        List<String> texts = new ArrayList<>(count);
+        List<PositionNotation.Position> positions = new ArrayList<>(count);
+        Random random = new Random(1);
+        App app = new App();
+        while (boards.size() < count) {
+            Board board = app.getBoardSnapshot();
+            List<Move> moves = new ArrayList<>(board.getAllMoves(app.getCurrentTurn()));
+            if (app.isGameOver() || moves.isEmpty()) {
+                app = new App();
+                continue;
+            }
+            PositionNotation.Position position = PositionNotation.of(board, app.getCurrentTurn());
+            boards.add(board);
+            texts.add(position.toString());
+            positions.add(position);
+            app.doMove(moves.get(random.nextInt(moves.size())));
+        }
+        System.out.println(count + " posições de jogos aleatórios");
+
+        // Cada medida roda duas vezes: a primeira aquece o JIT
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+            measure("parse", nanos, print, count, i -> PositionNotation.parse(texts.get(i)).hashCode());
+            measure("toString", nanos, print, count, i -> positions.get(i).toString().length());
+            measure("of", nanos, print, count, i -> PositionNotation.of(boards.get(i), positions.get(i).getToMove()).hashCode());
+            measure("toBoard", nanos, print, count, i -> (int) positions.get(i).toBoard().getPositionHash());
+        }
+    }
+
+    private interface Operation {
+        int apply(int index);
+    }
+
+    /* Repete a operação sobre as posições por `nanos` e mostra a vazão. */
+    private static void measure(String name, long nanos, boolean print, int count, Operation operation) {
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < count; i++)
+                sink += operation.apply(i);
+            operations += count;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < nanos);
+        if (print)
+            System.out.printf("%-8s %,14.0f posições/s%n", name, operations * 1e9 / elapsed);
+    }
+}
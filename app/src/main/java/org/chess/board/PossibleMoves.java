@@ -88,6 +88,10 @@ class PossibleMoves implements Serializable {
     return pieceMovesMap.get(currentTurn).isEmpty();
   }
 
+  public int countMoves(Color color) {
+    return pieceMovesMap.get(color).size();
+  }
+
   public Collection<Move> getAllMoves(Color color) {
     return new ArrayList<>(pieceMovesMap.get(color).values());
   }
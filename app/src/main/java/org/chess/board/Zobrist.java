@@ -0,0 +1,48 @@
+package org.chess.board;
+
+import java.util.SplittableRandom;
+
+import org.chess.Color;
+import org.chess.Pos;
+import org.chess.pieces.Bishop;
+import org.chess.pieces.King;
+import org.chess.pieces.Knight;
+import org.chess.pieces.Pawn;
+import org.chess.pieces.Piece;
+import org.chess.pieces.Queen;
+
+/*
+ * Random keys used to hash positions. A position's hash is the XOR of the keys
+ * of every (piece kind, color, square) on the board, so it can be updated
+ * incrementally when pieces move.
+ */
+class Zobrist {
+  private static final int KINDS = 6;
+  private static final int SQUARES = 14 * 14;
+
+  // Fixed seed: hashes must be the same across runs since they may be stored.
+  private static final long[] KEYS = new SplittableRandom(0x4C4553534348L)
+      .longs(KINDS * Color.values().length * SQUARES).toArray();
+
+  private Zobrist() {
+  }
+
+  static long key(Piece piece, Pos pos) {
+    int square = (pos.row() - 1) * 14 + pos.column() - 1;
+    return KEYS[(kind(piece) * Color.values().length + piece.color.ordinal()) * SQUARES + square];
+  }
+
+  private static int kind(Piece piece) {
+    if (piece instanceof Pawn)
+      return 0;
+    if (piece instanceof Knight)
+      return 1;
+    if (piece instanceof Bishop)
+      return 2;
+    if (piece instanceof Queen)
+      return 4;
+    if (piece instanceof King)
+      return 5;
+    return 3; // Rook
+  }
+}
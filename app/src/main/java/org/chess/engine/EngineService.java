@@ -0,0 +1,233 @@
+package org.chess.engine;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.chess.App;
+import org.chess.Clock;
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.board.Board;
+
+/**
+ * Runs the searches of every engine seat, from any number of games, on a fixed
+ * pool of worker threads.
+ *
+ * Scheduling:
+ * - requests are served earliest flag time first, i.e. by the moment the
+ * requesting color would run out of time;
+ * - each game has at most one pending request. A new request from the same game
+ * replaces the old one, so a busy game can't take over the pool;
+ * - when a move is made in a game, its pending request is stale and is
+ * cancelled, whether it is still queued or already running.
+ *
+ * A game is followed from its first request until it ends, or until `forget`
+ * is called, e.g. when the game leaves memory (see `GameRegistry`'s teardown).
+ * Only then are its listener and transposition tables released.
+ */
+public class EngineService implements AutoCloseable {
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final int TABLE_SIZE_LOG2 = 14;
+
+    public record Metrics(int queueDepth, int running, long completed, long cancelled, long p99LatencyNanos) {
+    }
+
+    private final int maxDepth;
+    private final ThreadPoolExecutor executor;
+    private final Map<App, Game> games = new ConcurrentHashMap<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latencyCount;
+
+    public EngineService(int workers, int maxDepth) {
+        this.maxDepth = maxDepth;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "engine-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // ###########################################################################
+    // Public interface
+    // ###########################################################################
+
+    /**
+     * Queues a search for the color in the game's current position. It must be
+     * called from the thread that makes the game's moves.
+     *
+     * @return the move found. It is cancelled if a move is made in the game, or
+     *         if another request is made for it, before the search ends.
+     * @throws IllegalArgumentException if the game is over.
+     */
+    public CompletableFuture<Move> requestMove(App app, Color color) {
+        if (app.isGameOver())
+            throw new IllegalArgumentException("Game is over.");
+        Game game = games.computeIfAbsent(app, Game::new);
+        Request request = new Request(game, color, app.getBoardSnapshot(), app.getPlayer(color).clock);
+        Request old = game.pending.getAndSet(request);
+        if (old != null)
+            old.cancel();
+        queued.incrementAndGet();
+        executor.execute(request);
+        return request.result;
+    }
+
+    /**
+     * Cancels the game's pending request and stops following its moves. Games
+     * that end are forgotten on their own; a game that is abandoned must be
+     * forgotten by whoever drops it.
+     */
+    public void forget(App app) {
+        Game game = games.remove(app);
+        if (game != null)
+            game.close();
+    }
+
+    public Metrics getMetrics() {
+        return new Metrics(queued.get(), running.get(), completed.get(), cancelled.get(), p99Latency());
+    }
+
+    @Override
+    public void close() {
+        for (App app : games.keySet())
+            forget(app);
+        executor.shutdownNow();
+    }
+
+    // ###########################################################################
+    // Internals
+    // ###########################################################################
+
+    /* Per game state: the pending request and a transposition table per color. */
+    private final class Game {
+        private final App app;
+        private final AtomicReference<Request> pending = new AtomicReference<>();
+        private final Map<Color, TranspositionTable> tables = new EnumMap<>(Color.class);
+        private final Consumer<Move> listener;
+
+        Game(App app) {
+            this.app = app;
+            // A game that ends won't make any more requests
+            this.listener = move -> {
+                cancelPending();
+                if (app.isGameOver())
+                    forget(app);
+            };
+            app.addMoveListener(listener);
+        }
+
+        synchronized TranspositionTable table(Color color) {
+            return tables.computeIfAbsent(color, c -> new TranspositionTable(TABLE_SIZE_LOG2));
+        }
+
+        void cancelPending() {
+            Request request = pending.getAndSet(null);
+            if (request != null)
+                request.cancel();
+        }
+
+        void close() {
+            app.removeMoveListener(listener);
+            cancelPending();
+        }
+    }
+
+    private final class Request implements Runnable, Comparable<Request> {
+        private final Game game;
+        private final Color color;
+        private final Board board;
+        private final Clock clock;
+        private final long submitTimestamp = System.nanoTime();
+        private final long flagTimestamp;
+        private final CompletableFuture<Move> result = new CompletableFuture<>();
+        private final Search search;
+        private volatile boolean done;
+
+        Request(Game game, Color color, Board board, Clock clock) {
+            this.game = game;
+            this.color = color;
+            this.board = board;
+            this.clock = clock;
+            this.flagTimestamp = submitTimestamp + clock.getTimeLeftNanosecs();
+            this.search = new Search(color, game.table(color));
+        }
+
+        @Override
+        public void run() {
+            queued.decrementAndGet();
+            if (done)
+                return;
+            running.incrementAndGet();
+            try {
+                // The budget is computed now, so that time spent in the queue counts.
+                TimeManager timeManager = new TimeManager(clock, Search.colorsInGame(board) - 1);
+                Move move = search.findBestMove(board, maxDepth, timeManager);
+                if (finish()) {
+                    result.complete(move);
+                    completed.incrementAndGet();
+                    recordLatency(System.nanoTime() - submitTimestamp);
+                }
+            } catch (RuntimeException e) {
+                if (finish())
+                    result.completeExceptionally(e);
+            } finally {
+                running.decrementAndGet();
+                game.pending.compareAndSet(this, null);
+            }
+        }
+
+        void cancel() {
+            search.stop();
+            if (executor.remove(this))
+                queued.decrementAndGet();
+            if (finish()) {
+                result.cancel(false);
+                cancelled.incrementAndGet();
+            }
+        }
+
+        /* Only the first of completion and cancellation takes effect. */
+        private synchronized boolean finish() {
+            if (done)
+                return false;
+            done = true;
+            return true;
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            return Long.compare(flagTimestamp, other.flagTimestamp);
+        }
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = nanos;
+    }
+
+    /* 99th percentile of the latencies of the last completed requests. */
+    private synchronized long p99Latency() {
+        int count = (int) Math.min(latencyCount, LATENCY_SAMPLES);
+        if (count == 0)
+            return 0;
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(count * 0.99) - 1];
+    }
+}
@@ -0,0 +1,91 @@
+package org.chess.engine;
+
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.board.Board;
+import org.chess.pieces.Bishop;
+import org.chess.pieces.Knight;
+import org.chess.pieces.Pawn;
+import org.chess.pieces.Piece;
+import org.chess.pieces.Queen;
+import org.chess.pieces.Rook;
+
+/**
+ * Static evaluation of a position from the point of view of one color.
+ *
+ * The score is the material balance against every opponent at once: each of the
+ * color's own pieces counts once per opponent, each opponent piece counts once
+ * against it. Losing a piece is therefore worse than taking one, which is what
+ * we want with three players who profit from any trade.
+ */
+public class Evaluator {
+    public static final int PAWN_VALUE = 100;
+    public static final int KNIGHT_VALUE = 300;
+    public static final int BISHOP_VALUE = 300;
+    public static final int ROOK_VALUE = 500;
+    public static final int QUEEN_VALUE = 900;
+
+    private static final int OPPONENTS = Color.values().length - 1;
+
+    private final Color color;
+
+    public Evaluator(Color color) {
+        this.color = color;
+    }
+
+    public int evaluate(Board board) {
+        int score = 0;
+        for (Color other : Color.values())
+            for (Piece piece : board.getPieces(other))
+                score += weight(other) * value(piece);
+        return score;
+    }
+
+    /**
+     * Material change caused by a move, in the same unit as `evaluate`. It only
+     * looks at captures and promotions, so it is exact for the moves returned by
+     * `Board.getCaptureMoves`.
+     */
+    public int materialSwing(Board board, Move move) {
+        int swing = 0;
+        Piece captured = move.enPassantVictim() != null ? move.enPassantVictim() : board.getPiece(move.toPos());
+        if (captured != null)
+            swing -= weight(captured.color) * value(captured);
+        int promotionValue = promotionValue(move.type());
+        if (promotionValue > 0)
+            swing += weight(move.piece().color) * (promotionValue - PAWN_VALUE);
+        return swing;
+    }
+
+    private int weight(Color other) {
+        return other == color ? OPPONENTS : -1;
+    }
+
+    /**
+     * @return the material value of a piece. Kings are worth nothing here: losing
+     *         one removes every other piece of its color.
+     */
+    public static int value(Piece piece) {
+        if (piece instanceof Pawn)
+            return PAWN_VALUE;
+        if (piece instanceof Knight)
+            return KNIGHT_VALUE;
+        if (piece instanceof Bishop)
+            return BISHOP_VALUE;
+        if (piece instanceof Rook)
+            return ROOK_VALUE;
+        if (piece instanceof Queen)
+            return QUEEN_VALUE;
+        return 0;
+    }
+
+    private static int promotionValue(Move.MoveType moveType) {
+        return switch (moveType) {
+            case QUEEN_PROMOTION -> QUEEN_VALUE;
+            case ROOK_PROMOTION -> ROOK_VALUE;
+            case BISHOP_PROMOTION -> BISHOP_VALUE;
+            case KNIGHT_PROMOTION -> KNIGHT_VALUE;
+            default -> 0;
+        };
+    }
+}
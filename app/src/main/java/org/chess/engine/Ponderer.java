@@ -0,0 +1,94 @@
+package org.chess.engine;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.chess.App;
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.board.Board;
+
+/**
+ * Engine seat that keeps searching while the other colors are to move.
+ *
+ * Every `App.doMove` restarts pondering on the new position in a background
+ * thread. All searches share one transposition table, so when it's finally this
+ * color's turn, the subtree of the move actually played has already been
+ * searched and `think` starts from those entries.
+ */
+public class Ponderer {
+    private final App app;
+    private final Color color;
+    private final int maxDepth;
+    private final TranspositionTable table = new TranspositionTable(18);
+    private final Consumer<Move> listener = move -> restart();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ponderer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Search pondering;
+    private Future<?> ponderTask;
+
+    public Ponderer(App app, Color color, int maxDepth) {
+        this.app = app;
+        this.color = color;
+        this.maxDepth = maxDepth;
+        app.addMoveListener(listener);
+        restart();
+    }
+
+    /**
+     * Stops pondering and searches the current position, within the time budget
+     * given by the color's clock. It should only be called on this color's turn.
+     *
+     * @return the best move found, or null if the color has no moves.
+     */
+    public synchronized Move think() {
+        stopPondering();
+        Board board = app.getBoardSnapshot();
+        TimeManager timeManager = new TimeManager(app.getPlayer(color).clock, Search.colorsInGame(board) - 1);
+        return new Search(color, table).findBestMove(board, maxDepth, timeManager);
+    }
+
+    /** Stops pondering for good and detaches from the app. */
+    public synchronized void close() {
+        stopPondering();
+        app.removeMoveListener(listener);
+        executor.shutdownNow();
+    }
+
+    /* Called after every move, from the thread that made it. */
+    private synchronized void restart() {
+        stopPondering();
+        if (app.isGameOver() || app.getCurrentTurn() == color)
+            return;
+        Board board = app.getBoardSnapshot();
+        Color toMove = app.getCurrentTurn();
+        Search search = new Search(color, table);
+        pondering = search;
+        ponderTask = executor.submit(() -> search.ponder(board, toMove, maxDepth));
+    }
+
+    private void stopPondering() {
+        if (pondering == null)
+            return;
+        pondering.stop();
+        try {
+            ponderTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Pondering is only an optimization, a failure must not stop the game.
+            System.err.println("Pondering on the opponents' turns failed: " + e.getCause());
+        } finally {
+            pondering = null;
+            ponderTask = null;
+        }
+    }
+}
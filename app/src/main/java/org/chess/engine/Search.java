@@ -0,0 +1,350 @@
+package org.chess.engine;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.board.Board;
+import org.chess.pieces.King;
+import org.chess.pieces.Piece;
+
+/**
+ * Iterative deepening alpha-beta search for one color.
+ *
+ * With four players the search is "paranoid": the searching color maximizes the
+ * evaluation and every other color is assumed to minimize it. Leaf nodes are
+ * extended by a quiescence search over captures and promotions only, so the
+ * search never stops in the middle of an exchange.
+ *
+ * Results are cached in a transposition table, which may be shared with later
+ * searches of the same color (see `Ponderer`).
+ *
+ * Moves are tried on the searched board itself with `Board.doMove` and taken
+ * back with `Board.undo`, so the board must not be used by anyone else during
+ * the search (e.g. pass `App.getBoardSnapshot`). It is left as it was found.
+ * The quiescence search only needs the pieces: it generates its captures with
+ * `Board.getCaptureMoves` and plays them with `Board.doCapture`, so it never
+ * calculates the quiet moves of a position.
+ */
+public class Search {
+    public static final int MATE_SCORE = 1_000_000;
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    /* Quiescence stops after this many plies even if there are captures left. */
+    private static final int MAX_QUIESCENCE_PLY = 4;
+
+    /* Captures that can't get within two of our pawns of alpha are not searched. */
+    private static final int DELTA_MARGIN = 2 * Evaluator.PAWN_VALUE * (Color.values().length - 1);
+
+    /* Scores this close to a mate depend on the ply and are not cached. */
+    private static final int MAX_CACHED_SCORE = MATE_SCORE / 2;
+
+    private final Color color;
+    private final Evaluator evaluator;
+    private final TranspositionTable table;
+
+    private volatile boolean stopped;
+    private TimeManager timeManager;
+    private long nodes;
+    private int bestScore;
+
+    public Search(Color color) {
+        this(color, new TranspositionTable(16));
+    }
+
+    public Search(Color color, TranspositionTable table) {
+        this.color = color;
+        this.evaluator = new Evaluator(color);
+        this.table = table;
+    }
+
+    // ###########################################################################
+    // Public interface
+    // ###########################################################################
+
+    /**
+     * Searches the board with increasing depth until `maxDepth` or until `stop`
+     * is called. An interrupted iteration is discarded.
+     *
+     * @return the best move found, or null if the color has no moves.
+     */
+    public Move findBestMove(Board board, int maxDepth) {
+        return findBestMove(board, maxDepth, null);
+    }
+
+    /**
+     * Same as `findBestMove(Board, int)`, but the search also stops when the time
+     * manager says so.
+     */
+    public Move findBestMove(Board board, int maxDepth, TimeManager timeManager) {
+        nodes = 0;
+        this.timeManager = timeManager;
+        List<Move> rootMoves = new ArrayList<>(board.getAllMoves(color));
+        if (rootMoves.isEmpty())
+            return null;
+        long rootKey = TranspositionTable.key(board, color);
+        orderMoves(board, rootMoves, hashMove(rootKey));
+
+        Move bestMove = rootMoves.get(0);
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            Move iterationBest = null;
+            int alpha = -INFINITY;
+            for (Move move : rootMoves) {
+                if (outOfTime())
+                    break;
+                board.doMove(move);
+                int score = search(board, nextColor(board, color), depth - 1, 1, alpha, INFINITY);
+                board.undo();
+                if (stopped)
+                    break;
+                if (iterationBest == null || score > alpha) {
+                    alpha = score;
+                    iterationBest = move;
+                }
+            }
+            if (stopped)
+                break;
+            boolean bestMoveChanged = depth == 1 || !iterationBest.equals(bestMove);
+            bestMove = iterationBest;
+            bestScore = alpha;
+            table.put(rootKey, depth, alpha, TranspositionTable.Bound.EXACT, bestMove);
+            // The best move of this iteration is searched first in the next one.
+            rootMoves.remove(bestMove);
+            rootMoves.add(0, bestMove);
+            if (timeManager != null && !timeManager.startNextIteration(bestMoveChanged))
+                break;
+        }
+        this.timeManager = null;
+        return bestMove;
+    }
+
+    /**
+     * Searches a position where another color is to move, only to fill the
+     * transposition table. It runs until `maxDepth` or until `stop` is called.
+     */
+    public void ponder(Board board, Color toMove, int maxDepth) {
+        nodes = 0;
+        timeManager = null;
+        for (int depth = 1; depth <= maxDepth && !stopped; depth++)
+            search(board, toMove, depth, 0, -INFINITY, INFINITY);
+    }
+
+    /**
+     * Makes a running `findBestMove` or `ponder` return as soon as possible. It may
+     * be called from another thread, even before the search starts. A stopped
+     * search stays stopped, so a new `Search` is needed for the next one.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /** @return the score of the last completed iteration. */
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    // ###########################################################################
+    // Search
+    // ###########################################################################
+
+    private int search(Board board, Color toMove, int depth, int ply, int alpha, int beta) {
+        if (outOfTime())
+            return 0;
+        nodes++;
+        Integer terminal = terminalScore(board, ply);
+        if (terminal != null)
+            return terminal;
+        if (depth <= 0)
+            return quiescence(board, toMove, ply, 0, 0, alpha, beta);
+
+        long key = TranspositionTable.key(board, toMove);
+        TranspositionTable.Entry entry = table.get(key);
+        if (entry != null && entry.depth() >= depth) {
+            switch (entry.bound()) {
+                case EXACT -> {
+                    return entry.score();
+                }
+                case LOWER -> alpha = Math.max(alpha, entry.score());
+                case UPPER -> beta = Math.min(beta, entry.score());
+            }
+            if (alpha >= beta)
+                return entry.score();
+        }
+
+        List<Move> moves = new ArrayList<>(board.getAllMoves(toMove));
+        if (moves.isEmpty())
+            return evaluator.evaluate(board);
+        orderMoves(board, moves, entry != null ? entry.bestMove() : null);
+
+        int originalAlpha = alpha;
+        int originalBeta = beta;
+        boolean maximizing = toMove == color;
+        int best = maximizing ? -INFINITY : INFINITY;
+        Move bestMove = null;
+        for (Move move : moves) {
+            board.doMove(move);
+            int score = search(board, nextColor(board, toMove), depth - 1, ply + 1, alpha, beta);
+            board.undo();
+            if (maximizing ? score > best : score < best) {
+                best = score;
+                bestMove = move;
+            }
+            if (maximizing)
+                alpha = Math.max(alpha, score);
+            else
+                beta = Math.min(beta, score);
+            if (alpha >= beta)
+                break;
+        }
+
+        if (!stopped && Math.abs(best) < MAX_CACHED_SCORE) {
+            TranspositionTable.Bound bound;
+            if (best <= originalAlpha)
+                bound = TranspositionTable.Bound.UPPER;
+            else if (best >= originalBeta)
+                bound = TranspositionTable.Bound.LOWER;
+            else
+                bound = TranspositionTable.Bound.EXACT;
+            table.put(key, depth, best, bound, bestMove);
+        }
+        return best;
+    }
+
+    /*
+     * Only captures and promotions are searched. The side to move may always
+     * "stand pat", i.e. decline every capture. With four players that means
+     * passing the turn, since the next color may still want to capture; the
+     * static evaluation is used once every color in game has passed in a row.
+     */
+    private int quiescence(Board board, Color toMove, int ply, int quiescencePly, int passes, int alpha,
+            int beta) {
+        if (outOfTime())
+            return 0;
+        nodes++;
+        Integer terminal = terminalScore(board, ply);
+        if (terminal != null)
+            return terminal;
+
+        if (quiescencePly >= MAX_QUIESCENCE_PLY)
+            return evaluator.evaluate(board);
+        int standPat = passes + 1 >= colorsInGame(board)
+                ? evaluator.evaluate(board)
+                : quiescence(board, nextColor(board, toMove), ply, quiescencePly, passes + 1, alpha, beta);
+
+        boolean maximizing = toMove == color;
+        if (maximizing) {
+            if (standPat >= beta)
+                return standPat;
+            alpha = Math.max(alpha, standPat);
+        } else {
+            if (standPat <= alpha)
+                return standPat;
+            beta = Math.min(beta, standPat);
+        }
+
+        List<Move> captures = new ArrayList<>(board.getCaptureMoves(toMove));
+        orderMoves(board, captures, null);
+
+        int best = standPat;
+        for (Move move : captures) {
+            Piece victim = board.getPiece(move.toPos());
+            if (victim instanceof King) {
+                // Taking a king eliminates a whole color, so it is never pruned. The
+                // other colors only care about eliminating ours.
+                if (!maximizing && victim.color != color)
+                    continue;
+            } else {
+                // Other colors are only interested in captures that hurt us, and
+                // captures that can't bring the score back to the window are pruned
+                // (delta pruning).
+                int swing = evaluator.materialSwing(board, move);
+                if (!maximizing && swing >= 0)
+                    continue;
+                if (maximizing && standPat + swing + DELTA_MARGIN <= alpha)
+                    continue;
+                if (!maximizing && standPat + swing - DELTA_MARGIN >= beta)
+                    continue;
+            }
+            board.doCapture(move);
+            int score = quiescence(board, nextColor(board, toMove), ply + 1, quiescencePly + 1, 0, alpha, beta);
+            board.undo();
+            if (maximizing) {
+                best = Math.max(best, score);
+                alpha = Math.max(alpha, score);
+            } else {
+                best = Math.min(best, score);
+                beta = Math.min(beta, score);
+            }
+            if (alpha >= beta)
+                break;
+        }
+        return best;
+    }
+
+    // ###########################################################################
+    // Helpers
+    // ###########################################################################
+
+    /* Mate scores are adjusted by ply so that faster wins are preferred. */
+    private Integer terminalScore(Board board, int ply) {
+        if (!board.isInGame(color))
+            return -MATE_SCORE + ply;
+        for (Color other : Color.values())
+            if (other != color && board.isInGame(other))
+                return null;
+        return MATE_SCORE - ply;
+    }
+
+    private boolean outOfTime() {
+        if (!stopped && timeManager != null && timeManager.hardLimitReached())
+            stopped = true;
+        return stopped;
+    }
+
+    static int colorsInGame(Board board) {
+        int count = 0;
+        for (Color color : Color.values())
+            if (board.isInGame(color))
+                count++;
+        return count;
+    }
+
+    /**
+     * @return the next color to play after `color`, skipping eliminated ones.
+     */
+    static Color nextColor(Board board, Color color) {
+        Color next = color.getLeftColor();
+        while (next != color && !board.isInGame(next))
+            next = next.getLeftColor();
+        return next;
+    }
+
+    private Move hashMove(long key) {
+        TranspositionTable.Entry entry = table.get(key);
+        return entry != null ? entry.bestMove() : null;
+    }
+
+    /*
+     * The move from the transposition table goes first, if any. Then captures, most
+     * valuable victim first and least valuable attacker first. Quiet moves last.
+     */
+    private static void orderMoves(Board board, List<Move> moves, Move hashMove) {
+        moves.sort(Comparator.comparingInt((Move move) -> -captureScore(board, move)));
+        if (hashMove != null && moves.remove(hashMove))
+            moves.add(0, hashMove);
+    }
+
+    private static int captureScore(Board board, Move move) {
+        Piece victim = move.enPassantVictim() != null ? move.enPassantVictim() : board.getPiece(move.toPos());
+        if (victim == null)
+            return 0;
+        int victimValue = victim instanceof King ? 100 * Evaluator.QUEEN_VALUE : Evaluator.value(victim);
+        return 16 * victimValue - Evaluator.value(move.piece());
+    }
+}
@@ -0,0 +1,196 @@
+package org.chess.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.chess.App;
+import org.chess.Clock;
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.board.Board;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Headless engine vs engine tournament. Every game has its own `App`, games run
+ * in parallel, one per worker thread, and the results are written as JSON.
+ *
+ * Usage: SelfPlay [games] [maxDepth] [threads] [output] [maxPlies]
+ *
+ * Besides tuning the engine, it exercises the whole game core and reports its
+ * throughput (nodes per second, time per move).
+ */
+public class SelfPlay {
+    public record Config(int games, int maxDepth, int threads, Path output, int maxPlies) {
+    }
+
+    /**
+     * @param winner    null if the game didn't end with a single color left.
+     * @param endReason ONE_LEFT, MAX_PLIES, NO_MOVES, TIME (the mover's flag
+     *                  fell) or ERROR (the move was rejected for another reason).
+     * @param error     why the game stopped on ERROR, null otherwise.
+     */
+    public record GameResult(Color winner, String endReason, int plies, long nodes, long[] moveNanos,
+            String error) {
+    }
+
+    /* Fields are written to the output file as they are. */
+    public static class Report {
+        int games;
+        Map<String, Integer> wins = new LinkedHashMap<>();
+        Map<String, Integer> endReasons = new LinkedHashMap<>();
+        List<String> errors = new ArrayList<>();
+        double averagePlies;
+        long totalNodes;
+        double nodesPerSecond;
+        Map<String, Double> moveTimeMillis = new LinkedHashMap<>();
+        double wallClockSeconds;
+        double gamesPerSecond;
+    }
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        Config config = new Config(
+                args.length > 0 ? Integer.parseInt(args[0]) : 8,
+                args.length > 1 ? Integer.parseInt(args[1]) : 1,
+                args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors(),
+                Path.of(args.length > 3 ? args[3] : "self_play.json"),
+                args.length > 4 ? Integer.parseInt(args[4]) : 400);
+
+        System.out.println("Playing " + config.games() + " games on " + config.threads() + " threads...");
+        Report report = run(config);
+        try (Writer writer = Files.newBufferedWriter(config.output())) {
+            gson.toJson(report, writer);
+        }
+        for (String error : report.errors)
+            System.err.println("Game stopped by an error: " + error);
+        System.out.println("Results written to " + config.output().toAbsolutePath());
+    }
+
+    public static Report run(Config config) throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(config.threads());
+        long start = System.nanoTime();
+        List<GameResult> results = new ArrayList<>();
+        try {
+            List<Future<GameResult>> futures = new ArrayList<>();
+            for (int i = 0; i < config.games(); i++)
+                futures.add(executor.submit(() -> playGame(config)));
+            for (Future<GameResult> future : futures)
+                results.add(future.get());
+        } finally {
+            executor.shutdownNow();
+        }
+        return summarize(results, System.nanoTime() - start);
+    }
+
+    public static GameResult playGame(Config config) {
+        App app = new App();
+        Map<Color, TranspositionTable> tables = new EnumMap<>(Color.class);
+        for (Color color : Color.values())
+            tables.put(color, new TranspositionTable(16));
+
+        List<Long> moveNanos = new ArrayList<>();
+        long nodes = 0;
+        String endReason = "ONE_LEFT";
+        String error = null;
+        while (!app.isGameOver()) {
+            if (moveNanos.size() >= config.maxPlies()) {
+                endReason = "MAX_PLIES";
+                break;
+            }
+            Color color = app.getCurrentTurn();
+            Clock clock = app.getPlayer(color).clock;
+            if (clock.getTimeLeftNanosecs() <= 0) {
+                endReason = "TIME";
+                break;
+            }
+            Board board = app.getBoardSnapshot();
+            Search search = new Search(color, tables.get(color));
+            TimeManager timeManager = new TimeManager(clock, Search.colorsInGame(board) - 1);
+
+            long moveStart = System.nanoTime();
+            Move move = search.findBestMove(board, config.maxDepth(), timeManager);
+            moveNanos.add(System.nanoTime() - moveStart);
+            nodes += search.getNodes();
+            if (move == null) {
+                endReason = "NO_MOVES";
+                break;
+            }
+            try {
+                app.doMove(move);
+            } catch (RuntimeException e) {
+                // The flag may fall during the search; anything else is a bug
+                if (clock.getTimeLeftNanosecs() <= 0) {
+                    endReason = "TIME";
+                } else {
+                    endReason = "ERROR";
+                    error = color + " " + move + ": " + e;
+                }
+                break;
+            }
+        }
+
+        Color winner = null;
+        if (app.isGameOver()) {
+            Board board = app.getBoardSnapshot();
+            for (Color color : Color.values())
+                if (board.isInGame(color))
+                    winner = color;
+        }
+        return new GameResult(winner, endReason, moveNanos.size(), nodes,
+                moveNanos.stream().mapToLong(Long::longValue).toArray(), error);
+    }
+
+    private static Report summarize(List<GameResult> results, long wallClockNanos) {
+        Report report = new Report();
+        report.games = results.size();
+        for (Color color : Color.values())
+            report.wins.put(color.name(), 0);
+
+        long plies = 0;
+        long searchNanos = 0;
+        for (GameResult result : results) {
+            if (result.winner() != null)
+                report.wins.merge(result.winner().name(), 1, Integer::sum);
+            report.endReasons.merge(result.endReason(), 1, Integer::sum);
+            if (result.error() != null)
+                report.errors.add(result.error());
+            plies += result.plies();
+            report.totalNodes += result.nodes();
+            searchNanos += Arrays.stream(result.moveNanos()).sum();
+        }
+
+        report.averagePlies = results.isEmpty() ? 0 : (double) plies / results.size();
+        report.nodesPerSecond = searchNanos == 0 ? 0 : report.totalNodes * 1e9 / searchNanos;
+        report.wallClockSeconds = wallClockNanos / 1e9;
+        report.gamesPerSecond = results.size() / report.wallClockSeconds;
+
+        long[] moveNanos = results.stream().flatMapToLong(result -> Arrays.stream(result.moveNanos())).sorted()
+                .toArray();
+        for (int percentile : new int[] { 50, 90, 99, 100 })
+            report.moveTimeMillis.put(percentile == 100 ? "max" : "p" + percentile,
+                    percentile(moveNanos, percentile) / 1e6);
+        return report;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0)
+            return 0;
+        int index = (int) Math.ceil(sorted.length * percentile / 100.0) - 1;
+        return sorted[Math.max(0, index)];
+    }
+}
@@ -0,0 +1,83 @@
+package org.chess.engine;
+
+import org.chess.Clock;
+
+/**
+ * Decides how long a search may think, based on the color's clock.
+ *
+ * Two budgets are computed when the search starts:
+ * - a soft one, checked between iterations. It grows when the best move keeps
+ * changing and shrinks when it is stable;
+ * - a hard one, checked during the search, which is never exceeded so that the
+ * engine doesn't lose on time even if the host is busy.
+ */
+public class TimeManager {
+    private static final long MILLISECOND = 1_000_000L;
+
+    /* Time kept aside for the move to reach the clock, even under load. */
+    private static final long MIN_SAFETY_MARGIN = 100 * MILLISECOND;
+
+    /* The search may use at most this fraction of the time left at once. */
+    private static final int MAX_FRACTION = 4;
+
+    private final long softBudget;
+    private final long hardBudget;
+    private long startTimestamp;
+    private int stableIterations;
+
+    /**
+     * @param clock           the searching color's clock.
+     * @param activeOpponents colors still in game, apart from the searching one.
+     */
+    public TimeManager(Clock clock, int activeOpponents) {
+        long timeLeft = clock.getTimeLeftNanosecs();
+        long usable = Math.max(0, timeLeft - Math.max(MIN_SAFETY_MARGIN, timeLeft / 50));
+        // The more opponents there are, the longer the game goes on and the more
+        // moves the time left has to last for.
+        int movesToGo = 10 + 8 * Math.max(1, activeOpponents);
+        this.softBudget = usable / movesToGo;
+        this.hardBudget = Math.min(usable / MAX_FRACTION, 5 * softBudget);
+        start();
+    }
+
+    /** Restarts the budgets from now. */
+    public void start() {
+        startTimestamp = System.nanoTime();
+        stableIterations = 0;
+    }
+
+    /**
+     * Called after each completed iteration.
+     *
+     * @param bestMoveChanged whether the iteration changed the best move.
+     * @return whether another iteration should be started.
+     */
+    public boolean startNextIteration(boolean bestMoveChanged) {
+        stableIterations = bestMoveChanged ? 0 : stableIterations + 1;
+        double factor = switch (Math.min(stableIterations, 3)) {
+            case 0 -> 1.5;
+            case 1 -> 1.0;
+            case 2 -> 0.8;
+            default -> 0.6;
+        };
+        // The next iteration usually takes longer than all previous ones together,
+        // so it's not started past half of the budget.
+        return elapsed() < factor * softBudget / 2 && !hardLimitReached();
+    }
+
+    public boolean hardLimitReached() {
+        return elapsed() >= hardBudget;
+    }
+
+    public long getSoftBudgetNanosecs() {
+        return softBudget;
+    }
+
+    public long getHardBudgetNanosecs() {
+        return hardBudget;
+    }
+
+    private long elapsed() {
+        return System.nanoTime() - startTimestamp;
+    }
+}
@@ -0,0 +1,70 @@
+package org.chess.engine;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.board.Board;
+
+/**
+ * Fixed size cache of search results, indexed by position hash and side to move.
+ *
+ * Scores are from the point of view of the color that owns the table, so a
+ * table must not be shared between searches for different colors. It outlives a
+ * single search: entries written while pondering are used when the engine has
+ * to move.
+ */
+public class TranspositionTable {
+    public enum Bound {
+        EXACT,
+        LOWER,
+        UPPER,
+    }
+
+    public record Entry(long key, int depth, int score, Bound bound, Move bestMove) {
+    }
+
+    private static final long[] SIDE_KEYS = new SplittableRandom(0x5349444553L).longs(Color.values().length)
+            .toArray();
+
+    private final Entry[] entries;
+    private final int mask;
+
+    /**
+     * @param sizeLog2 the table holds 2^sizeLog2 entries.
+     */
+    public TranspositionTable(int sizeLog2) {
+        entries = new Entry[1 << sizeLog2];
+        mask = entries.length - 1;
+    }
+
+    public static long key(Board board, Color toMove) {
+        return board.getPositionHash() ^ SIDE_KEYS[toMove.ordinal()];
+    }
+
+    /**
+     * @return the entry stored for key, or null if there is none.
+     */
+    public Entry get(long key) {
+        Entry entry = entries[index(key)];
+        return entry != null && entry.key() == key ? entry : null;
+    }
+
+    /* Deeper results are kept over shallower ones for the same position. */
+    public void put(long key, int depth, int score, Bound bound, Move bestMove) {
+        int index = index(key);
+        Entry old = entries[index];
+        if (old != null && old.key() == key && old.depth() > depth)
+            return;
+        entries[index] = new Entry(key, depth, score, bound, bestMove);
+    }
+
+    public void clear() {
+        Arrays.fill(entries, null);
+    }
+
+    private int index(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,98 @@
+package org.chess.persistence;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.Pos;
+import org.chess.board.BinaryGameSerializer;
+import org.chess.board.Board;
+import org.chess.board.Ply;
+import org.chess.pieces.Piece;
+
+/**
+ * Replays the moves of a save, as `BinaryGameSerializer.readMoves` decodes
+ * them, on a copy of a board at the initial position, without an `App`. The
+ * turn order is the same as `App`'s: after each move, the colors left without
+ * moves are eliminated.
+ *
+ * Subclasses look at the game through `beforeMove` and `afterMove`.
+ */
+class BoardReplay implements BinaryGameSerializer.MoveHandler {
+    protected final Board board;
+    private Color turn = Color.GREEN;
+    private final List<Color> eliminated = new ArrayList<>();
+
+    /** @param initial a board at the initial position; it isn't changed. */
+    BoardReplay(Board initial) {
+        this.board = initial.copy();
+    }
+
+    /**
+     * Called with the board as it is before each move.
+     *
+     * @return false to stop the replay before this move.
+     */
+    protected boolean beforeMove(Color mover, Pos from, Pos to, Move.MoveType type) {
+        return true;
+    }
+
+    /** Called after each move and the eliminations it caused. */
+    protected void afterMove(Color mover, Ply ply) {
+    }
+
+    /** The colors eliminated so far, in order. */
+    List<Color> getEliminated() {
+        return Collections.unmodifiableList(eliminated);
+    }
+
+    /** @return the only color left, or null if there are more. */
+    Color getWinner() {
+        Color winner = null;
+        for (Color color : Color.values()) {
+            if (board.isInGame(color)) {
+                if (winner != null)
+                    return null;
+                winner = color;
+            }
+        }
+        return winner;
+    }
+
+    @Override
+    public Color apply(Pos from, Pos to, Move.MoveType type, int index) throws IOException {
+        Color mover = turn;
+        if (!beforeMove(mover, from, to, type))
+            return null;
+        boolean[] inGame = new boolean[Color.values().length];
+        for (Color color : Color.values())
+            inGame[color.ordinal()] = board.isInGame(color);
+        board.doMove(findMove(mover, from, to, type, index));
+
+        Color next = mover.getLeftColor();
+        while (next != mover && board.isCheckmate(next)) {
+            board.remove(next);
+            next = next.getLeftColor();
+        }
+        // Colors eliminated by the move, in turn order
+        for (Color color = mover.getLeftColor(); color != mover; color = color.getLeftColor())
+            if (inGame[color.ordinal()] && !board.isInGame(color))
+                eliminated.add(color);
+        turn = next;
+        afterMove(mover, board.history.getLastPly());
+        return next;
+    }
+
+    private Move findMove(Color mover, Pos from, Pos to, Move.MoveType type, int index) throws IOException {
+        Piece piece = board.getPiece(from);
+        if (piece == null || piece.color != mover)
+            throw new IOException("Move " + index + " has no " + mover + " piece on " + from);
+        for (Move move : board.getReadonlyMoves(piece))
+            if (move.toPos().equals(to) && move.type() == type)
+                return move;
+        throw new IOException("Invalid move " + index + ": " + from + " -> " + to + " (" + type + ")");
+    }
+}
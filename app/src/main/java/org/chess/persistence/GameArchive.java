@@ -0,0 +1,291 @@
+package org.chess.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.chess.App;
+import org.chess.Color;
+import org.chess.board.BinaryGameSerializer;
+import org.chess.board.Board;
+
+/**
+ * Many finished games packed in one memory-mapped file.
+ *
+ * Layout:
+ * <pre>
+ * header (64 bytes): int MAGIC, short VERSION, short 0, int capacity, int count, long data end
+ * index (capacity * 64 bytes), one fixed-width entry per game:
+ *   byte[24] game id (UTF-8, zero padded), long offset, int length, int plies,
+ *   byte winner (Color ordinal, -1 if none), byte[7] 0, long started, long archived (ms)
+ * data: the games in `BinaryGameSerializer` format, with compressed moves, back
+ * to back
+ * </pre>
+ *
+ * A game is appended by writing its data, then its index entry, then the new
+ * count, so a crash in the middle leaves the archive as it was. A single game
+ * is loaded by looking its entry up and copying only its bytes. When the index
+ * is full it's rewritten with twice the capacity.
+ *
+ * The file is mapped as a whole, so it must stay under 2 GB.
+ */
+public class GameArchive implements AutoCloseable {
+    public static final int MAGIC = 0x43344152; // "C4AR"
+    public static final short VERSION = 1;
+    public static final int MAX_ID_BYTES = 24;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int ENTRY_SIZE = 64;
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int DATA_END_OFFSET = 16;
+
+    /**
+     * @param winner null if the game isn't over or didn't end with one color.
+     */
+    public record Entry(String gameId, long offset, int length, int plies, Color winner, long startedMillis,
+            long archivedMillis) {
+    }
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    /** Opens the archive, creating it if it doesn't exist. */
+    public GameArchive(Path file) throws IOException {
+        this.file = file;
+        if (!Files.exists(file) || Files.size(file) == 0)
+            create(file, DEFAULT_CAPACITY);
+        open();
+    }
+
+    // ###########################################################################
+    // Public interface
+    // ###########################################################################
+
+    /**
+     * Appends the game to the archive.
+     *
+     * @throws IllegalArgumentException if the id is empty, longer than
+     *                                  MAX_ID_BYTES or already in the archive.
+     */
+    public void append(String gameId, App app, long startedMillis) throws IOException {
+        byte[] id = gameId.getBytes(StandardCharsets.UTF_8);
+        if (id.length == 0 || id.length > MAX_ID_BYTES)
+            throw new IllegalArgumentException("Invalid game id: " + gameId);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        BinaryGameSerializer.write(app, data, true);
+        int plies = app.getPlyCount();
+        Color winner = winner(app);
+
+        synchronized (this) {
+            if (slots.containsKey(gameId))
+                throw new IllegalArgumentException("Game already archived: " + gameId);
+            if (entries.size() == capacity)
+                grow();
+            long offset = buffer.getLong(DATA_END_OFFSET);
+            ensureMapped(offset + data.size());
+            buffer.put((int) offset, data.toByteArray());
+            Entry entry = new Entry(gameId, offset, data.size(), plies, winner, startedMillis,
+                    System.currentTimeMillis());
+            writeEntry(entries.size(), entry);
+            buffer.putLong(DATA_END_OFFSET, offset + data.size());
+            buffer.force();
+            // The count is the commit point.
+            buffer.putInt(COUNT_OFFSET, entries.size() + 1);
+            buffer.force();
+            slots.put(gameId, entries.size());
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * Loads a single game, reading only its bytes.
+     *
+     * @return the game, or null if it isn't in the archive.
+     */
+    public App load(String gameId) throws IOException {
+        InputStream data = openGame(gameId);
+        return data != null ? BinaryGameSerializer.read(data) : null;
+    }
+
+    /**
+     * A single game's bytes, in `BinaryGameSerializer` format, e.g. to replay it
+     * with `BinaryGameSerializer.readMoves` instead of loading it.
+     *
+     * @return null if the game isn't in the archive.
+     */
+    public InputStream openGame(String gameId) {
+        byte[] data;
+        synchronized (this) {
+            Integer slot = slots.get(gameId);
+            if (slot == null)
+                return null;
+            Entry entry = entries.get(slot);
+            data = new byte[entry.length()];
+            buffer.get((int) entry.offset(), data);
+        }
+        return new ByteArrayInputStream(data);
+    }
+
+    public synchronized Entry getEntry(String gameId) {
+        Integer slot = slots.get(gameId);
+        return slot != null ? entries.get(slot) : null;
+    }
+
+    /** @return the entries in the order the games were archived. */
+    public synchronized List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    // ###########################################################################
+    // File layout
+    // ###########################################################################
+
+    private static void create(Path file, int capacity) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(capacity).putInt(0)
+                .putLong(dataStart(capacity));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(header.flip());
+            channel.write(ByteBuffer.allocate(capacity * ENTRY_SIZE));
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a game archive: " + file);
+        short version = buffer.getShort(4);
+        if (version > VERSION)
+            throw new IOException("Unsupported archive version: " + version);
+        capacity = buffer.getInt(CAPACITY_OFFSET);
+        int count = buffer.getInt(COUNT_OFFSET);
+        entries.clear();
+        slots.clear();
+        for (int slot = 0; slot < count; slot++) {
+            Entry entry = readEntry(slot);
+            slots.put(entry.gameId(), slot);
+            entries.add(entry);
+        }
+    }
+
+    private Entry readEntry(int slot) {
+        int position = HEADER_SIZE + slot * ENTRY_SIZE;
+        byte[] id = new byte[MAX_ID_BYTES];
+        buffer.get(position, id);
+        int idLength = 0;
+        while (idLength < id.length && id[idLength] != 0)
+            idLength++;
+        byte winner = buffer.get(position + 40);
+        return new Entry(new String(id, 0, idLength, StandardCharsets.UTF_8),
+                buffer.getLong(position + 24),
+                buffer.getInt(position + 32),
+                buffer.getInt(position + 36),
+                winner < 0 ? null : Color.values()[winner],
+                buffer.getLong(position + 48),
+                buffer.getLong(position + 56));
+    }
+
+    private void writeEntry(int slot, Entry entry) {
+        int position = HEADER_SIZE + slot * ENTRY_SIZE;
+        buffer.put(position, Arrays.copyOf(entry.gameId().getBytes(StandardCharsets.UTF_8), MAX_ID_BYTES));
+        buffer.putLong(position + 24, entry.offset());
+        buffer.putInt(position + 32, entry.length());
+        buffer.putInt(position + 36, entry.plies());
+        buffer.put(position + 40, (byte) (entry.winner() != null ? entry.winner().ordinal() : -1));
+        buffer.putLong(position + 48, entry.startedMillis());
+        buffer.putLong(position + 56, entry.archivedMillis());
+    }
+
+    /* Grows the file, and the mapping, so that it's at least `size` bytes long. */
+    private void ensureMapped(long size) throws IOException {
+        if (size <= buffer.capacity())
+            return;
+        long newSize = Math.max(size, buffer.capacity() + buffer.capacity() / 2);
+        if (newSize > Integer.MAX_VALUE)
+            throw new IOException("Game archive is full: " + file);
+        channel.write(ByteBuffer.allocate(1), newSize - 1);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+    }
+
+    /*
+     * Rewrites the archive with twice the index capacity: the data moves by the
+     * size of the new index entries. The new file replaces the old one atomically.
+     */
+    private void grow() throws IOException {
+        int newCapacity = capacity * 2;
+        long shift = dataStart(newCapacity) - dataStart(capacity);
+        long dataEnd = buffer.getLong(DATA_END_OFFSET);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        create(temp, newCapacity);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            header.putInt(entries.size()).putLong(dataEnd + shift);
+            out.write(header.flip(), COUNT_OFFSET);
+            for (int slot = 0; slot < entries.size(); slot++) {
+                ByteBuffer entry = buffer.slice(HEADER_SIZE + slot * ENTRY_SIZE, ENTRY_SIZE).order(buffer.order());
+                ByteBuffer copy = ByteBuffer.allocate(ENTRY_SIZE).put(entry).flip();
+                copy.putLong(24, entries.get(slot).offset() + shift);
+                out.write(copy, HEADER_SIZE + (long) slot * ENTRY_SIZE);
+            }
+            long start = dataStart(capacity);
+            out.write(buffer.slice((int) start, (int) (dataEnd - start)), start + shift);
+            out.force(true);
+        }
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+    }
+
+    private static long dataStart(int capacity) {
+        return HEADER_SIZE + (long) capacity * ENTRY_SIZE;
+    }
+
+    private static Color winner(App app) {
+        if (!app.isGameOver())
+            return null;
+        Board board = app.getBoardSnapshot();
+        Color winner = null;
+        for (Color color : Color.values()) {
+            if (board.isInGame(color)) {
+                if (winner != null)
+                    return null;
+                winner = color;
+            }
+        }
+        return winner;
+    }
+}
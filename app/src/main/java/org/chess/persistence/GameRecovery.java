@@ -0,0 +1,145 @@
+package org.chess.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.chess.App;
+import org.chess.Move;
+import org.chess.board.BinaryGameSerializer;
+import org.chess.board.Board;
+import org.chess.board.History;
+import org.chess.board.Ply;
+import org.chess.pieces.Piece;
+
+/**
+ * Startup recovery of every stored game: saves (`.chess`) and move journals
+ * (`.journal`).
+ *
+ * Games are independent, and loading one is mostly CPU work (every move is
+ * replayed), so they are loaded in parallel, one per worker thread. Each loaded
+ * game is then verified by replaying its moves again on a bare `Board`, from the
+ * initial placement, checking that every move is legal and that the final
+ * position matches.
+ */
+public class GameRecovery {
+    public static final String SAVE_EXTENSION = ".chess";
+
+    public record Failure(Path file, String reason) {
+    }
+
+    /**
+     * @param games        the recovered games, in the order of the files.
+     * @param failures     files that couldn't be loaded or didn't verify.
+     * @param elapsedNanos wall clock time of the whole recovery.
+     */
+    public record Report(Map<Path, App> games, List<Failure> failures, long elapsedNanos) {
+        public int discovered() {
+            return games.size() + failures.size();
+        }
+    }
+
+    /**
+     * @return the save and journal files in the directories. Directories that
+     *         don't exist are skipped.
+     */
+    public static List<Path> discover(Path... directories) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path directory : directories) {
+            if (!Files.isDirectory(directory))
+                continue;
+            try (Stream<Path> stream = Files.list(directory)) {
+                stream.filter(GameRecovery::isGameFile).sorted().forEach(files::add);
+            }
+        }
+        return files;
+    }
+
+    public static Report recover(List<Path> files, int threads) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        Map<Path, App> games = new LinkedHashMap<>();
+        List<Failure> failures = new ArrayList<>();
+        try {
+            List<Future<App>> futures = new ArrayList<>();
+            for (Path file : files)
+                futures.add(executor.submit(() -> {
+                    App app = load(file);
+                    verify(app);
+                    return app;
+                }));
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    games.put(files.get(i), futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    failures.add(new Failure(files.get(i), cause.getClass().getSimpleName() + ": " + cause.getMessage()));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Report(Collections.unmodifiableMap(games), Collections.unmodifiableList(failures),
+                System.nanoTime() - start);
+    }
+
+    /** Loads a save or a journal, by its extension. */
+    public static App load(Path file) throws IOException {
+        if (file.getFileName().toString().endsWith(MoveJournal.EXTENSION))
+            return MoveJournal.recover(file);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return BinaryGameSerializer.read(in);
+        }
+    }
+
+    /**
+     * Replays the game's moves on a new board, from the initial placement.
+     *
+     * @throws IOException if a move is not legal when it's replayed, or if the
+     *                     replay doesn't reach the game's position.
+     */
+    public static void verify(App app) throws IOException {
+        Board board = app.getBoardSnapshot();
+        History history = board.history;
+        if (history.size() == 0)
+            return;
+        Board replay = board.getBoardAt(0);
+        // The replay promotes to new pieces; moves of the originals are mapped to them.
+        Map<Piece, Piece> promoted = new IdentityHashMap<>();
+        for (int i = 0; i < history.size(); i++) {
+            Move recorded = history.getMoves().get(i);
+            Move move = new Move(promoted.getOrDefault(recorded.piece(), recorded.piece()), recorded.type(),
+                    recorded.toPos(), recorded.enPassantVictim());
+            if (!replay.getReadonlyMoves(move.piece()).contains(move))
+                throw new IOException("Illegal move at ply " + i + ": " + move.type() + " to " + move.toPos());
+            replay.doMove(move);
+            Ply ply = history.getPly(i);
+            if (ply != null && ply.getPromotedPiece() != null)
+                promoted.put(ply.getPromotedPiece(), replay.history.getLastPly().getPromotedPiece());
+            if (ply != null)
+                for (Piece piece : ply.getEliminatedPieces().values())
+                    if (replay.getPos(piece) != null)
+                        replay.remove(piece.color);
+        }
+        if (replay.getPositionHash() != board.getPositionHash())
+            throw new IOException("Replay doesn't reach the saved position");
+    }
+
+    private static boolean isGameFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(SAVE_EXTENSION) || name.endsWith(MoveJournal.EXTENSION);
+    }
+}
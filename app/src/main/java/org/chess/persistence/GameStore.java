@@ -0,0 +1,612 @@
+package org.chess.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.chess.App;
+import org.chess.Color;
+import org.chess.board.BinaryGameSerializer;
+import org.chess.board.MoveCodec;
+
+/**
+ * Saved games stored by content, with names as references.
+ *
+ * A game's moves, in `MoveCodec` (one varint per ply), are cut into chunks of
+ * CHUNK_PLIES plies from the first ply. A chunk's id is a hash of its parent's
+ * id and its bytes, so it names every move up to the end of the chunk, and the
+ * id of a game's last chunk is the game's hash. Games that begin with the same
+ * moves share their first chunks: saving a game again, under any name, only
+ * appends the chunks after the longest prefix already stored, that is the new
+ * plies and the old save's last, partial chunk.
+ *
+ * A name refers to a game's last chunk, and holds what the moves don't say:
+ * the clocks, the turn and the eliminated colors. It also keeps the current
+ * position, so that a game can be shown before its moves are replayed (see
+ * `BinaryGameSerializer.readPosition`).
+ *
+ * Files, in the store's directory:
+ * <pre>
+ * chunks: append-only log, one record per chunk:
+ *   byte[16] parent id (zero for a first chunk), short plies, short length,
+ *   int CRC-32 of the moves, the moves
+ * refs: int MAGIC, short VERSION, then an append-only log of records:
+ *   int length, int CRC-32 of the body, body:
+ *   PUT: byte 1, UTF name, byte[16] last chunk id (zero for a game without
+ *     moves), int plies, int size, byte turn, byte eliminated (one bit per
+ *     Color ordinal), long[4] clocks, long saved (ms), UTF position in
+ *     PositionNotation (empty if unknown)
+ *   DELETE: byte 2, UTF name
+ * </pre>
+ *
+ * A save appends its new chunks and syncs them, then appends a PUT record to
+ * `refs` and syncs it, which is the commit point. So a save writes only its own
+ * record, however many names the store has. The last record of a name wins.
+ * The ids aren't stored: they are computed again when the store is opened, and
+ * both logs are cut at the first record left half written by a crash. Chunks
+ * that no name reaches any more (replaced partial chunks and deleted games) and
+ * replaced references stay in the logs until `compact`, which rewrites both.
+ *
+ * Stores of versions 1 and 2 kept `refs` as a single snapshot (int count, then
+ * the PUT fields of each name, without the position in version 1); they are
+ * rewritten as a log when opened.
+ */
+public class GameStore implements AutoCloseable {
+    public static final int MAGIC = 0x43345246; // "C4RF"
+    public static final short VERSION = 3;
+    public static final int CHUNK_PLIES = 32;
+    public static final int MAX_NAME_LENGTH = 255;
+
+    private static final String CHUNKS_FILE = "chunks";
+    private static final String REFS_FILE = "refs";
+    private static final int ID_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = ID_SIZE + 8;
+    private static final int REFS_HEADER_SIZE = 6;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    /**
+     * @param gameHash the hash of the game's moves, in hex; equal games under
+     *                 different names have the same hash.
+     * @param size     bytes of the game in `BinaryGameSerializer` format, as
+     *                 `openGame` returns it.
+     * @param position in `PositionNotation`, or null for games saved without it.
+     */
+    public record Ref(String name, String gameHash, int plies, int size, Color currentTurn, Set<Color> eliminated,
+            long[] clockTimes, long savedMillis, String position) {
+    }
+
+    /**
+     * @param chunkBytes size of the chunk log, including chunks no name reaches.
+     * @param refBytes   size of the reference log, including replaced references.
+     */
+    public record Stats(int names, int chunks, long chunkBytes, long refBytes) {
+    }
+
+    private record ChunkId(long high, long low) {
+        static final ChunkId NONE = new ChunkId(0, 0);
+
+        String hex() {
+            return HexFormat.of().toHexDigits(high) + HexFormat.of().toHexDigits(low);
+        }
+    }
+
+    /* `offset` is where the record starts in the log. */
+    private record Chunk(ChunkId id, ChunkId parent, long offset, int plies, int length) {
+    }
+
+    private final Path directory;
+    private final Path chunksFile;
+    private final Path refsFile;
+    private FileChannel channel;
+    private long logEnd;
+    private FileChannel refsChannel;
+    private long refsEnd;
+    /* In log order, so parents come before their children. */
+    private final Map<ChunkId, Chunk> chunks = new LinkedHashMap<>();
+    private final Map<String, Ref> refs = new TreeMap<>();
+    private final Map<String, ChunkId> heads = new TreeMap<>();
+
+    /** Opens the store, creating it if it doesn't exist. */
+    public GameStore(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.chunksFile = directory.resolve(CHUNKS_FILE);
+        this.refsFile = directory.resolve(REFS_FILE);
+        openChunks();
+        readRefs();
+    }
+
+    // ###########################################################################
+    // Public interface
+    // ###########################################################################
+
+    /**
+     * Saves the game as it is now under `name`, replacing what the name referred
+     * to. Must be called from the thread that plays the game.
+     *
+     * @throws IllegalArgumentException if the name is empty or too long.
+     */
+    public Ref save(String name, App app) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryGameSerializer.write(app, bytes);
+        return put(name, new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    /**
+     * Saves a game in `BinaryGameSerializer` format under `name`, replacing what
+     * the name referred to.
+     *
+     * @throws IllegalArgumentException if the name is empty or too long.
+     * @throws IOException              if the game isn't in the format.
+     */
+    public Ref put(String name, InputStream save) throws IOException {
+        return put(name, BinaryGameSerializer.readEncoded(save), System.currentTimeMillis());
+    }
+
+    /**
+     * The game, in `BinaryGameSerializer` format with uncompressed moves.
+     *
+     * @return null if there is no game with this name.
+     */
+    public synchronized InputStream openGame(String name) throws IOException {
+        Ref ref = refs.get(name);
+        if (ref == null)
+            return null;
+        ByteArrayOutputStream data = new ByteArrayOutputStream(ref.size());
+        BinaryGameSerializer.writeEncoded(new BinaryGameSerializer.Encoded(
+                new BinaryGameSerializer.Summary(ref.currentTurn(), ref.plies(), ref.eliminated()),
+                ref.clockTimes(), ref.position(), readMoves(heads.get(name))), data);
+        return new ByteArrayInputStream(data.toByteArray());
+    }
+
+    /** @return the game, or null if there is no game with this name. */
+    public App load(String name) throws IOException {
+        InputStream data = openGame(name);
+        return data != null ? BinaryGameSerializer.read(data) : null;
+    }
+
+    /** @return the reference, or null if there is no game with this name. */
+    public synchronized Ref getRef(String name) {
+        return refs.get(name);
+    }
+
+    /** @return the references, by name. */
+    public synchronized List<Ref> getRefs() {
+        return Collections.unmodifiableList(new ArrayList<>(refs.values()));
+    }
+
+    /**
+     * Forgets the name. Its chunks stay in the log until `compact`.
+     *
+     * @return false if there was no game with this name.
+     */
+    public synchronized boolean delete(String name) throws IOException {
+        if (!refs.containsKey(name))
+            return false;
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(body);
+        data.writeByte(DELETE);
+        data.writeUTF(name);
+        appendRef(body.toByteArray());
+        refs.remove(name);
+        heads.remove(name);
+        return true;
+    }
+
+    /**
+     * Moves the saves of a directory (files ending in
+     * `GameRecovery.SAVE_EXTENSION`) into the store, deleting each file once it
+     * is stored. A file is skipped if the store already has a newer game with the
+     * same name, and kept if it can't be read.
+     *
+     * @return how many saves were stored.
+     */
+    public int importSaves(Path saves) throws IOException {
+        if (!Files.isDirectory(saves))
+            return 0;
+        List<Path> files;
+        try (Stream<Path> list = Files.list(saves)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(GameRecovery.SAVE_EXTENSION))
+                    .sorted().toList();
+        }
+        int imported = 0;
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            String name = fileName.substring(0, fileName.length() - GameRecovery.SAVE_EXTENSION.length());
+            try {
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                Ref stored = getRef(name);
+                if (stored == null || stored.savedMillis() < modified) {
+                    try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                        put(name, BinaryGameSerializer.readEncoded(in), modified);
+                    }
+                    imported++;
+                }
+                Files.delete(file);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Could not import saved game " + file + ": " + e);
+            }
+        }
+        return imported;
+    }
+
+    /**
+     * Rewrites the chunk log with only the chunks some name reaches, and the
+     * reference log with only the current reference of each name. Each new log
+     * replaces the old one atomically.
+     *
+     * @return bytes freed.
+     */
+    public synchronized long compact() throws IOException {
+        long refsBefore = refsEnd;
+        rewriteRefs();
+        long freed = refsBefore - refsEnd;
+
+        Set<ChunkId> live = new HashSet<>();
+        for (ChunkId head : heads.values()) {
+            ChunkId id = head;
+            while (!id.equals(ChunkId.NONE) && live.add(id))
+                id = chunks.get(id).parent();
+        }
+        if (live.size() == chunks.size())
+            return freed;
+
+        long before = logEnd;
+        Path temp = directory.resolve(CHUNKS_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Chunk chunk : chunks.values()) {
+                if (!live.contains(chunk.id()))
+                    continue;
+                int size = RECORD_HEADER_SIZE + chunk.length();
+                channel.transferTo(chunk.offset(), size, out);
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(temp, chunksFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        openChunks();
+        return freed + before - logEnd;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(refs.size(), chunks.size(), logEnd, refsEnd);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+        refsChannel.close();
+    }
+
+    // ###########################################################################
+    // Chunks
+    // ###########################################################################
+
+    private synchronized Ref put(String name, BinaryGameSerializer.Encoded game, long savedMillis)
+            throws IOException {
+        if (name.isEmpty() || name.length() > MAX_NAME_LENGTH)
+            throw new IllegalArgumentException("Invalid game name: " + name);
+        byte[] moves = game.moves();
+        int plies = game.summary().plies();
+        int[] offsets = MoveCodec.moveOffsets(moves, plies);
+
+        // The longest prefix already stored is found by looking each chunk up
+        ChunkId head = ChunkId.NONE;
+        boolean appended = false;
+        for (int first = 0; first < plies; first += CHUNK_PLIES) {
+            int last = Math.min(first + CHUNK_PLIES, plies);
+            byte[] payload = Arrays.copyOfRange(moves, offsets[first], offsets[last]);
+            ChunkId id = chunkId(head, payload);
+            if (!chunks.containsKey(id)) {
+                append(new Chunk(id, head, logEnd, last - first, payload.length), payload);
+                appended = true;
+            }
+            head = id;
+        }
+        if (appended)
+            channel.force(false);
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        BinaryGameSerializer.writeEncoded(game, encoded);
+        Ref ref = new Ref(name, head.hex(), plies, encoded.size(), game.summary().currentTurn(),
+                game.summary().eliminated(), game.clockTimes().clone(), savedMillis, game.position());
+        appendRef(putRecord(ref, head));
+        refs.put(name, ref);
+        heads.put(name, head);
+        return ref;
+    }
+
+    private void append(Chunk chunk, byte[] payload) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putLong(chunk.parent().high()).putLong(chunk.parent().low())
+                .putShort((short) chunk.plies()).putShort((short) chunk.length()).putInt(crc(payload))
+                .put(payload).flip();
+        long position = logEnd;
+        while (record.hasRemaining())
+            position += channel.write(record, position);
+        logEnd = position;
+        chunks.put(chunk.id(), chunk);
+    }
+
+    /* The moves from the first chunk to `head`. */
+    private byte[] readMoves(ChunkId head) throws IOException {
+        List<Chunk> path = new ArrayList<>();
+        int length = 0;
+        ChunkId id = head;
+        while (!id.equals(ChunkId.NONE)) {
+            Chunk chunk = chunks.get(id);
+            path.add(chunk);
+            length += chunk.length();
+            id = chunk.parent();
+        }
+        ByteBuffer moves = ByteBuffer.allocate(length);
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Chunk chunk = path.get(i);
+            long position = chunk.offset() + RECORD_HEADER_SIZE;
+            int end = moves.position() + chunk.length();
+            moves.limit(end);
+            while (moves.hasRemaining()) {
+                int read = channel.read(moves, position);
+                if (read < 0)
+                    throw new EOFException("Chunk log ends inside a chunk: " + chunksFile);
+                position += read;
+            }
+        }
+        return moves.array();
+    }
+
+    /*
+     * Reads the chunk log and computes the ids. The log is cut at the first
+     * record that is incomplete, fails its CRC or has an unknown parent.
+     */
+    private void openChunks() throws IOException {
+        channel = FileChannel.open(chunksFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        chunks.clear();
+        long size = channel.size();
+        long position = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+        while (position < size) {
+            Chunk chunk;
+            try {
+                ChunkId parent = new ChunkId(in.readLong(), in.readLong());
+                int plies = in.readUnsignedShort();
+                byte[] payload = new byte[in.readUnsignedShort()];
+                int crc = in.readInt();
+                in.readFully(payload);
+                if (crc != crc(payload) || !parent.equals(ChunkId.NONE) && !chunks.containsKey(parent))
+                    break;
+                chunk = new Chunk(chunkId(parent, payload), parent, position, plies, payload.length);
+            } catch (EOFException e) {
+                break;
+            }
+            chunks.put(chunk.id(), chunk);
+            position += RECORD_HEADER_SIZE + chunk.length();
+        }
+        if (position < size) {
+            System.err.println("Chunk log cut at " + position + " of " + size + " bytes: " + chunksFile);
+            channel.truncate(position);
+        }
+        logEnd = position;
+    }
+
+    private static ChunkId chunkId(ChunkId parent, byte[] payload) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(ByteBuffer.allocate(ID_SIZE).putLong(parent.high()).putLong(parent.low()).array());
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest(payload));
+        return new ChunkId(hash.getLong(), hash.getLong());
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    // ###########################################################################
+    // References
+    // ###########################################################################
+
+    /*
+     * Reads the reference log, replaying its records in order, and cuts it at the
+     * first record that is incomplete or fails its CRC. Names whose chunks are
+     * missing (e.g. a chunk log cut after a crash) are dropped. A store of an
+     * older version is rewritten as a log.
+     */
+    private void readRefs() throws IOException {
+        refs.clear();
+        heads.clear();
+        short version = VERSION;
+        if (Files.exists(refsFile) && Files.size(refsFile) > 0) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(refsFile)))) {
+                if (in.readInt() != MAGIC)
+                    throw new IOException("Not a game store: " + refsFile);
+                version = in.readShort();
+                if (version > VERSION)
+                    throw new IOException("Unsupported game store version: " + version);
+                if (version < 3) {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++)
+                        readPut(in, version);
+                }
+            }
+        }
+        refsChannel = FileChannel.open(refsFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (version < 3 || refsChannel.size() == 0) {
+            rewriteRefs();
+            return;
+        }
+
+        long size = refsChannel.size();
+        long position = REFS_HEADER_SIZE;
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(refsChannel.position(position))));
+        while (position < size) {
+            byte[] body;
+            try {
+                int length = in.readInt();
+                int crc = in.readInt();
+                if (length < 1 || length > size - position)
+                    break;
+                body = new byte[length];
+                in.readFully(body);
+                if (crc != crc(body))
+                    break;
+            } catch (EOFException e) {
+                break;
+            }
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+            byte kind = record.readByte();
+            if (kind == PUT) {
+                readPut(record, version);
+            } else if (kind == DELETE) {
+                String name = record.readUTF();
+                refs.remove(name);
+                heads.remove(name);
+            } else {
+                throw new IOException("Invalid reference record " + kind + " in " + refsFile);
+            }
+            position += 8 + body.length;
+        }
+        if (position < size) {
+            System.err.println("References log cut at " + position + " of " + size + " bytes: " + refsFile);
+            refsChannel.truncate(position);
+        }
+        refsEnd = position;
+    }
+
+    /* The fields of a PUT record, after its kind; version 1 has no position. */
+    private void readPut(DataInputStream in, short version) throws IOException {
+        String name = in.readUTF();
+        ChunkId head = new ChunkId(in.readLong(), in.readLong());
+        int plies = in.readInt();
+        int size = in.readInt();
+        Color currentTurn = Color.values()[in.readUnsignedByte()];
+        int eliminatedMask = in.readUnsignedByte();
+        Set<Color> eliminated = EnumSet.noneOf(Color.class);
+        for (Color color : Color.values())
+            if ((eliminatedMask & 1 << color.ordinal()) != 0)
+                eliminated.add(color);
+        long[] clockTimes = new long[Color.values().length];
+        for (int j = 0; j < clockTimes.length; j++)
+            clockTimes[j] = in.readLong();
+        long savedMillis = in.readLong();
+        String position = version >= 2 ? in.readUTF() : "";
+        if (!head.equals(ChunkId.NONE) && !chunks.containsKey(head)) {
+            System.err.println("Game " + name + " lost: its moves are missing from the log");
+            refs.remove(name);
+            heads.remove(name);
+            return;
+        }
+        refs.put(name, new Ref(name, head.hex(), plies, size, currentTurn,
+                Collections.unmodifiableSet(eliminated), clockTimes, savedMillis,
+                position.isEmpty() ? null : position));
+        heads.put(name, head);
+    }
+
+    private static byte[] putRecord(Ref ref, ChunkId head) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(body);
+        data.writeByte(PUT);
+        data.writeUTF(ref.name());
+        data.writeLong(head.high());
+        data.writeLong(head.low());
+        data.writeInt(ref.plies());
+        data.writeInt(ref.size());
+        data.writeByte(ref.currentTurn().ordinal());
+        int eliminated = 0;
+        for (Color color : ref.eliminated())
+            eliminated |= 1 << color.ordinal();
+        data.writeByte(eliminated);
+        for (long clockTime : ref.clockTimes())
+            data.writeLong(clockTime);
+        data.writeLong(ref.savedMillis());
+        data.writeUTF(ref.position() != null ? ref.position() : "");
+        return body.toByteArray();
+    }
+
+    /*
+     * Appends a record to the reference log and syncs it. If that fails, the log
+     * is cut back, so a later record doesn't follow a broken one.
+     */
+    private void appendRef(byte[] body) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(8 + body.length);
+        record.putInt(body.length).putInt(crc(body)).put(body).flip();
+        long position = refsEnd;
+        try {
+            while (record.hasRemaining())
+                position += refsChannel.write(record, position);
+            refsChannel.force(false);
+        } catch (IOException e) {
+            try {
+                refsChannel.truncate(refsEnd);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        refsEnd = position;
+    }
+
+    /* A new log with the current reference of each name: temporary file, fsync, atomic rename. */
+    private void rewriteRefs() throws IOException {
+        Path temp = directory.resolve(REFS_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out)));
+            data.writeInt(MAGIC);
+            data.writeShort(VERSION);
+            for (Ref ref : refs.values()) {
+                byte[] body = putRecord(ref, heads.get(ref.name()));
+                data.writeInt(body.length);
+                data.writeInt(crc(body));
+                data.write(body);
+            }
+            data.flush();
+            out.force(true);
+        }
+        refsChannel.close();
+        try {
+            Files.move(temp, refsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // The new log, or the old one if it couldn't be replaced
+            refsChannel = FileChannel.open(refsFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            refsEnd = refsChannel.size();
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package org.chess.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import org.chess.App;
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.board.BinaryGameSerializer;
+import org.chess.board.History;
+import org.chess.board.Ply;
+
+/**
+ * Append-only log of the moves of each game, one file per game.
+ *
+ * Moves are appended by a listener on the game's `App`, which only encodes a
+ * few bytes and queues them, so the cost on the thread making the move is a few
+ * microseconds. A single writer thread drains the queue in batches: it writes
+ * every record of the batch and then syncs each touched file once, so under
+ * load many moves, from many games, share one fsync (group commit).
+ *
+ * File layout (big-endian):
+ * <pre>
+ * int MAGIC, short VERSION
+ * MOVE: byte 1, byte from square, byte to square, byte MoveType ordinal,
+ *       long mover's time left after the move (ns), or UNKNOWN_TIME
+ * UNDO: byte 2
+ * </pre>
+ *
+ * A crash may leave the last record incomplete. `recover` ignores it, and the
+ * next `attach` rewrites the file.
+ */
+public class MoveJournal implements AutoCloseable {
+    public static final int MAGIC = 0x43344A52; // "C4JR"
+    public static final short VERSION = 1;
+    public static final String EXTENSION = ".journal";
+
+    private static final byte MOVE = 1;
+    private static final byte UNDO = 2;
+    private static final int MOVE_RECORD_SIZE = 12;
+    // Time of a move replayed from a save, which only keeps the final clocks
+    private static final long UNKNOWN_TIME = -1;
+    private static final int MAX_BATCH = 4096;
+    private static final Pattern GAME_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    public record Stats(long records, long batches, long syncs, long errors) {
+    }
+
+    private enum Kind {
+        APPEND,
+        RESET,
+        CLOSE,
+        DISCARD,
+        FLUSH,
+        SHUTDOWN,
+    }
+
+    private record Entry(Kind kind, String gameId, byte[] bytes, CompletableFuture<Void> done) {
+    }
+
+    private final Path directory;
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Map<String, Journaled> games = new ConcurrentHashMap<>();
+    private final Thread writer;
+
+    /* Only used by the writer thread. */
+    private final Map<String, FileChannel> channels = new HashMap<>();
+    private final Set<String> broken = new HashSet<>();
+
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public MoveJournal(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.writer = new Thread(this::run, "move-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // ###########################################################################
+    // Public interface
+    // ###########################################################################
+
+    /**
+     * Starts journaling the game. The journal is rewritten with the game's current
+     * moves, so any old journal with the same id is replaced.
+     *
+     * @param gameId letters, digits, '_' and '-' only; it names the file.
+     * @throws IllegalArgumentException if the id is invalid or already attached.
+     */
+    public void attach(String gameId, App app) {
+        if (!GAME_ID.matcher(gameId).matches())
+            throw new IllegalArgumentException("Invalid game id: " + gameId);
+        Journaled journaled = new Journaled(gameId, app);
+        if (games.putIfAbsent(gameId, journaled) != null)
+            throw new IllegalArgumentException("Game already attached: " + gameId);
+        journaled.reset();
+        app.addMoveListener(journaled);
+    }
+
+    /** Stops journaling the game. Its journal is kept, e.g. for a later recovery. */
+    public void detach(String gameId) {
+        stop(gameId, Kind.CLOSE);
+    }
+
+    /** Stops journaling the game and deletes its journal, e.g. once it's saved. */
+    public void discard(String gameId) {
+        stop(gameId, Kind.DISCARD);
+    }
+
+    /**
+     * @return completes once everything queued before the call is on disk.
+     */
+    public CompletableFuture<Void> flush() {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        queue.add(new Entry(Kind.FLUSH, null, null, done));
+        return done;
+    }
+
+    public Path getFile(String gameId) {
+        return directory.resolve(gameId + EXTENSION);
+    }
+
+    public Stats getStats() {
+        return new Stats(records.get(), batches.get(), syncs.get(), errors.get());
+    }
+
+    /** Detaches every game, writes what is queued and stops the writer thread. */
+    @Override
+    public void close() {
+        for (String gameId : games.keySet())
+            detach(gameId);
+        queue.add(new Entry(Kind.SHUTDOWN, null, null, null));
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Rebuilds a game by replaying its journal. An incomplete record at the end
+     * (from a crash while writing) is ignored. Each replayed ply gets the
+     * journaled clocks of before it, so an undo after the recovery restores
+     * them; the journal has no record of the time spent on the undone move
+     * itself, which is given back to the mover.
+     *
+     * @throws IOException if the file can't be read or isn't a valid journal.
+     */
+    public static App recover(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < 6 || buffer.getInt() != MAGIC)
+            throw new IOException("Not a move journal: " + file);
+        short version = buffer.getShort();
+        if (version > VERSION)
+            throw new IOException("Unsupported journal version: " + version);
+
+        App app = new App();
+        long[] clockTimes = clockTimes(app);
+        // The journaled clocks of before each ply still in the game; the
+        // replay's own clocks are just the initial times
+        Deque<long[]> previousClockTimes = new ArrayDeque<>();
+        int index = 0;
+        while (buffer.hasRemaining()) {
+            byte kind = buffer.get();
+            if (kind == UNDO) {
+                if (app.undo() != null) {
+                    long[] previous = previousClockTimes.pop();
+                    // Like App.undo, unknown clocks stay as they are
+                    if (isKnown(previous))
+                        clockTimes = previous;
+                }
+            } else if (kind == MOVE) {
+                if (buffer.remaining() < MOVE_RECORD_SIZE - 1)
+                    break;
+                Color mover = app.getCurrentTurn();
+                BinaryGameSerializer.applyMove(app, BinaryGameSerializer.square(buffer.get() & 0xFF),
+                        BinaryGameSerializer.square(buffer.get() & 0xFF), moveType(buffer.get() & 0xFF), index);
+                long[] previous = clockTimes.clone();
+                app.getLastPly().setClockTimes(isKnown(previous) ? previous : null);
+                previousClockTimes.push(previous);
+                clockTimes[mover.ordinal()] = buffer.getLong();
+            } else {
+                throw new IOException("Invalid journal record " + kind + " in " + file);
+            }
+            index++;
+        }
+        // Each color's last move has its time, so this is only for damaged journals
+        for (int i = 0; i < clockTimes.length; i++)
+            if (clockTimes[i] == UNKNOWN_TIME)
+                clockTimes[i] = App.DEFAULT_TIME_NANOSECS;
+        BinaryGameSerializer.restoreClocks(app, clockTimes);
+        return app;
+    }
+
+    private static boolean isKnown(long[] clockTimes) {
+        for (long clockTime : clockTimes)
+            if (clockTime == UNKNOWN_TIME)
+                return false;
+        return true;
+    }
+
+    /* The clocks of a new game. */
+    private static long[] clockTimes(App app) {
+        long[] clockTimes = new long[Color.values().length];
+        for (Color color : Color.values())
+            clockTimes[color.ordinal()] = app.getPlayer(color).clock.getTimeLeftNanosecs();
+        return clockTimes;
+    }
+
+    /** @return the id of a journal file, i.e. its name without the extension. */
+    public static String gameId(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(EXTENSION) ? name.substring(0, name.length() - EXTENSION.length()) : name;
+    }
+
+    // ###########################################################################
+    // Game side
+    // ###########################################################################
+
+    /* Turns the game's position changes into journal records. */
+    private final class Journaled implements Consumer<Move> {
+        private final String gameId;
+        private final App app;
+        private int plies;
+
+        Journaled(String gameId, App app) {
+            this.gameId = gameId;
+            this.app = app;
+        }
+
+        @Override
+        public void accept(Move move) {
+            int count = app.getPlyCount();
+            Ply last = app.getLastPly();
+            if (move != null && count == plies + 1 && last != null && last.getMove() == move) {
+                plies = count;
+                byte[] record = moveRecord(last, app.getPlayer(move.piece().color).clock.getTimeLeftNanosecs());
+                queue.add(new Entry(Kind.APPEND, gameId, record, null));
+            } else if (move != null && count == plies - 1) {
+                plies = count;
+                queue.add(new Entry(Kind.APPEND, gameId, new byte[] { UNDO }, null));
+            } else {
+                // Reset, load or anything else: the whole game is written again.
+                reset();
+            }
+        }
+
+        void reset() {
+            History history = app.getBoardSnapshot().history;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            // A color's clock only runs on its turns, so after its last move it
+            // still has the time it had then
+            int[] lastMove = new int[Color.values().length];
+            for (int i = 0; i < history.size(); i++)
+                if (history.getPly(i) != null)
+                    lastMove[history.getPly(i).getMove().piece().color.ordinal()] = i;
+            for (int i = 0; i < history.size(); i++) {
+                Ply ply = history.getPly(i);
+                if (ply == null)
+                    throw new IllegalStateException("Move " + i + " has no record and can't be journaled.");
+                Color mover = ply.getMove().piece().color;
+                Ply next = i + 1 < history.size() ? history.getPly(i + 1) : null;
+                long timeLeft;
+                if (next != null && next.getClockTimes() != null)
+                    timeLeft = next.getClockTimes()[mover.ordinal()];
+                else if (lastMove[mover.ordinal()] == i)
+                    timeLeft = app.getPlayer(mover).clock.getTimeLeftNanosecs();
+                else
+                    timeLeft = UNKNOWN_TIME;
+                bytes.writeBytes(moveRecord(ply, timeLeft));
+            }
+            plies = history.size();
+            queue.add(new Entry(Kind.RESET, gameId, bytes.toByteArray(), null));
+        }
+    }
+
+    private void stop(String gameId, Kind kind) {
+        Journaled journaled = games.remove(gameId);
+        if (journaled != null)
+            journaled.app.removeMoveListener(journaled);
+        queue.add(new Entry(kind, gameId, null, null));
+    }
+
+    private static byte[] moveRecord(Ply ply, long timeLeft) {
+        ByteBuffer buffer = ByteBuffer.allocate(MOVE_RECORD_SIZE);
+        buffer.put(MOVE);
+        buffer.put((byte) BinaryGameSerializer.squareIndex(ply.getFromPos()));
+        buffer.put((byte) BinaryGameSerializer.squareIndex(ply.getMove().toPos()));
+        buffer.put((byte) ply.getMove().type().ordinal());
+        buffer.putLong(timeLeft);
+        return buffer.array();
+    }
+
+    private static Move.MoveType moveType(int ordinal) throws IOException {
+        if (ordinal >= Move.MoveType.values().length)
+            throw new IOException("Invalid move type: " + ordinal);
+        return Move.MoveType.values()[ordinal];
+    }
+
+    // ###########################################################################
+    // Writer thread
+    // ###########################################################################
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            running = process(batch);
+            batch.clear();
+        }
+        for (FileChannel channel : channels.values())
+            closeQuietly(channel);
+        channels.clear();
+    }
+
+    /* Writes the batch, syncs every file it touched once, then acknowledges. */
+    private boolean process(List<Entry> batch) {
+        Set<String> dirty = new LinkedHashSet<>();
+        boolean running = true;
+        for (Entry entry : batch) {
+            try {
+                switch (entry.kind()) {
+                    case APPEND -> {
+                        if (broken.contains(entry.gameId()))
+                            continue;
+                        write(channel(entry.gameId()), entry.bytes());
+                        dirty.add(entry.gameId());
+                        records.incrementAndGet();
+                    }
+                    case RESET -> {
+                        broken.remove(entry.gameId());
+                        FileChannel channel = channel(entry.gameId());
+                        channel.truncate(0);
+                        channel.position(0);
+                        write(channel, header());
+                        write(channel, entry.bytes());
+                        dirty.add(entry.gameId());
+                    }
+                    case CLOSE, DISCARD -> {
+                        FileChannel channel = channels.remove(entry.gameId());
+                        if (channel != null) {
+                            if (dirty.remove(entry.gameId()))
+                                sync(channel);
+                            channel.close();
+                        }
+                        broken.remove(entry.gameId());
+                        if (entry.kind() == Kind.DISCARD)
+                            Files.deleteIfExists(getFile(entry.gameId()));
+                    }
+                    case FLUSH -> {
+                    }
+                    case SHUTDOWN -> running = false;
+                }
+            } catch (IOException e) {
+                fail(entry.gameId(), e);
+                dirty.remove(entry.gameId());
+            }
+        }
+        for (String gameId : dirty) {
+            FileChannel channel = channels.get(gameId);
+            try {
+                sync(channel);
+            } catch (IOException e) {
+                fail(gameId, e);
+            }
+        }
+        batches.incrementAndGet();
+        for (Entry entry : batch)
+            if (entry.done() != null)
+                entry.done().complete(null);
+        return running;
+    }
+
+    private FileChannel channel(String gameId) throws IOException {
+        FileChannel channel = channels.get(gameId);
+        if (channel == null) {
+            channel = FileChannel.open(getFile(gameId), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            if (channel.size() == 0)
+                write(channel, header());
+            channels.put(gameId, channel);
+        }
+        return channel;
+    }
+
+    private void sync(FileChannel channel) throws IOException {
+        channel.force(false);
+        syncs.incrementAndGet();
+    }
+
+    private static void write(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private static byte[] header() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        return bytes.toByteArray();
+    }
+
+    /*
+     * The game's file is closed and its records are dropped, since the journal
+     * would have a gap, until it's rewritten by a reset (e.g. a new attach).
+     */
+    private void fail(String gameId, IOException e) {
+        errors.incrementAndGet();
+        System.err.println("Journal error for game " + gameId + ": " + e.getMessage());
+        if (gameId == null)
+            return;
+        broken.add(gameId);
+        FileChannel channel = channels.remove(gameId);
+        if (channel != null)
+            closeQuietly(channel);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing left to do with it.
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package org.chess.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.chess.App;
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.Pos;
+import org.chess.board.BinaryGameSerializer;
+import org.chess.board.Board;
+
+/**
+ * Opening explorer: for each position reached in the first plies of the
+ * archived games, the moves played from it, with how many games played each
+ * move and who won them.
+ *
+ * The index is an open-addressing hash table in a memory-mapped file, with one
+ * slot per (position, move) pair. The position key is the placement hash mixed
+ * with the side to move. Linear probing from the position's home slot keeps its
+ * moves close together, so a query reads a few consecutive slots and copies
+ * nothing but the answer.
+ *
+ * Layout:
+ * <pre>
+ * header (64 bytes): int MAGIC, short VERSION, short 0, int capacity, int slots used,
+ *   int games indexed, int plies indexed per game
+ * slots (capacity * 32 bytes): long position key (0 = empty),
+ *   int move (from square << 16 | to square << 8 | move type), int games,
+ *   int[4] wins by color
+ * </pre>
+ *
+ * `update` indexes the games appended to a `GameArchive` since the last update.
+ * A game's counts are written before the number of games indexed, so a crash in
+ * the middle of a game may count it twice but never loses it. When the table
+ * is 60% full it's rewritten with twice the capacity.
+ */
+public class OpeningExplorer implements AutoCloseable {
+    public static final int MAGIC = 0x43344F50; // "C4OP"
+    public static final short VERSION = 1;
+    public static final int DEFAULT_MAX_PLIES = 40;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    private static final int DEFAULT_CAPACITY = 1 << 14;
+
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int USED_OFFSET = 12;
+    private static final int GAMES_OFFSET = 16;
+    private static final int MAX_PLIES_OFFSET = 20;
+
+    private static final int MOVE = 8;
+    private static final int GAMES = 12;
+    private static final int WINS = 16;
+
+    private static final Move.MoveType[] MOVE_TYPES = Move.MoveType.values();
+    // Fixed seed: keys are stored in the file.
+    private static final long[] SIDE_KEYS = new SplittableRandom(0x4F50454E494E47L).longs(Color.values().length)
+            .toArray();
+
+    /**
+     * A move played from a position.
+     *
+     * @param wins games won by each color, by ordinal; the rest didn't end with
+     *             a single color left.
+     */
+    public record MoveStats(Pos from, Pos to, Move.MoveType type, int games, int[] wins) {
+        public int getWins(Color color) {
+            return wins[color.ordinal()];
+        }
+
+        /** Origin and destination, e.g. "h2-h4" (column a to n, rank 15 - row). */
+        public String notation() {
+            return square(from) + "-" + square(to);
+        }
+
+        private static String square(Pos pos) {
+            return (char) ('a' + pos.column() - 1) + String.valueOf(15 - pos.row());
+        }
+    }
+
+    private record Played(long key, int move) {
+    }
+
+    private final Path file;
+    private final Board initial = new App().getBoardSnapshot();
+    // Held for a whole update, so updates don't interleave
+    private final Object updating = new Object();
+
+    /* Guarded by `this`. */
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int maxPlies;
+
+    /** Opens the index, creating it if it doesn't exist. */
+    public OpeningExplorer(Path file) throws IOException {
+        this(file, DEFAULT_MAX_PLIES);
+    }
+
+    /**
+     * @param maxPlies plies of each game that are indexed; only used if the file
+     *                 is created.
+     */
+    public OpeningExplorer(Path file, int maxPlies) throws IOException {
+        if (maxPlies < 1)
+            throw new IllegalArgumentException("Invalid number of plies: " + maxPlies);
+        this.file = file;
+        if (!Files.exists(file) || Files.size(file) == 0)
+            create(file, DEFAULT_CAPACITY, maxPlies);
+        open();
+    }
+
+    // ###########################################################################
+    // Public interface
+    // ###########################################################################
+
+    /** @return the moves played from the position, the most played first. */
+    public synchronized List<MoveStats> query(long positionHash, Color toMove) {
+        long key = key(positionHash, toMove);
+        List<MoveStats> moves = new ArrayList<>();
+        for (int slot = home(key, capacity);; slot = next(slot, capacity)) {
+            long slotKey = buffer.getLong(offset(slot));
+            if (slotKey == 0)
+                break;
+            if (slotKey == key)
+                moves.add(readMove(slot));
+        }
+        moves.sort(Comparator.comparingInt(MoveStats::games).reversed());
+        return moves;
+    }
+
+    /** @return the moves played from the game's current position. */
+    public List<MoveStats> query(App app) {
+        return query(app.getPositionHash(), app.getCurrentTurn());
+    }
+
+    public synchronized int getGamesIndexed() {
+        return buffer.getInt(GAMES_OFFSET);
+    }
+
+    /**
+     * Indexes the archive's games that aren't indexed yet, in archive order.
+     * Each game is replayed without holding the lock queries take. Games that
+     * can't be replayed are skipped.
+     *
+     * @return the number of games taken from the archive.
+     */
+    public int update(GameArchive archive) throws IOException {
+        synchronized (updating) {
+            List<GameArchive.Entry> entries = archive.getEntries();
+            int indexed = getGamesIndexed();
+            for (int i = indexed; i < entries.size(); i++) {
+                GameArchive.Entry entry = entries.get(i);
+                List<Played> played = List.of();
+                try {
+                    played = replay(archive.openGame(entry.gameId()));
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Could not index game " + entry.gameId() + ": " + e);
+                }
+                synchronized (this) {
+                    for (Played move : played)
+                        add(move.key(), move.move(), entry.winner());
+                    // The number of games is the commit point.
+                    buffer.putInt(GAMES_OFFSET, i + 1);
+                }
+            }
+            synchronized (this) {
+                buffer.force();
+            }
+            return entries.size() - indexed;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    // ###########################################################################
+    // Indexing
+    // ###########################################################################
+
+    /* The position before each of the game's first plies, and the move played. */
+    private List<Played> replay(InputStream in) throws IOException {
+        List<Played> played = new ArrayList<>();
+        int plies = maxPlies;
+        BinaryGameSerializer.readMoves(in, new BoardReplay(initial) {
+            @Override
+            protected boolean beforeMove(Color mover, Pos from, Pos to, Move.MoveType type) {
+                if (played.size() == plies)
+                    return false;
+                played.add(new Played(key(board.getPositionHash(), mover), encodeMove(from, to, type)));
+                return true;
+            }
+        });
+        return played;
+    }
+
+    private void add(long key, int move, Color winner) throws IOException {
+        int slot = home(key, capacity);
+        while (true) {
+            long slotKey = buffer.getLong(offset(slot));
+            if (slotKey == 0)
+                break;
+            if (slotKey == key && buffer.getInt(offset(slot) + MOVE) == move) {
+                count(slot, winner);
+                return;
+            }
+            slot = next(slot, capacity);
+        }
+
+        int used = buffer.getInt(USED_OFFSET);
+        if ((used + 1) * 10L > capacity * 6L) {
+            grow();
+            add(key, move, winner);
+            return;
+        }
+        buffer.putLong(offset(slot), key);
+        buffer.putInt(offset(slot) + MOVE, move);
+        buffer.putInt(USED_OFFSET, used + 1);
+        count(slot, winner);
+    }
+
+    private void count(int slot, Color winner) {
+        int position = offset(slot);
+        buffer.putInt(position + GAMES, buffer.getInt(position + GAMES) + 1);
+        if (winner != null) {
+            int wins = position + WINS + winner.ordinal() * Integer.BYTES;
+            buffer.putInt(wins, buffer.getInt(wins) + 1);
+        }
+    }
+
+    private MoveStats readMove(int slot) {
+        int position = offset(slot);
+        int move = buffer.getInt(position + MOVE);
+        int[] wins = new int[Color.values().length];
+        for (int color = 0; color < wins.length; color++)
+            wins[color] = buffer.getInt(position + WINS + color * Integer.BYTES);
+        try {
+            return new MoveStats(BinaryGameSerializer.square(move >>> 16),
+                    BinaryGameSerializer.square(move >>> 8 & 0xFF), MOVE_TYPES[move & 0xFF],
+                    buffer.getInt(position + GAMES), wins);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt opening index: " + file, e);
+        }
+    }
+
+    // ###########################################################################
+    // File layout
+    // ###########################################################################
+
+    private static void create(Path file, int capacity, int maxPlies) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(capacity).putInt(0).putInt(0)
+                .putInt(maxPlies);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(header.flip());
+            // The slots are zeros: all empty
+            channel.write(ByteBuffer.allocate(1), HEADER_SIZE + (long) capacity * SLOT_SIZE - 1);
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not an opening index: " + file);
+        short version = buffer.getShort(4);
+        if (version > VERSION)
+            throw new IOException("Unsupported opening index version: " + version);
+        capacity = buffer.getInt(CAPACITY_OFFSET);
+        maxPlies = buffer.getInt(MAX_PLIES_OFFSET);
+        if (Integer.bitCount(capacity) != 1 || buffer.capacity() < HEADER_SIZE + (long) capacity * SLOT_SIZE)
+            throw new IOException("Corrupt opening index: " + file);
+    }
+
+    /*
+     * Rewrites the index with twice the capacity, reinserting every slot. The new
+     * file replaces the old one atomically.
+     */
+    private void grow() throws IOException {
+        int newCapacity = capacity * 2;
+        if (HEADER_SIZE + (long) newCapacity * SLOT_SIZE > Integer.MAX_VALUE)
+            throw new IOException("Opening index is full: " + file);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        create(temp, newCapacity, maxPlies);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer target = out.map(FileChannel.MapMode.READ_WRITE, 0, out.size());
+            byte[] slotBytes = new byte[SLOT_SIZE];
+            for (int slot = 0; slot < capacity; slot++) {
+                long key = buffer.getLong(offset(slot));
+                if (key == 0)
+                    continue;
+                int newSlot = home(key, newCapacity);
+                while (target.getLong(offset(newSlot)) != 0)
+                    newSlot = next(newSlot, newCapacity);
+                buffer.get(offset(slot), slotBytes);
+                target.put(offset(newSlot), slotBytes);
+            }
+            target.putInt(USED_OFFSET, buffer.getInt(USED_OFFSET));
+            target.putInt(GAMES_OFFSET, buffer.getInt(GAMES_OFFSET));
+            target.force();
+        }
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+    }
+
+    private static long key(long positionHash, Color toMove) {
+        long key = positionHash ^ SIDE_KEYS[toMove.ordinal()];
+        return key != 0 ? key : 1;
+    }
+
+    private static int encodeMove(Pos from, Pos to, Move.MoveType type) {
+        return BinaryGameSerializer.squareIndex(from) << 16 | BinaryGameSerializer.squareIndex(to) << 8
+                | type.ordinal();
+    }
+
+    private static int home(long key, int capacity) {
+        return (int) (key ^ key >>> 32) & (capacity - 1);
+    }
+
+    private static int next(int slot, int capacity) {
+        return (slot + 1) & (capacity - 1);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+}
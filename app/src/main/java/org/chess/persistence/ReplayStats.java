@@ -0,0 +1,241 @@
+package org.chess.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.chess.App;
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.Pos;
+import org.chess.board.BinaryGameSerializer;
+import org.chess.board.Board;
+import org.chess.board.Ply;
+import org.chess.pieces.Piece;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Batch statistics over the saved games of a `GameStore`: plies per game,
+ * elimination order, captures by piece type, castling frequency and the
+ * average number of legal moves (branching factor).
+ *
+ * Usage: ReplayStats [store directory] [threads] [output]
+ *
+ * Opening a store repairs a torn tail of its chunk log, so the store should
+ * not be in use by the server at the same time: stop it, or point this at a
+ * copy of the directory.
+ *
+ * Each worker thread owns a `Board` at the initial position. For each save it
+ * takes, it replays the moves on a copy of that board with `BoardReplay`,
+ * which is cheap since copies share the computed moves until they change, so
+ * no `App` is built per game and no board is shared between threads. Workers
+ * keep their own `Stats`, which are merged at the end.
+ */
+public class ReplayStats {
+    public record Config(Path store, int threads, Path output) {
+    }
+
+    /* Fields are written to the output file as they are. */
+    public static class Report {
+        int games;
+        int failedGames;
+        long plies;
+        double averagePlies;
+        int maxPlies;
+        double averageBranchingFactor;
+        Map<String, Long> capturesByPieceType = new TreeMap<>();
+        Map<String, Long> castlings = new LinkedHashMap<>();
+        double castlingsPerGame;
+        // For each color, how many times it was eliminated first, second and third
+        Map<String, long[]> eliminationOrder = new LinkedHashMap<>();
+        Map<String, Long> wins = new LinkedHashMap<>();
+        int threads;
+        double wallClockSeconds;
+        double gamesPerSecond;
+        double pliesPerSecond;
+    }
+
+    /** Totals of one worker; merged into one at the end. */
+    public static class Stats {
+        int games;
+        int failedGames;
+        long plies;
+        int maxPlies;
+        long legalMoves;
+        final Map<String, Long> capturesByPieceType = new HashMap<>();
+        final Map<Move.MoveType, Long> castlings = new EnumMap<>(Move.MoveType.class);
+        final long[][] eliminationOrder = new long[Color.values().length][Color.values().length - 1];
+        final long[] wins = new long[Color.values().length];
+
+        void merge(Stats other) {
+            games += other.games;
+            failedGames += other.failedGames;
+            plies += other.plies;
+            maxPlies = Math.max(maxPlies, other.maxPlies);
+            legalMoves += other.legalMoves;
+            other.capturesByPieceType.forEach((type, count) -> capturesByPieceType.merge(type, count, Long::sum));
+            other.castlings.forEach((type, count) -> castlings.merge(type, count, Long::sum));
+            for (int color = 0; color < wins.length; color++) {
+                wins[color] += other.wins[color];
+                for (int place = 0; place < eliminationOrder[color].length; place++)
+                    eliminationOrder[color][place] += other.eliminationOrder[color][place];
+            }
+        }
+    }
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        Config config = new Config(
+                Path.of(args.length > 0 ? args[0] : "game_store"),
+                args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors(),
+                Path.of(args.length > 2 ? args[2] : "replay_stats.json"));
+
+        System.out.println("Replaying the games of " + config.store() + " on " + config.threads() + " threads...");
+        Report report = run(config);
+        try (Writer writer = Files.newBufferedWriter(config.output())) {
+            gson.toJson(report, writer);
+        }
+        System.out.printf("%d games in %.1f s (%.1f games/s)%n", report.games, report.wallClockSeconds,
+                report.gamesPerSecond);
+        System.out.println("Results written to " + config.output().toAbsolutePath());
+    }
+
+    public static Report run(Config config) throws IOException, InterruptedException, ExecutionException {
+        try (GameStore store = new GameStore(config.store())) {
+            return run(store, config.threads());
+        }
+    }
+
+    public static Report run(GameStore store, int threads) throws InterruptedException, ExecutionException {
+        List<String> names = new ArrayList<>();
+        for (GameStore.Ref ref : store.getRefs())
+            names.add(ref.name());
+        names.sort(null);
+
+        // Boards are built here, one per worker
+        Board initial = new App().getBoardSnapshot();
+        List<Board> boards = new ArrayList<>();
+        for (int i = 0; i < threads; i++)
+            boards.add(initial.copy());
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        Stats total = new Stats();
+        AtomicInteger next = new AtomicInteger();
+        try {
+            List<Future<Stats>> futures = new ArrayList<>();
+            for (Board board : boards)
+                futures.add(executor.submit(() -> work(store, names, next, board)));
+            for (Future<Stats> future : futures)
+                total.merge(future.get());
+        } finally {
+            executor.shutdownNow();
+        }
+        return summarize(total, threads, System.nanoTime() - start);
+    }
+
+    /* Takes games until there are none left. */
+    private static Stats work(GameStore store, List<String> names, AtomicInteger next, Board initial) {
+        Stats stats = new Stats();
+        for (int i = next.getAndIncrement(); i < names.size(); i = next.getAndIncrement()) {
+            String name = names.get(i);
+            try {
+                // The store builds the whole save in memory
+                InputStream in = store.openGame(name);
+                if (in != null)
+                    replay(in, initial, stats);
+            } catch (IOException | RuntimeException e) {
+                stats.failedGames++;
+                System.err.println("Could not replay " + name + ": " + e);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Replays one game on a copy of `initial`, which must be at the initial
+     * position and isn't changed, and adds it to `stats`. `in` should be
+     * buffered.
+     */
+    public static void replay(InputStream in, Board initial, Stats stats) throws IOException {
+        Stats game = new Stats();
+        BoardReplay replay = new BoardReplay(initial) {
+            @Override
+            protected boolean beforeMove(Color mover, Pos from, Pos to, Move.MoveType type) {
+                game.legalMoves += board.countMoves(mover);
+                return true;
+            }
+
+            @Override
+            protected void afterMove(Color mover, Ply ply) {
+                Piece captured = ply.getCapturedPiece();
+                if (captured != null)
+                    game.capturesByPieceType.merge(pieceType(captured), 1L, Long::sum);
+                Move.MoveType type = ply.getMove().type();
+                if (type == Move.MoveType.KINGSIDE_CASTLING || type == Move.MoveType.QUEENSIDE_CASTLING)
+                    game.castlings.merge(type, 1L, Long::sum);
+                game.plies++;
+            }
+        };
+        BinaryGameSerializer.readMoves(in, replay);
+
+        List<Color> eliminated = replay.getEliminated();
+        for (int place = 0; place < Math.min(eliminated.size(), Color.values().length - 1); place++)
+            game.eliminationOrder[eliminated.get(place).ordinal()][place]++;
+        Color winner = replay.getWinner();
+        if (winner != null)
+            game.wins[winner.ordinal()]++;
+        game.games = 1;
+        game.maxPlies = (int) game.plies;
+        stats.merge(game);
+    }
+
+    private static String pieceType(Piece piece) {
+        return piece.getClass().getSimpleName().toUpperCase();
+    }
+
+    private static Report summarize(Stats stats, int threads, long wallClockNanos) {
+        Report report = new Report();
+        report.games = stats.games;
+        report.failedGames = stats.failedGames;
+        report.plies = stats.plies;
+        report.averagePlies = stats.games == 0 ? 0 : (double) stats.plies / stats.games;
+        report.maxPlies = stats.maxPlies;
+        report.averageBranchingFactor = stats.plies == 0 ? 0 : (double) stats.legalMoves / stats.plies;
+        report.capturesByPieceType.putAll(stats.capturesByPieceType);
+        long castlings = 0;
+        for (Move.MoveType type : new Move.MoveType[] { Move.MoveType.KINGSIDE_CASTLING,
+                Move.MoveType.QUEENSIDE_CASTLING }) {
+            long count = stats.castlings.getOrDefault(type, 0L);
+            report.castlings.put(type.name(), count);
+            castlings += count;
+        }
+        report.castlingsPerGame = stats.games == 0 ? 0 : (double) castlings / stats.games;
+        for (Color color : Color.values()) {
+            report.eliminationOrder.put(color.name(), stats.eliminationOrder[color.ordinal()]);
+            report.wins.put(color.name(), stats.wins[color.ordinal()]);
+        }
+        report.threads = threads;
+        report.wallClockSeconds = wallClockNanos / 1e9;
+        report.gamesPerSecond = stats.games / report.wallClockSeconds;
+        report.pliesPerSecond = stats.plies / report.wallClockSeconds;
+        return report;
+    }
+}
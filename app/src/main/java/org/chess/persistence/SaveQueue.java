@@ -0,0 +1,248 @@
+package org.chess.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import org.chess.App;
+import org.chess.board.BinaryGameSerializer;
+
+/**
+ * Saves games in the background, in `BinaryGameSerializer` format.
+ *
+ * `save` only encodes the game in memory (a few bytes per move, which is also
+ * what makes the save a consistent snapshot of a game that keeps changing),
+ * queues it and returns a `Ticket`. A single writer thread puts each queued
+ * save in a `GameStore`, which only appends the plies it doesn't have yet.
+ *
+ * Saves of the same game that are still queued are coalesced: only the last
+ * one is written, and every ticket of the game completes with that write.
+ */
+public class SaveQueue implements AutoCloseable {
+    private static final Pattern GAME_NAME = Pattern.compile("[\\p{L}\\p{N} _-]+");
+    private static final int MAX_TICKETS = 1024;
+
+    public enum Status {
+        QUEUED,
+        WRITING,
+        DONE,
+        FAILED,
+    }
+
+    /**
+     * @param requested saves asked for.
+     * @param written   saves written.
+     * @param coalesced saves replaced by a later save of the same game before
+     *                  being written.
+     */
+    public record Stats(long requested, long written, long coalesced, long errors) {
+    }
+
+    /** A requested save. It completes when the save, or a later one of the same game, is in the store. */
+    public static class Ticket {
+        private final long id;
+        private final String gameName;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private volatile Status status = Status.QUEUED;
+        private volatile String error;
+
+        private Ticket(long id, String gameName) {
+            this.id = id;
+            this.gameName = gameName;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getGameName() {
+            return gameName;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /** @return why the save failed, or null. */
+        public String getError() {
+            return error;
+        }
+
+        public CompletableFuture<Void> getCompletion() {
+            return done.copy();
+        }
+    }
+
+    /* The last encoded game waiting to be written, and every ticket it answers. */
+    private record Pending(byte[] bytes, List<Ticket> tickets) {
+    }
+
+    private final GameStore store;
+    private final Thread writer;
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    /* Guarded by `this`. */
+    private final LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+    private final Map<Long, Ticket> tickets = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Ticket> eldest) {
+            return size() > MAX_TICKETS;
+        }
+    };
+    private long nextTicket = 1;
+    private boolean closed;
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /** Saves the games in `store`. */
+    public SaveQueue(GameStore store) {
+        this.store = store;
+        this.writer = new Thread(this::run, "save-queue");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // ###########################################################################
+    // Public interface
+    // ###########################################################################
+
+    /**
+     * Queues a save of the game as it is now. Must be called from the thread that
+     * plays the game, since the game is read here.
+     *
+     * @param gameName letters, digits, spaces, '_' and '-' only, up to
+     *                 GameStore.MAX_NAME_LENGTH; it names the save.
+     * @throws IllegalArgumentException if the name is invalid.
+     * @throws IllegalStateException    if the queue is closed.
+     * @throws IOException              if the game can't be encoded.
+     */
+    public Ticket save(String gameName, App app) throws IOException {
+        if (!GAME_NAME.matcher(gameName).matches() || gameName.length() > GameStore.MAX_NAME_LENGTH)
+            throw new IllegalArgumentException("Invalid game name: " + gameName);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryGameSerializer.write(app, bytes);
+
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("Save queue is closed");
+            Ticket ticket = new Ticket(nextTicket++, gameName);
+            tickets.put(ticket.id, ticket);
+            List<Ticket> waiting = new ArrayList<>();
+            Pending previous = pending.remove(gameName);
+            if (previous != null) {
+                waiting.addAll(previous.tickets());
+                coalesced.incrementAndGet();
+            }
+            waiting.add(ticket);
+            pending.put(gameName, new Pending(bytes.toByteArray(), waiting));
+            requested.incrementAndGet();
+            notifyAll();
+            return ticket;
+        }
+    }
+
+    /** @return the ticket, or null if it's unknown or too old to be remembered. */
+    public synchronized Ticket getTicket(long id) {
+        return tickets.get(id);
+    }
+
+    /** @return completes once every save queued before the call is written. */
+    public synchronized CompletableFuture<Void> flush() {
+        List<CompletableFuture<Void>> waiting = new ArrayList<>();
+        for (Ticket ticket : tickets.values())
+            if (!ticket.done.isDone())
+                waiting.add(ticket.done);
+        return CompletableFuture.allOf(waiting.toArray(new CompletableFuture<?>[0]))
+                .exceptionally(e -> null);
+    }
+
+    /** The listener is called, on the writer thread, with the name of each game written. */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    public Stats getStats() {
+        return new Stats(requested.get(), written.get(), coalesced.get(), errors.get());
+    }
+
+    /** Writes what is queued and stops the writer thread. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ###########################################################################
+    // Writer thread
+    // ###########################################################################
+
+    private void run() {
+        while (true) {
+            String gameName;
+            Pending save;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty())
+                    return;
+                Map.Entry<String, Pending> first = pending.entrySet().iterator().next();
+                gameName = first.getKey();
+                save = first.getValue();
+                pending.remove(gameName);
+                for (Ticket ticket : save.tickets())
+                    ticket.status = Status.WRITING;
+            }
+
+            try {
+                store.put(gameName, new ByteArrayInputStream(save.bytes()));
+            } catch (IOException | RuntimeException e) {
+                // The thread goes on with the other saves; only this one failed
+                errors.incrementAndGet();
+                System.err.println("Could not save game " + gameName + ": " + e);
+                for (Ticket ticket : save.tickets()) {
+                    ticket.error = e.getMessage() != null ? e.getMessage() : e.toString();
+                    ticket.status = Status.FAILED;
+                    ticket.done.completeExceptionally(e);
+                }
+                continue;
+            }
+            written.incrementAndGet();
+            // The game is in the store even if a listener fails
+            for (Consumer<String> listener : listeners) {
+                try {
+                    listener.accept(gameName);
+                } catch (RuntimeException e) {
+                    System.err.println("Save listener failed for game " + gameName + ": " + e);
+                }
+            }
+            for (Ticket ticket : save.tickets()) {
+                ticket.status = Status.DONE;
+                ticket.done.complete(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.chess.persistence;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.chess.Color;
+
+/**
+ * In-memory catalog of the saved games of a `GameStore`, with what the saves
+ * list shows about each one.
+ *
+ * The store's references are read once. After that the catalog is only
+ * updated by `refresh`, which the code that saves or deletes a game calls:
+ * nothing else writes to the store, so there is nothing to watch.
+ *
+ * Queries are paginated. Each sort order is kept as a sorted array, rebuilt on
+ * the first query after a change, so a page costs O(page size) however many
+ * games there are.
+ */
+public class SavedGamesCatalog {
+    public enum Sort {
+        NAME(Comparator.comparing(Entry::name)),
+        MODIFIED(Comparator.comparingLong(Entry::modifiedMillis)),
+        PLIES(Comparator.comparingInt(Entry::plies)),
+        SIZE(Comparator.comparingLong(Entry::size));
+
+        private final Comparator<Entry> order;
+
+        Sort(Comparator<Entry> order) {
+            this.order = order.thenComparing(Entry::name);
+        }
+    }
+
+    public record Entry(String name, long size, long modifiedMillis, Color currentTurn, int plies,
+            Set<Color> eliminated) {
+    }
+
+    /**
+     * @param page  zero-based.
+     * @param total games in the catalog.
+     */
+    public record Page(List<Entry> entries, int page, int pageSize, int total) {
+        public int pages() {
+            return Math.max(1, (total + pageSize - 1) / pageSize);
+        }
+
+        public boolean hasPrevious() {
+            return page > 0;
+        }
+
+        public boolean hasNext() {
+            return page + 1 < pages();
+        }
+    }
+
+    private record Sorted(long version, Entry[] entries) {
+    }
+
+    private final GameStore store;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /* Guarded by `this`. */
+    private long version;
+    private final Map<Sort, Sorted> sorted = new EnumMap<>(Sort.class);
+
+    public SavedGamesCatalog(GameStore store) {
+        this.store = store;
+        for (GameStore.Ref ref : store.getRefs())
+            refresh(ref.name());
+    }
+
+    // ###########################################################################
+    // Public interface
+    // ###########################################################################
+
+    /**
+     * @param page     zero-based; pages past the end are empty.
+     * @param pageSize at least 1.
+     */
+    public Page query(Sort sort, boolean descending, int page, int pageSize) {
+        if (page < 0 || pageSize < 1)
+            throw new IllegalArgumentException("Invalid page: " + page + " of size " + pageSize);
+        Entry[] all = sorted(sort);
+        int from = (int) Math.min((long) page * pageSize, all.length);
+        int to = Math.min(from + pageSize, all.length);
+        Entry[] entries = new Entry[to - from];
+        for (int i = from; i < to; i++)
+            entries[i - from] = descending ? all[all.length - 1 - i] : all[i];
+        return new Page(List.of(entries), page, pageSize, all.length);
+    }
+
+    /** @return the game's entry, or null if there is no such save. */
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** Reads the game's reference in the store again, or forgets it if the save is gone. */
+    public void refresh(String name) {
+        GameStore.Ref ref = store.getRef(name);
+        if (ref != null)
+            put(new Entry(name, ref.size(), ref.savedMillis(), ref.currentTurn(), ref.plies(), ref.eliminated()));
+        else
+            remove(name);
+    }
+
+    // ###########################################################################
+    // Private operations
+    // ###########################################################################
+
+    private synchronized void put(Entry entry) {
+        if (!entry.equals(entries.put(entry.name(), entry)))
+            version++;
+    }
+
+    private synchronized void remove(String name) {
+        if (entries.remove(name) != null)
+            version++;
+    }
+
+    private synchronized Entry[] sorted(Sort sort) {
+        Sorted cached = sorted.get(sort);
+        if (cached == null || cached.version() != version) {
+            Entry[] all = entries.values().toArray(new Entry[0]);
+            Arrays.sort(all, sort.order);
+            cached = new Sorted(version, all);
+            sorted.put(sort, cached);
+        }
+        return cached.entries();
+    }
+}
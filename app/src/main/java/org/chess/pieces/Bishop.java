@@ -10,6 +10,9 @@ import org.chess.Pos;
 import org.chess.exception.PieceNotInBoard;
 
 public class Bishop extends NonKing {
+    private static final Direction[] DIRECTIONS = { Direction.SOUTHEAST, Direction.SOUTHWEST, Direction.NORTHEAST,
+            Direction.NORTHWEST };
+
     public Bishop(Color color) {
         super(color);
     }
@@ -31,12 +34,23 @@ public class Bishop extends NonKing {
 
         // Checks directions in wich a Bishop can move, filling up the arguments for
         // MovesCalcResult
-        Direction[] possibleDirections = { Direction.SOUTHEAST, Direction.SOUTHWEST, Direction.NORTHEAST,
-                Direction.NORTHWEST };
-        for (Direction direction : possibleDirections)
+        for (Direction direction : DIRECTIONS)
             direction.checkDirection(validMoves, getPiece, this, row, column);
 
         return validMoves;
 
     }
+
+    @Override
+    public Collection<Move> calculateCaptures(Function<Pos, Piece> getPiece, Function<Piece, Pos> getPos)
+            throws PieceNotInBoard {
+        Pos thisPos = getPos.apply(this);
+        if (thisPos == null)
+            throw new PieceNotInBoard();
+
+        ArrayList<Move> captures = new ArrayList<Move>();
+        for (Direction direction : DIRECTIONS)
+            direction.checkCapture(captures, getPiece, this, thisPos.row(), thisPos.column());
+        return captures;
+    }
 }
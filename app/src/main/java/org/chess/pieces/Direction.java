@@ -52,4 +52,24 @@ public enum Direction {
             }
         }
     }
+
+    /**
+     * Same as `checkDirection`, but only adds the capture of the first piece
+     * found, if it is from another color. Empty squares are skipped.
+     */
+    public void checkCapture(List<Move> captures, Function<Pos, Piece> getPiece, Piece piece, int row, int column) {
+        int r = row + rowDirection;
+        int c = column + columnDirection;
+        while (Pos.isValid(r, c)) {
+            Pos pos = new Pos(r, c);
+            Piece pieceInPos = getPiece.apply(pos);
+            if (pieceInPos != null) {
+                if (pieceInPos.color != piece.color)
+                    captures.add(new Move(piece, MoveType.SIMPLE_MOVE, pos));
+                return;
+            }
+            r += rowDirection;
+            c += columnDirection;
+        }
+    }
 }
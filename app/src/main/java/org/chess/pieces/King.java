@@ -28,6 +28,16 @@ public class King extends Piece {
         this.queenSideRook = queensideRook;
     }
 
+    /** The rook this king castles kingside with. */
+    public Rook getKingSideRook() {
+        return kingSideRook;
+    }
+
+    /** The rook this king castles queenside with. */
+    public Rook getQueenSideRook() {
+        return queenSideRook;
+    }
+
     public static Collection<Move> calculateMoves(Collection<King> kings, Function<Pos, Piece> getPiece,
             Function<Piece, Pos> getPos,
             Function<Color, Predicate<Pos>> getDangerMap, Predicate<Piece> movedBefore) throws PieceNotInBoard {
@@ -116,13 +126,14 @@ public class King extends Piece {
         if (dangerMap.test(thisPos))
             return moves;
 
-        if (!movedBefore.test(kingSideRook)) {
+        // A rook that was captured before moving can't castle either.
+        if (!movedBefore.test(kingSideRook) && getPos.apply(kingSideRook) != null) {
             var move = kingsideCaslte(row, column, dangerMap, getPiece);
             if (move != null)
                 moves.add(move);
         }
 
-        if (!movedBefore.test(queenSideRook)) {
+        if (!movedBefore.test(queenSideRook) && getPos.apply(queenSideRook) != null) {
             var move = queensideCaslte(row, column, dangerMap, getPiece);
             if (move != null)
                 moves.add(move);
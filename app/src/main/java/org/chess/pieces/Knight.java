@@ -53,4 +53,16 @@ public class Knight extends NonKing {
 		}
 		return validMoves;
 	}
+
+	@Override
+	public Collection<Move> calculateCaptures(Function<Pos, Piece> getPiece, Function<Piece, Pos> getPos)
+			throws PieceNotInBoard {
+		ArrayList<Move> captures = new ArrayList<Move>();
+		for (Move move : calculateMoves(getPiece, getPos)) {
+			Piece pieceInPos = getPiece.apply(move.toPos());
+			if (pieceInPos != null)
+				captures.add(move);
+		}
+		return captures;
+	}
 }
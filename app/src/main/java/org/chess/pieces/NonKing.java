@@ -16,4 +16,11 @@ public abstract class NonKing extends Piece {
 
     public abstract Collection<Move> calculateMoves(Function<Pos, Piece> getPiece, Function<Piece, Pos> getPos)
             throws PieceNotInBoard;
+
+    /**
+     * Only the moves of `calculateMoves` that take a piece, found without going
+     * through the empty squares around the piece.
+     */
+    public abstract Collection<Move> calculateCaptures(Function<Pos, Piece> getPiece, Function<Piece, Pos> getPos)
+            throws PieceNotInBoard;
 }
@@ -36,6 +36,24 @@ public class Pawn extends Piece {
         return validMoves;
     }
 
+    /**
+     * Only the moves of `calculateMoves` that take a piece or promote: en
+     * passant, captures, and a forward move to the last row.
+     */
+    public Collection<Move> calculateCaptures(Function<Pos, Piece> getPiece, Function<Piece, Pos> getPos,
+            Function<Color, Move> getLastMove) throws PieceNotInBoard {
+        Pos thisPos = getPos.apply(this);
+        if (thisPos == null)
+            throw new PieceNotInBoard();
+
+        ArrayList<Move> captures = new ArrayList<Move>();
+        enPassantMove(getPiece, getLastMove, captures, thisPos);
+        if (thisPos.row() == 2)
+            addForwardMove(getPiece, captures, thisPos);
+        addCaptureMove(getPiece, captures, thisPos);
+        return captures;
+    }
+
     // ###########################################################################
     // En Passant logic
     // ###########################################################################
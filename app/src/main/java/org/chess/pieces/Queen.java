@@ -36,4 +36,17 @@ public class Queen extends NonKing {
 
         return validMoves;
     }
+
+    @Override
+    public Collection<Move> calculateCaptures(Function<Pos, Piece> getPiece, Function<Piece, Pos> getPos)
+            throws PieceNotInBoard {
+        Pos thisPos = getPos.apply(this);
+        if (thisPos == null)
+            throw new PieceNotInBoard();
+
+        ArrayList<Move> captures = new ArrayList<Move>();
+        for (Direction direction : Direction.values())
+            direction.checkCapture(captures, getPiece, this, thisPos.row(), thisPos.column());
+        return captures;
+    }
 }
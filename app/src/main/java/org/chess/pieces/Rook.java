@@ -10,6 +10,8 @@ import org.chess.Pos;
 import org.chess.exception.PieceNotInBoard;
 
 public class Rook extends NonKing implements java.io.Serializable{
+    private static final Direction[] DIRECTIONS = { Direction.NORTH, Direction.EAST, Direction.SOUTH,
+            Direction.WEST };
 
     public Rook(Color color) {
         super(color);
@@ -32,10 +34,22 @@ public class Rook extends NonKing implements java.io.Serializable{
 
         // Checks directions in wich a Rook can move, filling up the arguments for
         // MovesCalcResult
-        Direction[] possiblDirections = { Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST };
-        for (Direction direction : possiblDirections)
+        for (Direction direction : DIRECTIONS)
             direction.checkDirection(validMoves, getPiece, this, row, column);
 
         return validMoves;
     }
+
+    @Override
+    public Collection<Move> calculateCaptures(Function<Pos, Piece> getPiece, Function<Piece, Pos> getPos)
+            throws PieceNotInBoard {
+        Pos thisPos = getPos.apply(this);
+        if (thisPos == null)
+            throw new PieceNotInBoard();
+
+        ArrayList<Move> captures = new ArrayList<Move>();
+        for (Direction direction : DIRECTIONS)
+            direction.checkCapture(captures, getPiece, this, thisPos.row(), thisPos.column());
+        return captures;
+    }
 }
@@ -1,5 +1,7 @@
 package org.chess.web;
 
+import static spark.Spark.halt;
+
 import org.chess.App;
 import org.chess.Color; // Importante: Importar Color
 import org.chess.Move;
@@ -12,73 +14,152 @@ import org.chess.pieces.Pawn;
 import org.chess.pieces.Piece;
 import org.chess.pieces.Queen;
 import org.chess.pieces.Rook;
+import org.chess.persistence.GameStore;
+import org.chess.persistence.OpeningExplorer;
+import org.chess.persistence.SaveQueue;
+import org.chess.persistence.SavedGamesCatalog;
 
 import spark.ModelAndView;
 import spark.Request;
-
+import spark.Session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletionException;
 
 public class ChessController {
-    private final App app;
-
-    // ESTADO DA SESSÃO
-    private Pos selectedPos = null;
-    private List<Move> currentContextMoves = new ArrayList<>();
-    
-    // ESTADO VISUAL
-    private Color lastTurn = Color.GREEN;
-    private int boardRotation = 0; // Acumula o ângulo (ex: 0, -90, -180, -270, -360...)
-    private boolean doTransition = false;
-
-    public ChessController(App app) {
-        this.app = app;
+    private final GameRegistry games;
+    private final SaveQueue saves;
+    private final SavedGamesCatalog catalog;
+    private final GameStore store;
+    private final OpeningExplorer openings;
+    private static final int SAVED_GAMES_PAGE_SIZE = 20;
+
+    /*
+     * O que cada jogador vê de um jogo: fica na sessão dele, então quem abre o
+     * mesmo jogo em outro navegador tem a sua própria seleção e rotação. É
+     * usado sincronizado nele mesmo, já que a mesma sessão pode mandar duas
+     * requisições juntas.
+     */
+    private static class ViewState {
+        // ESTADO DA SESSÃO
+        Pos selectedPos = null;
+        List<Move> currentContextMoves = new ArrayList<>();
+
+        // ESTADO VISUAL
+        Color lastTurn = Color.GREEN;
+        int boardRotation = 0; // Acumula o ângulo (ex: 0, -90, -180, -270, -360...)
+        boolean doTransition = false;
+
+        void clearSelection() {
+            selectedPos = null;
+            currentContextMoves.clear();
+        }
+
+        void resetRotation() {
+            lastTurn = Color.GREEN;
+            doTransition = false;
+            boardRotation = 0;
+        }
+    }
+
+    public ChessController(GameRegistry games, SaveQueue saves, SavedGamesCatalog catalog, GameStore store,
+            OpeningExplorer openings) {
+        this.games = games;
+        this.saves = saves;
+        this.catalog = catalog;
+        this.store = store;
+        this.openings = openings;
+    }
+
+    /**
+     * O jogo do parâmetro ":id" da rota; responde 404 se ele não existe.
+     */
+    public GameRegistry.Game game(Request req) {
+        GameRegistry.Game game = games.get(req.params(":id"));
+        if (game == null)
+            halt(404, "Jogo não encontrado");
+        return game;
+    }
+
+    /* O estado de tela do jogo na sessão da requisição, criado no primeiro acesso. */
+    private ViewState view(Request req, GameRegistry.Game game) {
+        Session session = req.session(true);
+        String key = "view-" + game.getId();
+        ViewState view = session.attribute(key);
+        if (view == null) {
+            view = new ViewState();
+            session.attribute(key, view);
+        }
+        return view;
     }
 
     public ModelAndView resetGame(Request req) {
-        app.resetGame();
-        clearSelection();
-        // Reseta o estado visual
-        lastTurn = Color.GREEN;
-        doTransition = false;
-        boardRotation = 0;
-        return renderBoard(req);
+        GameRegistry.Game game = game(req);
+        game.submit(app -> {
+            app.resetGame();
+            return null;
+        }).join();
+        ViewState view = view(req, game);
+        synchronized (view) {
+            view.clearSelection();
+            // Reseta o estado visual
+            view.resetRotation();
+            return renderBoard(game, view);
+        }
     }
 
     public ModelAndView renderBoard(Request req) {
+        GameRegistry.Game game = game(req);
+        ViewState view = view(req, game);
+        synchronized (view) {
+            return renderBoard(game, view);
+        }
+    }
+
+    /* Desenha o último estado publicado do jogo, sem esperar pela fila dele. */
+    private ModelAndView renderBoard(GameRegistry.Game game, ViewState view) {
+        GameState state = game.getState();
         Map<String, Object> model = new HashMap<>();
         
         // --- LÓGICA DE ROTAÇÃO INFINITA ---
-        Color currentTurn = app.getCurrentTurn();
-        if (currentTurn != lastTurn) {
+        Color currentTurn = state.getCurrentTurn();
+        if (currentTurn != view.lastTurn) {
             // Se o turno avançou para o "próximo" (Esquerda/LeftColor), giramos -90
-            if (currentTurn == lastTurn.getLeftColor()) {
-                boardRotation -= 90;
+            if (currentTurn == view.lastTurn.getLeftColor()) {
+                view.boardRotation -= 90;
             } 
             // Se o jogo foi revertido ou algo do tipo
-            else if (currentTurn == lastTurn.getRightColor()) {
-                boardRotation += 90;
+            else if (currentTurn == view.lastTurn.getRightColor()) {
+                view.boardRotation += 90;
             }
             // Fallback para reset (ex: jogo reiniciou de forma inesperada sem passar pelo método resetGame)
             else {
                  switch(currentTurn) {
-                     case GREEN -> boardRotation = 0;
-                     case YELLOW -> boardRotation = -90;
-                     case RED -> boardRotation = -180;
-                     case BLUE -> boardRotation = -270;
+                     case GREEN -> view.boardRotation = 0;
+                     case YELLOW -> view.boardRotation = -90;
+                     case RED -> view.boardRotation = -180;
+                     case BLUE -> view.boardRotation = -270;
                  }
             }
-            lastTurn = currentTurn;
+            view.lastTurn = currentTurn;
         }
         
         // Passa o ângulo calculado para o template
-        model.put("boardRotation", boardRotation);
-        model.put("doTransition", doTransition);
-        doTransition = false;
+        model.put("boardRotation", view.boardRotation);
+        model.put("doTransition", view.doTransition);
+        view.doTransition = false;
+        putGame(game, model);
         List<List<SquareView>> grid = new ArrayList<>();
 
         Map<Pos, Integer> moveMap = new HashMap<>();
-        for (int i = 0; i < currentContextMoves.size(); i++) {
-            Move m = currentContextMoves.get(i);
+        for (int i = 0; i < view.currentContextMoves.size(); i++) {
+            Move m = view.currentContextMoves.get(i);
             if (!moveMap.containsKey(m.toPos())) {
                 moveMap.put(m.toPos(), i);
             }
@@ -89,9 +170,9 @@ public class ChessController {
             for (int c = 1; c <= 14; c++) {
                 try {
                     Pos currentPos = new Pos(r, c);
-                    Piece piece = app.getPiece(currentPos);
+                    Piece piece = state.getPiece(currentPos);
                     
-                    boolean isSelected = selectedPos != null && selectedPos.equals(currentPos);
+                    boolean isSelected = view.selectedPos != null && view.selectedPos.equals(currentPos);
                     boolean isTarget = moveMap.containsKey(currentPos);
                     Integer moveIndex = moveMap.get(currentPos);
 
@@ -100,10 +181,10 @@ public class ChessController {
 
                     if (isTarget) {
                         hxVerb = "post";
-                        hxUrl = "/move?moveIndex=" + moveIndex;
+                        hxUrl = game.getPath() + "/move?moveIndex=" + moveIndex;
                     } else {
                         hxVerb = "get";
-                        hxUrl = "/select?row=" + r + "&col=" + c;
+                        hxUrl = game.getPath() + "/select?row=" + r + "&col=" + c;
                     }
 
                     rowList.add(new SquareView(r, c, false, piece, hxUrl, hxVerb, isSelected, isTarget));
@@ -117,49 +198,142 @@ public class ChessController {
         }
 
         model.put("grid", grid);
-        model.put("currentTurn", app.getCurrentTurn());
-        model.put("gameOver", app.isGameOver());
+        model.put("currentTurn", state.getCurrentTurn());
+        model.put("gameOver", state.isGameOver());
+        // Jogo carregado cujo histórico ainda está sendo refeito
+        model.put("historyLoading", !state.isHistoryLoaded());
 
         return new ModelAndView(model, "board");
     }
 
     public ModelAndView handleSelection(Request req, int row, int col) {
-        try {
-            Pos currentPos = new Pos(row, col);
-            Piece piece = app.getPiece(currentPos);
+        GameRegistry.Game game = game(req);
+        // Só lê: os lances vêm do estado publicado, sem passar pela fila do jogo
+        GameState state = game.getState();
+        ViewState view = view(req, game);
+        synchronized (view) {
+            try {
+                Pos currentPos = new Pos(row, col);
+                Piece piece = state.getPiece(currentPos);
+
+                if (piece != null && piece.color == state.getCurrentTurn()) {
+                    view.selectedPos = currentPos;
+                    view.currentContextMoves = new ArrayList<>(state.getPossibleMoves(currentPos));
+                } else {
+                    view.clearSelection();
+                }
 
-            if (piece != null && piece.color == app.getCurrentTurn()) {
-                this.selectedPos = currentPos; // CORREÇÃO: Faltava atualizar a selectedPos
-                this.currentContextMoves = new ArrayList<>(app.getPossibleMoves(currentPos));
-            } else {
-                clearSelection();
+            } catch (InvalidPosition e) {
+                view.clearSelection();
             }
-
-        } catch (InvalidPosition e) {
-            clearSelection();
+            view.doTransition = false;
+            return renderBoard(game, view);
         }
-        doTransition = false;
-        return renderBoard(req);
     }
 
     public ModelAndView handleMove(Request req, int moveIndex) {
-        try {
-            if (moveIndex >= 0 && moveIndex < currentContextMoves.size()) {
-                Move move = currentContextMoves.get(moveIndex);
-                app.doMove(move);
+        GameRegistry.Game game = game(req);
+        ViewState view = view(req, game);
+        Pos from = null;
+        Move selected = null;
+        synchronized (view) {
+            if (moveIndex >= 0 && moveIndex < view.currentContextMoves.size()) {
+                from = view.selectedPos;
+                selected = view.currentContextMoves.get(moveIndex);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            clearSelection();
+            view.clearSelection();
         }
-        doTransition = true;
-        return renderBoard(req);
+        if (selected != null) {
+            Pos selectedFrom = from;
+            Move selectedMove = selected;
+            try {
+                // Espera o lance ser jogado, para desenhar o tabuleiro já com ele
+                game.submit(app -> {
+                    Move move = currentMove(app, selectedFrom, selectedMove);
+                    if (move != null)
+                        app.doMove(move);
+                    return null;
+                }).join();
+            } catch (CompletionException e) {
+                e.getCause().printStackTrace();
+            }
+        }
+        synchronized (view) {
+            view.doTransition = true;
+            return renderBoard(game, view);
+        }
+    }
+
+    /*
+     * O lance selecionado como está no tabuleiro de agora, ou null se ele deixou
+     * de valer: outra sessão pode ter jogado no mesmo jogo depois da seleção.
+     * Roda na fila do jogo.
+     */
+    private static Move currentMove(App app, Pos from, Move selected) {
+        Piece piece = app.getPiece(from);
+        if (piece == null || piece.color != app.getCurrentTurn())
+            return null;
+        for (Move move : app.getPossibleMoves(from))
+            if (move.toPos().equals(selected.toPos()) && move.type() == selected.type())
+                return move;
+        return null;
+    }
+
+    /* Uma tarefa na fila do jogo que pode dar IOException. */
+    private interface GameTask<T> {
+        T apply(App app) throws IOException;
+    }
+
+    /*
+     * Roda `task` na fila do jogo e espera o resultado, devolvendo as exceções
+     * dela como se tivesse rodado aqui.
+     */
+    private static <T> T await(GameRegistry.Game game, GameTask<T> task) throws IOException {
+        try {
+            return game.submit(app -> {
+                try {
+                    return task.apply(app);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io)
+                throw io.getCause();
+            if (e.getCause() instanceof RuntimeException runtime)
+                throw runtime;
+            throw e;
+        }
+    }
+
+    /* O que todas as páginas de um jogo usam para montar as suas rotas. */
+    private static void putGame(GameRegistry.Game game, Map<String, Object> model) {
+        model.put("gameId", game.getId());
+        model.put("gamePath", game.getPath());
     }
 
-    private void clearSelection() {
-        this.selectedPos = null;
-        this.currentContextMoves.clear();
+    public static class SavedGameView {
+        private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm")
+                .withZone(ZoneId.systemDefault());
+
+        public String name;
+        public String details;
+
+        public SavedGameView(SavedGamesCatalog.Entry entry) {
+            this.name = entry.name();
+            this.details = entry.plies() + " lances · vez de " + entry.currentTurn() + " · "
+                    + DATE_FORMAT.format(Instant.ofEpochMilli(entry.modifiedMillis())) + " · " + entry.size() + " bytes";
+            if (!entry.eliminated().isEmpty())
+                this.details += " · eliminados: " + entry.eliminated();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDetails() {
+            return details;
+        }
     }
 
     public static class SquareView {
@@ -221,110 +395,257 @@ public class ChessController {
 
     // ===== MÉTODOS DE PERSISTÊNCIA =====
 
+    /**
+     * Agenda o salvamento do jogo e responde na hora; o arquivo é gravado em
+     * segundo plano (ver SaveQueue). O andamento é consultado em /save-status.
+     */
     public ModelAndView saveGame(Request req) {
+        GameRegistry.Game game = game(req);
         String gameName = req.queryParams("name");
         if (gameName == null || gameName.trim().isEmpty()) {
             Map<String, Object> model = new HashMap<>();
+            putGame(game, model);
             model.put("error", "Nome do jogo é obrigatório para salvar.");
             model.put("successFlag", false);
             return new ModelAndView(model, "board");
         }
         
-        boolean success = app.saveGame(gameName.trim());
-        
-        if (success) {
-            Map<String, Object> model = new HashMap<>();
-            model.put("success", "Jogo salvo com sucesso: " + gameName.trim());
+        Map<String, Object> model = new HashMap<>();
+        putGame(game, model);
+        try {
+            SaveQueue.Ticket ticket = await(game, app -> saves.save(gameName.trim(), app));
+            GameState state = game.getState();
+            ViewState view = view(req, game);
+            model.put("success", "Salvamento agendado: " + gameName.trim());
             model.put("successFlag", true);
-            model.put("currentTurn", app.getCurrentTurn());
-            model.put("gameOver", app.isGameOver());
-            model.put("boardRotation", boardRotation);
+            model.put("saveTicket", ticket.getId());
+            model.put("currentTurn", state.getCurrentTurn());
+            model.put("gameOver", state.isGameOver());
+            synchronized (view) {
+                model.put("boardRotation", view.boardRotation);
+            }
             model.put("doTransition", false);
-            return new ModelAndView(model, "board");
-        } else {
-            Map<String, Object> model = new HashMap<>();
+        } catch (IllegalArgumentException e) {
+            model.put("error", "Nome inválido: use só letras, números, espaços, '_' e '-'.");
+            model.put("successFlag", false);
+        } catch (IOException e) {
             model.put("error", "Erro ao salvar o jogo: " + gameName.trim());
             model.put("successFlag", false);
-            return new ModelAndView(model, "board");
+        }
+        return new ModelAndView(model, "board");
+    }
+
+    /**
+     * Agenda o salvamento do jogo, como saveGame, respondendo em JSON.
+     */
+    public String saveGameJson(Request req) {
+        GameRegistry.Game game = game(req);
+        String gameName = req.queryParams("name");
+        if (gameName == null || gameName.trim().isEmpty()) {
+            return "{\"success\": false, \"error\": \"Nome do jogo é obrigatório para salvar.\"}";
+        }
+
+        try {
+            SaveQueue.Ticket ticket = await(game, app -> saves.save(gameName.trim(), app));
+            return "{\"success\": true, \"ticket\": " + ticket.getId()
+                    + ", \"message\": \"Salvando jogo: " + gameName.trim() + "\"}";
+        } catch (IllegalArgumentException e) {
+            return "{\"success\": false, \"error\": \"Nome inválido: use só letras, números, espaços, '_' e '-'.\"}";
+        } catch (IOException e) {
+            return "{\"success\": false, \"error\": \"Erro ao salvar o jogo.\"}";
         }
     }
 
+    /**
+     * Estado de um salvamento agendado, em JSON.
+     */
+    public String saveStatus(Request req) {
+        SaveQueue.Ticket ticket = null;
+        try {
+            ticket = saves.getTicket(Long.parseLong(req.queryParams("ticket")));
+        } catch (NumberFormatException e) {
+            // ticket ausente ou inválido
+        }
+        if (ticket == null)
+            return "{\"success\": false, \"error\": \"Salvamento desconhecido.\"}";
+        String json = "{\"success\": true, \"ticket\": " + ticket.getId() + ", \"game\": \"" + ticket.getGameName()
+                + "\", \"status\": \"" + ticket.getStatus() + "\"";
+        if (ticket.getStatus() == SaveQueue.Status.FAILED)
+            json += ", \"error\": \"Erro ao salvar o jogo: " + ticket.getGameName() + "\"";
+        return json + "}";
+    }
+
+    /**
+     * Lances jogados na posição atual nos jogos arquivados, com as vitórias de
+     * cada cor, em JSON.
+     */
+    public String openings(Request req) {
+        GameRegistry.Game game = game(req);
+        StringBuilder json = new StringBuilder("{\"success\": true, \"games\": ")
+                .append(openings.getGamesIndexed()).append(", \"moves\": [");
+        List<OpeningExplorer.MoveStats> moves = game.submit(openings::query).join();
+        for (int i = 0; i < moves.size(); i++) {
+            OpeningExplorer.MoveStats move = moves.get(i);
+            if (i > 0)
+                json.append(", ");
+            json.append("{\"move\": \"").append(move.notation()).append("\", \"games\": ").append(move.games())
+                    .append(", \"wins\": {");
+            for (Color color : Color.values()) {
+                if (color.ordinal() > 0)
+                    json.append(", ");
+                json.append('"').append(color).append("\": ").append(move.getWins(color));
+            }
+            json.append("}}");
+        }
+        return json.append("]}").toString();
+    }
+
     public ModelAndView loadGame(Request req) {
+        GameRegistry.Game game = game(req);
         String gameName = req.queryParams("name");
+        ViewState view = view(req, game);
         if (gameName == null || gameName.trim().isEmpty()) {
-            return renderError("Nome do jogo é obrigatório para carregar.");
+            synchronized (view) {
+                return renderError(game, view, "Nome do jogo é obrigatório para carregar.");
+            }
         }
         
-        boolean success = app.loadGame(gameName.trim());
-        
-        if (success) {
-            clearSelection(); // Limpar seleção ao carregar novo jogo
-            lastTurn = Color.GREEN;
-            doTransition = false;
-            boardRotation = 0;
-            return renderBoard(req);
-        } else {
-            return renderError("Jogo não encontrado ou erro ao carregar: " + gameName.trim());
+        // Um salvamento ainda na fila seria perdido ou carregado pela metade
+        saves.flush().join();
+        boolean success = false;
+        try {
+            // Só a posição atual é lida agora; o histórico é refeito em segundo plano
+            InputStream data = store.openGame(gameName.trim());
+            if (data != null) {
+                await(game, app -> {
+                    app.loadGame(data);
+                    return null;
+                });
+                success = true;
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao carregar jogo: " + e.getMessage());
+        }
+
+        synchronized (view) {
+            if (success) {
+                view.clearSelection(); // Limpar seleção ao carregar novo jogo
+                view.resetRotation();
+                return renderBoard(game, view);
+            } else {
+                return renderError(game, view, "Jogo não encontrado ou erro ao carregar: " + gameName.trim());
+            }
         }
     }
 
+    /**
+     * Uma página dos jogos salvos, do catálogo em memória. Parâmetros opcionais:
+     * sort (NAME, MODIFIED, PLIES, SIZE), order (asc, desc) e page (a partir de 0).
+     */
     public ModelAndView getSavedGames(Request req) {
-        List<String> savedGames = app.getSavedGames();
+        GameRegistry.Game game = game(req);
         Map<String, Object> model = new HashMap<>();
-        model.put("savedGames", savedGames);
-        model.put("currentTurn", app.getCurrentTurn());
-        model.put("gameOver", app.isGameOver());
+        putSavedGamesPage(req, model);
+        putGame(game, model);
+        model.put("currentTurn", game.getState().getCurrentTurn());
+        model.put("gameOver", game.getState().isGameOver());
         
         return new ModelAndView(model, "saved-games");
     }
 
+    private void putSavedGamesPage(Request req, Map<String, Object> model) {
+        SavedGamesCatalog.Sort sort = SavedGamesCatalog.Sort.MODIFIED;
+        try {
+            if (req.queryParams("sort") != null)
+                sort = SavedGamesCatalog.Sort.valueOf(req.queryParams("sort"));
+        } catch (IllegalArgumentException e) {
+            // ordenação desconhecida: mantém a padrão
+        }
+        // Por padrão, os mais recentes primeiro
+        boolean descending = !"asc".equals(req.queryParams("order"));
+        int page = 0;
+        try {
+            if (req.queryParams("page") != null)
+                page = Math.max(0, Integer.parseInt(req.queryParams("page")));
+        } catch (NumberFormatException e) {
+            // página inválida: primeira página
+        }
+        SavedGamesCatalog.Page savedGames = catalog.query(sort, descending, page, SAVED_GAMES_PAGE_SIZE);
+        List<SavedGameView> views = new ArrayList<>();
+        for (SavedGamesCatalog.Entry entry : savedGames.entries())
+            views.add(new SavedGameView(entry));
+        model.put("savedGames", views);
+        model.put("page", savedGames.page());
+        model.put("pages", savedGames.pages());
+        model.put("totalGames", savedGames.total());
+        model.put("hasPrevious", savedGames.hasPrevious());
+        model.put("hasNext", savedGames.hasNext());
+        model.put("sort", sort.name());
+        model.put("order", descending ? "desc" : "asc");
+    }
+
     public ModelAndView deleteGame(Request req) {
+        GameRegistry.Game game = game(req);
         String gameName = req.queryParams("name");
         if (gameName == null || gameName.trim().isEmpty()) {
             Map<String, Object> model = new HashMap<>();
+            putGame(game, model);
             model.put("error", "Nome do jogo é obrigatório para deletar.");
             model.put("successFlag", false);
             return new ModelAndView(model, "saved-games");
         }
         
-        boolean success = app.deleteSavedGame(gameName.trim());
+        // Senão um salvamento ainda na fila recriaria o jogo
+        saves.flush().join();
+        boolean success = false;
+        try {
+            success = store.delete(gameName.trim());
+        } catch (IOException e) {
+            System.err.println("Erro ao deletar jogo: " + e.getMessage());
+        }
         
         if (success) {
             // Recarregar a lista de jogos
-            List<String> savedGames = app.getSavedGames();
+            catalog.refresh(gameName.trim());
             Map<String, Object> model = new HashMap<>();
-            model.put("savedGames", savedGames);
-            model.put("currentTurn", app.getCurrentTurn());
-            model.put("gameOver", app.isGameOver());
+            putSavedGamesPage(req, model);
+            putGame(game, model);
+            model.put("currentTurn", game.getState().getCurrentTurn());
+            model.put("gameOver", game.getState().isGameOver());
             model.put("success", "Jogo deletado com sucesso: " + gameName.trim());
             return new ModelAndView(model, "saved-games");
         } else {
             Map<String, Object> model = new HashMap<>();
+            putGame(game, model);
             model.put("error", "Erro ao deletar o jogo: " + gameName.trim());
             model.put("successFlag", false);
             return new ModelAndView(model, "saved-games");
         }
     }
 
-    private ModelAndView renderSuccess(String message) {
+    private ModelAndView renderSuccess(GameRegistry.Game game, ViewState view, String message) {
+        GameState state = game.getState();
         Map<String, Object> model = new HashMap<>();
+        putGame(game, model);
         model.put("success", message);
         model.put("boardHtml", "<div class='success' style='padding: 20px; background: #4aff4a; color: black; border-radius: 5px;'>" + message + "</div>");
-        model.put("currentTurn", app.getCurrentTurn());
-        model.put("gameOver", app.isGameOver());
-        model.put("boardRotation", boardRotation);
-        model.put("doTransition", doTransition);
+        model.put("currentTurn", state.getCurrentTurn());
+        model.put("gameOver", state.isGameOver());
+        model.put("boardRotation", view.boardRotation);
+        model.put("doTransition", view.doTransition);
         return new ModelAndView(model, "board");
     }
 
-    private ModelAndView renderError(String message) {
+    private ModelAndView renderError(GameRegistry.Game game, ViewState view, String message) {
+        GameState state = game.getState();
         Map<String, Object> model = new HashMap<>();
+        putGame(game, model);
         model.put("error", message);
         model.put("boardHtml", "<div class='error' style='padding: 20px; background: #ff4a4a; color: white; border-radius: 5px;'>" + message + "</div>");
-        model.put("currentTurn", app.getCurrentTurn());
-        model.put("gameOver", app.isGameOver());
-        model.put("boardRotation", boardRotation);
-        model.put("doTransition", doTransition);
+        model.put("currentTurn", state.getCurrentTurn());
+        model.put("gameOver", state.isGameOver());
+        model.put("boardRotation", view.boardRotation);
+        model.put("doTransition", view.doTransition);
         return new ModelAndView(model, "board");
     }
 }
\ No newline at end of file
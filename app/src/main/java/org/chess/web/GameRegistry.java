@@ -0,0 +1,310 @@
+package org.chess.web;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import org.chess.App;
+import org.chess.persistence.MoveJournal;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Os jogos em andamento no servidor, por id.
+ *
+ * Cada jogo é gravado no diário de lances com o seu id. Jogos parados há mais
+ * de IDLE_TIMEOUT saem da memória (o diário fica) e voltam, refeitos do diário,
+ * no próximo acesso; jogos terminados e parados têm o diário apagado se já
+ * foram para o arquivo de jogos (ver `setArchived`). Assim a memória acompanha os jogos em uso, e
+ * não todos os que já foram criados.
+ *
+ * O mapa é dimensionado para milhares de jogos. O App de um jogo não é
+ * thread-safe, então só é usado pela fila do jogo (ver `Game.submit`): as
+ * alterações de um jogo rodam uma de cada vez, em ordem, e as de jogos
+ * diferentes rodam em paralelo nas threads compartilhadas do registro.
+ */
+public class GameRegistry implements AutoCloseable {
+    public static final int INITIAL_CAPACITY = 4096;
+    public static final Duration IDLE_TIMEOUT = Duration.ofMinutes(30);
+
+    private static final Pattern GAME_ID = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+    private static final char[] ID_CHARS = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+    private static final int ID_LENGTH = 10;
+
+    /**
+     * Um jogo do servidor. Quem escreve no App é só a fila do jogo; as leituras
+     * usam o último `GameState` publicado por ela, sem esperar.
+     */
+    public static final class Game {
+        private final String id;
+        private final App app;
+        private final Executor writer;
+        private volatile GameState state;
+        private volatile long lastAccessMillis = System.currentTimeMillis();
+        private volatile boolean archived;
+        // Se o jogo já está no diário; guardado pelo próprio Game
+        private boolean registered;
+
+        private Game(String id, App app, Executor workers) {
+            this.id = id;
+            this.app = app;
+            this.writer = MoreExecutors.newSequentialExecutor(workers);
+            this.state = new GameState(app);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * O App do jogo, para os listeners do setup do registro: eles são
+         * chamados na fila do jogo. Fora dela, use submit ou getState.
+         */
+        public App getApp() {
+            return app;
+        }
+
+        /** A última fotografia do jogo; não espera pelas alterações na fila. */
+        public GameState getState() {
+            return state;
+        }
+
+        /**
+         * Põe `task` na fila do jogo: roda depois das tarefas anteriores, com o
+         * App só para ela, e publica o novo estado ao terminar, tenha dado certo
+         * ou não. Também é o caminho para o que lê o App inteiro (salvar, por
+         * exemplo), já que ele pode estar sendo alterado.
+         */
+        public <T> CompletableFuture<T> submit(Function<App, T> task) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.apply(app);
+                } finally {
+                    publish();
+                }
+            }, writer);
+        }
+
+        /* Na fila do jogo. */
+        private void publish() {
+            state = new GameState(app);
+            // O histórico de um jogo carregado é refeito fora da fila; quando
+            // ficar pronto, a fila o instala e publica de novo
+            if (!state.isHistoryLoaded())
+                app.whenHistoryReady().thenRun(() -> writer.execute(this::publish));
+        }
+
+        /** Se o jogo terminado está no arquivo de jogos, e o diário pode ser apagado. */
+        public boolean isArchived() {
+            return archived;
+        }
+
+        public void setArchived(boolean archived) {
+            this.archived = archived;
+        }
+
+        /** O caminho das rotas do jogo, por exemplo "/game/abc123". */
+        public String getPath() {
+            return "/game/" + id;
+        }
+    }
+
+    private final MoveJournal journal;
+    private final Consumer<Game> setup;
+    private final Consumer<Game> teardown;
+    private final Map<String, Game> games = new ConcurrentHashMap<>(INITIAL_CAPACITY);
+    private final SecureRandom random = new SecureRandom();
+    private final ScheduledExecutorService evictor;
+    // Threads de todas as filas de jogos
+    private final ExecutorService workers;
+
+    public GameRegistry(MoveJournal journal, Consumer<Game> setup) {
+        this(journal, setup, game -> {
+        });
+    }
+
+    /**
+     * @param setup    chamado com cada jogo que entra no registro (criado, adotado
+     *                 ou refeito do diário), por exemplo para registrar listeners
+     *                 no seu App.
+     * @param teardown chamado, na fila do jogo, com cada jogo que sai da memória,
+     *                 para soltar o que o setup prendeu a ele (por exemplo
+     *                 `EngineService.forget`).
+     */
+    public GameRegistry(MoveJournal journal, Consumer<Game> setup, Consumer<Game> teardown) {
+        this.journal = journal;
+        this.setup = setup;
+        this.teardown = teardown;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-registry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "game-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = IDLE_TIMEOUT.toMillis() / 4;
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Cria um jogo novo, com um id aleatório. */
+    public Game create() {
+        while (true) {
+            Game game = new Game(newId(), new App(), workers);
+            synchronized (game) {
+                if (games.putIfAbsent(game.id, game) == null) {
+                    register(game);
+                    return game;
+                }
+            }
+        }
+    }
+
+    /**
+     * Põe no registro um jogo já em andamento, por exemplo recuperado ao iniciar
+     * o servidor.
+     *
+     * @throws IllegalArgumentException se o id é inválido ou já está em uso.
+     */
+    public Game adopt(String id, App app) {
+        if (!GAME_ID.matcher(id).matches())
+            throw new IllegalArgumentException("Invalid game id: " + id);
+        Game game = new Game(id, app, workers);
+        synchronized (game) {
+            if (games.putIfAbsent(id, game) != null)
+                throw new IllegalArgumentException("Game already registered: " + id);
+            register(game);
+        }
+        return game;
+    }
+
+    /**
+     * O jogo com o id, refeito do diário se saiu da memória.
+     *
+     * @return null se o jogo não existe.
+     */
+    public Game get(String id) {
+        if (id == null || !GAME_ID.matcher(id).matches())
+            return null;
+        while (true) {
+            Game game = games.get(id);
+            if (game == null) {
+                game = recover(id);
+                if (game == null)
+                    return null;
+            }
+            synchronized (game) {
+                // Saiu da memória enquanto era buscado: busca de novo
+                if (games.get(id) != game)
+                    continue;
+                if (!game.registered)
+                    register(game);
+                game.lastAccessMillis = System.currentTimeMillis();
+                return game;
+            }
+        }
+    }
+
+    public int size() {
+        return games.size();
+    }
+
+    /**
+     * Para de tirar jogos da memória e espera as filas dos jogos terminarem. Os
+     * diários são fechados por quem os abriu.
+     */
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ###########################################################################
+    // Operações privadas
+    // ###########################################################################
+
+    /* Chamado com o Game sincronizado. */
+    private void register(Game game) {
+        journal.attach(game.id, game.app);
+        game.registered = true;
+        setup.accept(game);
+    }
+
+    /*
+     * Refaz o jogo do diário, fora do mapa, já que pode demorar; se outra
+     * requisição o refez antes, fica o dela.
+     *
+     * @return null se não há diário ou ele não pode ser lido.
+     */
+    private Game recover(String id) {
+        Path file = journal.getFile(id);
+        if (!Files.exists(file))
+            return null;
+        App app;
+        try {
+            // Os últimos lances de antes de o jogo sair da memória podem estar na fila
+            journal.flush().join();
+            app = MoveJournal.recover(file);
+        } catch (IOException e) {
+            System.err.println("Erro ao recuperar o jogo " + id + ": " + e.getMessage());
+            return null;
+        }
+        Game game = new Game(id, app, workers);
+        Game previous = games.putIfAbsent(id, game);
+        return previous != null ? previous : game;
+    }
+
+    /* Tira da memória os jogos parados; o diário dos terminados e arquivados é apagado. */
+    private void evictIdle() {
+        long limit = System.currentTimeMillis() - IDLE_TIMEOUT.toMillis();
+        for (Game game : games.values()) {
+            if (game.lastAccessMillis >= limit)
+                continue;
+            synchronized (game) {
+                if (game.lastAccessMillis >= limit || !games.remove(game.id, game))
+                    continue;
+                if (!game.registered)
+                    continue;
+                // Na fila do jogo, já que tira um listener do App
+                game.writer.execute(() -> {
+                    if (game.app.isGameOver() && game.archived)
+                        journal.discard(game.id);
+                    else
+                        journal.detach(game.id);
+                    try {
+                        teardown.accept(game);
+                    } catch (RuntimeException e) {
+                        System.err.println("Erro ao tirar o jogo " + game.id + " da memória: " + e.getMessage());
+                    }
+                });
+            }
+        }
+    }
+
+    private String newId() {
+        char[] id = new char[ID_LENGTH];
+        for (int i = 0; i < id.length; i++)
+            id[i] = ID_CHARS[random.nextInt(ID_CHARS.length)];
+        return new String(id);
+    }
+}
@@ -0,0 +1,62 @@
+package org.chess.web;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.chess.App;
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.Pos;
+import org.chess.pieces.Piece;
+
+/**
+ * Uma fotografia de um jogo, tirada pela thread que o altera depois de cada
+ * alteração (ver `GameRegistry.Game`). Não muda depois de criada, então pode
+ * ser lida por qualquer requisição sem esperar pelo jogo: é daqui que saem o
+ * tabuleiro desenhado e os lances de uma seleção.
+ */
+public final class GameState {
+    private final Piece[][] pieces = new Piece[15][15];
+    // Lances de cada peça da cor da vez
+    private final Map<Pos, List<Move>> moves = new HashMap<>();
+    private final Color currentTurn;
+    private final boolean gameOver;
+    private final boolean historyLoaded;
+
+    /* Só pode ser chamado por quem altera o jogo. */
+    GameState(App app) {
+        // Primeiro, já que instala o jogo completo se ele ficou pronto
+        this.historyLoaded = app.isHistoryLoaded();
+        this.currentTurn = app.getCurrentTurn();
+        this.gameOver = app.isGameOver();
+        for (Pos pos : Pos.getValidPositions()) {
+            Piece piece = app.getPiece(pos);
+            pieces[pos.row()][pos.column()] = piece;
+            if (piece != null && piece.color == currentTurn && !gameOver)
+                moves.put(pos, List.copyOf(app.getPossibleMoves(pos)));
+        }
+    }
+
+    public Piece getPiece(Pos pos) {
+        return pieces[pos.row()][pos.column()];
+    }
+
+    /** Os lances da peça em `pos`; vazio se ela não é da cor da vez. */
+    public List<Move> getPossibleMoves(Pos pos) {
+        return moves.getOrDefault(pos, List.of());
+    }
+
+    public Color getCurrentTurn() {
+        return currentTurn;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /** Se o histórico de um jogo carregado já foi refeito. */
+    public boolean isHistoryLoaded() {
+        return historyLoaded;
+    }
+}
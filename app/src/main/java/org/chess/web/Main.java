@@ -1,85 +1,232 @@
 package org.chess.web;
 
 import static spark.Spark.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 import org.chess.App;
+import org.chess.persistence.GameArchive;
+import org.chess.persistence.GameRecovery;
+import org.chess.persistence.GameStore;
+import org.chess.persistence.MoveJournal;
+import org.chess.persistence.OpeningExplorer;
+import org.chess.persistence.SaveQueue;
+import org.chess.persistence.SavedGamesCatalog;
 import spark.template.thymeleaf.ThymeleafTemplateEngine;
 
 public class Main {
-    public static void main(String[] args) {
+    // Com o '-' e até 13 dígitos do hash, cabe em GameArchive.MAX_ID_BYTES
+    private static final int ARCHIVE_ID_PREFIX = 10;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
         port(8080);
         staticFiles.location("/public");
 
-        App gameApp = new App();
-        ChessController controller = new ChessController(gameApp);
+        // Cada lance é gravado no diário; ao reiniciar, os jogos em andamento são recuperados
+        MoveJournal journal = new MoveJournal(Path.of("journals"));
+        Map<Path, App> recovered = recoverGames();
+        // Jogos salvos ficam no armazenamento por conteúdo: lances repetidos são
+        // gravados uma vez só, e os nomes apontam para eles
+        GameStore store = new GameStore(Path.of("game_store"));
+        int imported = store.importSaves(Path.of("saved_games"));
+        if (imported > 0)
+            System.out.println("Importados " + imported + " jogos salvos para o armazenamento");
+        long freed = store.compact();
+        if (freed > 0)
+            System.out.println("Armazenamento compactado: " + freed + " bytes liberados");
+        // Jogos salvos são gravados em segundo plano, fora da requisição
+        SaveQueue saves = new SaveQueue(store);
+        // Lista de jogos salvos em memória, atualizada a cada gravação
+        SavedGamesCatalog catalog = new SavedGamesCatalog(store);
+        saves.addListener(catalog::refresh);
+        // Jogos terminados vão para o arquivo, que alimenta o explorador de aberturas
+        Files.createDirectories(Path.of("archive"));
+        GameArchive archive = new GameArchive(Path.of("archive", "games.c4a"));
+        OpeningExplorer openings = new OpeningExplorer(Path.of("archive", "openings.c4o"));
+        openings.update(archive);
+        // Os jogos do servidor, cada um com o seu id e as suas rotas em /game/<id>
+        GameRegistry games = new GameRegistry(journal, game -> archiveFinishedGames(game, archive, openings));
+        for (Map.Entry<Path, App> game : recovered.entrySet())
+            games.adopt(MoveJournal.gameId(game.getKey()), game.getValue());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            games.close();
+            saves.close();
+            journal.close();
+            try {
+                openings.close();
+                archive.close();
+                store.close();
+            } catch (IOException e) {
+                System.err.println("Erro ao fechar o arquivo de jogos: " + e);
+            }
+        }));
+        ChessController controller = new ChessController(games, saves, catalog, store, openings);
+
+        // Rota inicial: cada visita começa um jogo novo
+        get("/", (req, res) -> {
+            res.redirect(games.create().getPath());
+            return null;
+        });
 
-        // Rota inicial
-        get("/", (req, res) -> controller.renderBoard(req), new ThymeleafTemplateEngine());
+        // Tabuleiro de um jogo; o mesmo endereço em outro navegador abre o mesmo jogo
+        get("/game/:id", (req, res) -> controller.renderBoard(req), new ThymeleafTemplateEngine());
 
         // Seleção via GET
-        get("/select", (req, res) -> {
+        get("/game/:id/select", (req, res) -> {
             int row = Integer.parseInt(req.queryParams("row"));
             int col = Integer.parseInt(req.queryParams("col"));
             return controller.handleSelection(req, row, col);
         }, new ThymeleafTemplateEngine());
 
         // Movimento via POST (parâmetro vem na QueryString da URL do POST)
-        post("/move", (req, res) -> {
+        post("/game/:id/move", (req, res) -> {
             int moveIndex = Integer.parseInt(req.queryParams("moveIndex"));
             return controller.handleMove(req, moveIndex);
         }, new ThymeleafTemplateEngine());
 
         // Reiniciar Jogo via POST
-        post("/reset", (req, res) -> {
+        post("/game/:id/reset", (req, res) -> {
             return controller.resetGame(req);
         }, new ThymeleafTemplateEngine());
 
         // === ROTAS DE PERSISTÊNCIA ===
         
         // Salvar Jogo via POST (HTML/HTMX)
-        post("/save-game", (req, res) -> {
+        post("/game/:id/save-game", (req, res) -> {
             return controller.saveGame(req);
         }, new ThymeleafTemplateEngine());
 
         // Salvar Jogo via POST (JSON para JavaScript)
-        post("/save-game-json", (req, res) -> {
+        post("/game/:id/save-game-json", (req, res) -> {
             res.type("application/json");
-            String gameName = req.queryParams("name");
-            if (gameName == null || gameName.trim().isEmpty()) {
-                return "{\"success\": false, \"error\": \"Nome do jogo é obrigatório para salvar.\"}";
-            }
-            
-            boolean success = gameApp.saveGame(gameName.trim());
-            if (success) {
-                return "{\"success\": true, \"message\": \"Jogo salvo com sucesso: " + gameName.trim() + "\"}";
-            } else {
-                return "{\"success\": false, \"error\": \"Erro ao salvar o jogo: " + gameName.trim() + "\"}";
-            }
+            return controller.saveGameJson(req);
+        });
+
+        // Estado de um salvamento agendado via GET (JSON)
+        get("/save-status", (req, res) -> {
+            res.type("application/json");
+            return controller.saveStatus(req);
+        });
+
+        // Lances jogados na posição atual nos jogos arquivados via GET (JSON)
+        get("/game/:id/openings", (req, res) -> {
+            res.type("application/json");
+            return controller.openings(req);
         });
 
         // Carregar Jogo via POST
-        post("/load-game", (req, res) -> {
+        post("/game/:id/load-game", (req, res) -> {
             return controller.loadGame(req);
         }, new ThymeleafTemplateEngine());
 
         // Listar Jogos Salvos via GET
-        get("/saved-games", (req, res) -> {
+        get("/game/:id/saved-games", (req, res) -> {
             return controller.getSavedGames(req);
         }, new ThymeleafTemplateEngine());
 
         // Deletar Jogo via POST
-        post("/delete-game", (req, res) -> {
+        post("/game/:id/delete-game", (req, res) -> {
             return controller.deleteGame(req);
         }, new ThymeleafTemplateEngine());
 
+        // Quantos jogos estão em memória via GET (JSON)
+        get("/games", (req, res) -> {
+            res.type("application/json");
+            return "{\"games\": " + games.size() + "}";
+        });
+
         System.out.println("Servidor rodando em http://localhost:8080");
         System.out.println("Rotas configuradas:");
-        System.out.println("  GET  /     - Tabuleiro principal");
-        System.out.println("  GET  /select?row=X&col=Y - Selecionar peça");
-        System.out.println("  POST /move?moveIndex=Z  - Executar movimento");
-        System.out.println("  POST /reset              - Reiniciar jogo");
-        System.out.println("  POST /save-game?name=X   - Salvar jogo");
-        System.out.println("  GET  /load-game?name=X   - Carregar jogo");
-        System.out.println("  GET  /saved-games        - Listar jogos salvos");
-        System.out.println("  DEL  /delete-game?name=X - Deletar jogo");
+        System.out.println("  GET  /     - Novo jogo (redireciona para /game/ID)");
+        System.out.println("  GET  /game/ID - Tabuleiro do jogo");
+        System.out.println("  GET  /game/ID/select?row=X&col=Y - Selecionar peça");
+        System.out.println("  POST /game/ID/move?moveIndex=Z  - Executar movimento");
+        System.out.println("  POST /game/ID/reset              - Reiniciar jogo");
+        System.out.println("  POST /game/ID/save-game?name=X   - Salvar jogo");
+        System.out.println("  GET  /save-status?ticket=N - Estado do salvamento");
+        System.out.println("  GET  /game/ID/openings           - Lances dos jogos arquivados nesta posição");
+        System.out.println("  GET  /game/ID/load-game?name=X   - Carregar jogo");
+        System.out.println("  GET  /game/ID/saved-games?sort=S&order=O&page=N - Listar jogos salvos");
+        System.out.println("  DEL  /game/ID/delete-game?name=X - Deletar jogo");
+        System.out.println("  GET  /games                - Jogos em memória");
+    }
+
+    /*
+     * Guarda no arquivo cada jogo que termina, uma vez só, e atualiza o
+     * explorador de aberturas em segundo plano. O jogo só é marcado como
+     * arquivado, o que deixa o registro apagar o seu diário, depois que a
+     * gravação deu certo.
+     */
+    private static void archiveFinishedGames(GameRegistry.Game game, GameArchive archive, OpeningExplorer openings) {
+        App gameApp = game.getApp();
+        long[] startedMillis = { System.currentTimeMillis() };
+        // Jogo recuperado já terminado: pode não ter chegado ao arquivo
+        if (gameApp.isGameOver())
+            archive(game, archive, openings, startedMillis[0]);
+        gameApp.addMoveListener(move -> {
+            if (move == null) {
+                // Jogo novo ou carregado; um jogo carregado já terminado não é arquivado
+                startedMillis[0] = System.currentTimeMillis();
+                game.setArchived(false);
+                return;
+            }
+            if (gameApp.isGameOver() && !game.isArchived())
+                archive(game, archive, openings, startedMillis[0]);
+        });
+    }
+
+    private static void archive(GameRegistry.Game game, GameArchive archive, OpeningExplorer openings,
+            long startedMillis) {
+        String archiveId = archiveId(game);
+        try {
+            // Já está lá se o servidor reiniciou antes de o diário ser apagado
+            if (archive.getEntry(archiveId) != null) {
+                game.setArchived(true);
+                return;
+            }
+            archive.append(archiveId, game.getApp(), startedMillis);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Erro ao arquivar o jogo " + game.getId() + ": " + e);
+            return;
+        }
+        game.setArchived(true);
+        CompletableFuture.runAsync(() -> {
+            try {
+                openings.update(archive);
+            } catch (IOException e) {
+                System.err.println("Erro ao atualizar as aberturas: " + e);
+            }
+        });
+    }
+
+    /*
+     * Id do jogo no arquivo, com no máximo GameArchive.MAX_ID_BYTES: o começo
+     * do id do jogo e o hash da posição final, de modo que o mesmo jogo tem
+     * sempre o mesmo id.
+     */
+    private static String archiveId(GameRegistry.Game game) {
+        String id = game.getId();
+        String prefix = id.length() > ARCHIVE_ID_PREFIX ? id.substring(0, ARCHIVE_ID_PREFIX) : id;
+        return prefix + "-" + Long.toUnsignedString(game.getApp().getPositionHash(), 36);
+    }
+
+    /*
+     * Recupera em paralelo os jogos em andamento dos diários de lances,
+     * verificando cada um, e retorna os que foram recuperados, por arquivo. Os
+     * jogos salvos estão no armazenamento, que se verifica ao abrir.
+     */
+    private static Map<Path, App> recoverGames() throws IOException, InterruptedException {
+        List<Path> files = GameRecovery.discover(Path.of("journals"));
+        GameRecovery.Report report = GameRecovery.recover(files, Runtime.getRuntime().availableProcessors());
+        System.out.printf("Recuperados %d de %d jogos em %d ms%n", report.games().size(), report.discovered(),
+                report.elapsedNanos() / 1_000_000);
+        for (GameRecovery.Failure failure : report.failures())
+            System.err.println("Falha ao recuperar " + failure.file() + ": " + failure.reason());
+        return report.games();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,47 @@
+package org.chess;
+
+import org.chess.board.Board;
+import org.chess.pieces.Pawn;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible games for tests. Moves are picked at random, but castling,
+ * promotions and en passant are always played when available, and pawns are
+ * pushed more often, so that a few hundred plies cover every move type: with
+ * seed 4, the first 140 plies have them all.
+ */
+public class RandomGames {
+
+    public static App play(int plies, long seed) {
+        App app = new App();
+        Random random = new Random(seed);
+        for (int i = 0; i < plies && !app.isGameOver(); i++) {
+            Board board = app.getBoardSnapshot();
+            List<Move> moves = new ArrayList<>(board.getAllMoves(app.getCurrentTurn()));
+            // The move table has no fixed order
+            moves.sort(Comparator.comparing((Move move) -> board.getPos(move.piece()).toString())
+                    .thenComparing(move -> move.toPos().toString())
+                    .thenComparing(Move::type));
+            List<Move> special = moves.stream().filter(move -> move.type() != Move.MoveType.SIMPLE_MOVE
+                    && move.type() != Move.MoveType.PAWN_DOUBLE).toList();
+            List<Move> pawnMoves = moves.stream().filter(move -> move.piece() instanceof Pawn).toList();
+            List<Move> choices = !special.isEmpty() ? special
+                    : !pawnMoves.isEmpty() && random.nextInt(10) < 7 ? pawnMoves : moves;
+            app.doMove(choices.get(random.nextInt(choices.size())));
+        }
+        return app;
+    }
+
+    /** @return how many plies of the game have each move type. */
+    public static int count(App app, Move.MoveType type) {
+        int count = 0;
+        for (Move move : app.getGameHistory())
+            if (move.type() == type)
+                count++;
+        return count;
+    }
+}
@@ -0,0 +1,163 @@
+package org.chess.board;
+
+import org.chess.App;
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.RandomGames;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class testBinaryGameSerializer {
+    private static final long[] CLOCKS = { 1_000_000_000L, 2_000_000_000L, 3_000_000_000L, 4_000_000_000L };
+
+    private static void assertSameGame(App expected, App actual) {
+        assertEquals(expected.getPlyCount(), actual.getPlyCount());
+        assertEquals(expected.getCurrentTurn(), actual.getCurrentTurn());
+        assertEquals(expected.isGameOver(), actual.isGameOver());
+        assertEquals(expected.getPositionHash(), actual.getPositionHash());
+        Board expectedBoard = expected.getBoardSnapshot();
+        Board actualBoard = actual.getBoardSnapshot();
+        for (int i = 0; i < expected.getPlyCount(); i++) {
+            Ply expectedPly = expectedBoard.history.getPly(i);
+            Ply actualPly = actualBoard.history.getPly(i);
+            assertEquals(expectedPly.getFromPos(), actualPly.getFromPos());
+            assertEquals(expectedPly.getMove().toPos(), actualPly.getMove().toPos());
+            assertEquals(expectedPly.getMove().type(), actualPly.getMove().type());
+        }
+    }
+
+    /* The clock of the color to move runs again after a load, so it may be a little behind. */
+    private static void assertClocks(App app) {
+        for (Color color : Color.values()) {
+            long timeLeft = app.getPlayer(color).clock.getTimeLeftNanosecs();
+            if (color == app.getCurrentTurn() && !app.isGameOver())
+                assertTrue(CLOCKS[color.ordinal()] - timeLeft < 1_000_000_000L);
+            else
+                assertEquals(CLOCKS[color.ordinal()], timeLeft);
+        }
+    }
+
+    /* The game in an older version of the format, as those versions wrote it. */
+    private static byte[] writeOlderVersion(App app, int version) throws IOException {
+        Board board = app.getBoardSnapshot();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(BinaryGameSerializer.MAGIC);
+        data.writeShort(version);
+        data.writeByte(0);
+        data.writeByte(app.getCurrentTurn().ordinal());
+        if (version >= 2) {
+            int eliminated = 0;
+            for (Color color : Color.values())
+                if (!board.isInGame(color))
+                    eliminated |= 1 << color.ordinal();
+            data.writeByte(eliminated);
+        }
+        for (long clock : CLOCKS)
+            data.writeLong(clock);
+        data.writeInt(board.history.size());
+        if (version >= 3) {
+            data.writeByte(0);
+            MoveCodec.Encoder moves = new MoveCodec.Encoder(app, data);
+            for (int i = 0; i < board.history.size(); i++)
+                moves.write(board.history.getPly(i));
+        } else {
+            for (int i = 0; i < board.history.size(); i++) {
+                Ply ply = board.history.getPly(i);
+                data.writeByte(BinaryGameSerializer.squareIndex(ply.getFromPos()));
+                data.writeByte(BinaryGameSerializer.squareIndex(ply.getMove().toPos()));
+                data.writeByte(ply.getMove().type().ordinal());
+            }
+        }
+        data.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void setClocks(App app) {
+        for (Color color : Color.values()) {
+            app.getPlayer(color).clock.pause();
+            app.getPlayer(color).clock.setTimeLeftNanosecs(CLOCKS[color.ordinal()]);
+        }
+    }
+
+    @Test
+    public void currentVersionRoundTrip() throws IOException {
+        App app = RandomGames.play(140, 4);
+        setClocks(app);
+        assertTrue(RandomGames.count(app, Move.MoveType.QUEEN_PROMOTION)
+                + RandomGames.count(app, Move.MoveType.ROOK_PROMOTION)
+                + RandomGames.count(app, Move.MoveType.BISHOP_PROMOTION)
+                + RandomGames.count(app, Move.MoveType.KNIGHT_PROMOTION) > 0);
+
+        for (boolean compress : new boolean[] { false, true }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BinaryGameSerializer.write(app, bytes, compress);
+
+            App read = BinaryGameSerializer.read(new ByteArrayInputStream(bytes.toByteArray()));
+            assertSameGame(app, read);
+            assertClocks(read);
+
+            BinaryGameSerializer.Summary summary = BinaryGameSerializer.readSummary(
+                    new ByteArrayInputStream(bytes.toByteArray()));
+            assertEquals(app.getPlyCount(), summary.plies());
+            assertEquals(app.getCurrentTurn(), summary.currentTurn());
+
+            // The position alone, without the moves
+            App position = BinaryGameSerializer.readPosition(new ByteArrayInputStream(bytes.toByteArray()));
+            assertEquals(app.getPositionHash(), position.getPositionHash());
+            assertEquals(app.getCurrentTurn(), position.getCurrentTurn());
+            assertEquals(0, position.getPlyCount());
+        }
+    }
+
+    @Test
+    public void olderVersionsAreRead() throws IOException {
+        App app = RandomGames.play(140, 4);
+
+        for (int version = 1; version <= 3; version++) {
+            byte[] bytes = writeOlderVersion(app, version);
+
+            App read = BinaryGameSerializer.read(new ByteArrayInputStream(bytes));
+            assertSameGame(app, read);
+            assertClocks(read);
+            assertEquals(app.getPlyCount(),
+                    BinaryGameSerializer.readSummary(new ByteArrayInputStream(bytes)).plies());
+            // There is no position to show before the moves are replayed
+            assertNull(BinaryGameSerializer.readPosition(new ByteArrayInputStream(bytes)));
+
+            // Re-encoded in the current version, with the position
+            BinaryGameSerializer.Encoded encoded = BinaryGameSerializer.readEncoded(new ByteArrayInputStream(bytes));
+            assertNotNull(encoded.position());
+            ByteArrayOutputStream current = new ByteArrayOutputStream();
+            BinaryGameSerializer.writeEncoded(encoded, current);
+            assertSameGame(app, BinaryGameSerializer.read(new ByteArrayInputStream(current.toByteArray())));
+        }
+    }
+
+    @Test
+    public void invalidFilesAreRejected() throws IOException {
+        App app = RandomGames.play(20, 4);
+        byte[] bytes = writeOlderVersion(app, 2);
+
+        byte[] newer = bytes.clone();
+        newer[5] = (byte) (BinaryGameSerializer.VERSION + 1);
+        byte[] notAGame = bytes.clone();
+        notAGame[0] = 0;
+        // The first move goes to its own square
+        byte[] invalidMove = bytes.clone();
+        invalidMove[4 + 2 + 1 + 1 + 1 + 32 + 4 + 1] = invalidMove[4 + 2 + 1 + 1 + 1 + 32 + 4];
+        byte[] truncated = java.util.Arrays.copyOf(bytes, bytes.length - 2);
+
+        assertThrows(IOException.class, () -> BinaryGameSerializer.read(new ByteArrayInputStream(newer)));
+        assertThrows(IOException.class, () -> BinaryGameSerializer.read(new ByteArrayInputStream(notAGame)));
+        assertThrows(IOException.class, () -> BinaryGameSerializer.read(new ByteArrayInputStream(invalidMove)));
+        assertThrows(IOException.class, () -> BinaryGameSerializer.read(new ByteArrayInputStream(truncated)));
+    }
+}
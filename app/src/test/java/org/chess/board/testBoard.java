@@ -0,0 +1,177 @@
+package org.chess.board;
+
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.Move.MoveType;
+import org.chess.Pos;
+import org.chess.pieces.King;
+import org.chess.pieces.Knight;
+import org.chess.pieces.Pawn;
+import org.chess.pieces.Piece;
+import org.chess.pieces.Rook;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class testBoard {
+
+    @Test
+    public void captureMovesSkipQuietMoves() {
+        Rook greenRook = new Rook(Color.GREEN);
+        Pawn greenPawn = new Pawn(Color.GREEN);
+        Knight redKnight = new Knight(Color.RED);
+
+        Map<Pos, Piece> state = new HashMap<>();
+        state.put(new Pos(10, 5), greenRook);
+        state.put(new Pos(13, 8), greenPawn);
+        state.put(new Pos(5, 5), redKnight);
+        Board board = new Board(state);
+
+        Collection<Move> captures = board.getCaptureMoves(Color.GREEN);
+
+        assertEquals(1, captures.size());
+        Move capture = captures.iterator().next();
+        assertSame(greenRook, capture.piece());
+        assertEquals(new Pos(5, 5), capture.toPos());
+        assertTrue(board.getAllMoves(Color.GREEN).size() > captures.size());
+    }
+
+    @Test
+    public void captureMovesIncludePromotions() {
+        Pawn greenPawn = new Pawn(Color.GREEN);
+
+        Map<Pos, Piece> state = new HashMap<>();
+        state.put(new Pos(2, 7), greenPawn);
+        Board board = new Board(state);
+
+        Collection<Move> captures = board.getCaptureMoves(Color.GREEN);
+
+        assertEquals(4, captures.size());
+        for (Move move : captures)
+            assertNotEquals(MoveType.SIMPLE_MOVE, move.type());
+    }
+
+    @Test
+    public void positionHashFollowsPlacement() {
+        Rook greenRook = new Rook(Color.GREEN);
+        Knight redKnight = new Knight(Color.RED);
+
+        Map<Pos, Piece> state = new HashMap<>();
+        state.put(new Pos(10, 5), greenRook);
+        state.put(new Pos(5, 5), redKnight);
+        Board board = new Board(state);
+        Board copy = board.copy();
+        assertEquals(board.getPositionHash(), copy.getPositionHash());
+
+        copy.doMove(new Move(greenRook, MoveType.SIMPLE_MOVE, new Pos(5, 5)));
+        assertNotEquals(board.getPositionHash(), copy.getPositionHash());
+
+        Map<Pos, Piece> captured = new HashMap<>();
+        captured.put(new Pos(5, 5), greenRook);
+        assertEquals(new Board(captured).getPositionHash(), copy.getPositionHash());
+    }
+
+    @Test
+    public void undoRestoresCaptureAndPromotion() {
+        Rook greenRook = new Rook(Color.GREEN);
+        Pawn greenPawn = new Pawn(Color.GREEN);
+        Knight redKnight = new Knight(Color.RED);
+
+        Map<Pos, Piece> state = new HashMap<>();
+        state.put(new Pos(10, 5), greenRook);
+        state.put(new Pos(2, 7), greenPawn);
+        state.put(new Pos(5, 5), redKnight);
+        Board board = new Board(state);
+        long hash = board.getPositionHash();
+
+        Move capture = new Move(greenRook, MoveType.SIMPLE_MOVE, new Pos(5, 5));
+        Move promotion = new Move(greenPawn, MoveType.QUEEN_PROMOTION, new Pos(1, 7));
+        board.doMove(capture);
+        board.doMove(promotion);
+
+        assertSame(promotion, board.undo());
+        assertSame(greenPawn, board.getPiece(new Pos(2, 7)));
+        assertNull(board.getPiece(new Pos(1, 7)));
+        assertSame(capture, board.undo());
+        assertSame(redKnight, board.getPiece(new Pos(5, 5)));
+        assertEquals(new Pos(10, 5), board.getPos(greenRook));
+        assertEquals(hash, board.getPositionHash());
+        assertFalse(board.history.movedBefore(greenRook));
+        assertNull(board.undo());
+    }
+
+    @Test
+    public void boardAtPlyReplaysFromCheckpoint() {
+        Rook greenRook = new Rook(Color.GREEN);
+        Knight redKnight = new Knight(Color.RED);
+
+        Map<Pos, Piece> state = new HashMap<>();
+        state.put(new Pos(10, 5), greenRook);
+        state.put(new Pos(5, 8), redKnight);
+        Board board = new Board(state);
+
+        int plies = History.CHECKPOINT_INTERVAL + 3;
+        for (int i = 0; i < plies; i++)
+            board.doMove(new Move(greenRook, MoveType.SIMPLE_MOVE, new Pos(10, i % 2 == 0 ? 6 : 5)));
+
+        Board seek = board.getBoardAt(History.CHECKPOINT_INTERVAL + 1);
+        assertEquals(new Pos(10, 6), seek.getPos(greenRook));
+        assertEquals(History.CHECKPOINT_INTERVAL + 1, seek.history.size());
+        assertEquals(board.getPositionHash(), board.getBoardAt(plies).getPositionHash());
+        assertEquals(new Pos(10, 5), board.getBoardAt(0).getPos(greenRook));
+    }
+
+    @Test
+    public void doCaptureSkipsTheMoveTableUntilUndone() {
+        Rook greenRook = new Rook(Color.GREEN);
+        Knight redKnight = new Knight(Color.RED);
+        Rook redRook = new Rook(Color.RED);
+
+        Map<Pos, Piece> state = new HashMap<>();
+        state.put(new Pos(10, 5), greenRook);
+        state.put(new Pos(5, 5), redKnight);
+        state.put(new Pos(5, 9), redRook);
+        Board board = new Board(state);
+        int greenMoves = board.countMoves(Color.GREEN);
+
+        Move capture = board.getCaptureMoves(Color.GREEN).iterator().next();
+        board.doCapture(capture);
+        assertSame(greenRook, board.getPiece(new Pos(5, 5)));
+        assertThrows(IllegalStateException.class, () -> board.getAllMoves(Color.RED));
+        // Captures still come from the pieces: the red rook can take back.
+        Collection<Move> recaptures = board.getCaptureMoves(Color.RED);
+        assertEquals(1, recaptures.size());
+        assertSame(redRook, recaptures.iterator().next().piece());
+
+        assertSame(capture, board.undo());
+        assertSame(redKnight, board.getPiece(new Pos(5, 5)));
+        assertEquals(greenMoves, board.countMoves(Color.GREEN));
+    }
+
+    @Test
+    public void kingDoesNotTakeDefendedPieces() {
+        Rook greenRook = new Rook(Color.GREEN);
+        King greenKing = new King(Color.GREEN, greenRook, new Rook(Color.GREEN));
+        Knight redKnight = new Knight(Color.RED);
+        Knight redDefender = new Knight(Color.RED);
+        Pawn redPawn = new Pawn(Color.RED);
+
+        Map<Pos, Piece> state = new HashMap<>();
+        state.put(new Pos(10, 7), greenKing);
+        state.put(new Pos(9, 7), redKnight);
+        state.put(new Pos(7, 8), redDefender);
+        state.put(new Pos(10, 8), redPawn);
+        Board board = new Board(state);
+
+        Collection<Move> captures = board.getCaptureMoves(Color.GREEN);
+
+        // The knight on 9,7 is defended by the other one; the pawn is not.
+        assertEquals(1, captures.size());
+        assertEquals(new Pos(10, 8), captures.iterator().next().toPos());
+    }
+}
@@ -0,0 +1,102 @@
+package org.chess.board;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.chess.App;
+import org.chess.Move;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class testJsonGameSerializer {
+
+    /* Random, but reproducible, moves until the game ends or after `plies` moves. */
+    private static App playRandomGame(int plies) {
+        App app = new App();
+        Random random = new Random(7);
+        for (int i = 0; i < plies && !app.isGameOver(); i++) {
+            Board board = app.getBoardSnapshot();
+            List<Move> moves = new ArrayList<>(board.getAllMoves(app.getCurrentTurn()));
+            if (moves.isEmpty())
+                break;
+            moves.sort(Comparator.comparing((Move move) -> board.getPos(move.piece()).toString())
+                    .thenComparing(move -> move.toPos().toString())
+                    .thenComparing(Move::type));
+            app.doMove(moves.get(random.nextInt(moves.size())));
+        }
+        return app;
+    }
+
+    private static void assertSameGame(App expected, App actual) {
+        assertEquals(expected.getPlyCount(), actual.getPlyCount());
+        assertEquals(expected.getCurrentTurn(), actual.getCurrentTurn());
+        assertEquals(expected.getPositionHash(), actual.getPositionHash());
+        Board expectedBoard = expected.getBoardSnapshot();
+        Board actualBoard = actual.getBoardSnapshot();
+        for (int i = 0; i < expected.getPlyCount(); i++) {
+            Ply expectedPly = expectedBoard.history.getPly(i);
+            Ply actualPly = actualBoard.history.getPly(i);
+            assertEquals(expectedPly.getFromPos(), actualPly.getFromPos());
+            assertEquals(expectedPly.getMove().toPos(), actualPly.getMove().toPos());
+            assertEquals(expectedPly.getMove().type(), actualPly.getMove().type());
+        }
+    }
+
+    @Test
+    public void gameSurvivesRoundTrip() throws IOException {
+        App app = playRandomGame(150);
+
+        App imported = new App();
+        JsonGameSerializer.fromJson(imported, JsonGameSerializer.toJson(app));
+
+        assertSameGame(app, imported);
+        assertNotNull(imported.undo());
+    }
+
+    @Test
+    public void fieldsMissingFromOlderExportsAreOptional() throws IOException {
+        App app = playRandomGame(150);
+        JsonObject json = JsonParser.parseString(JsonGameSerializer.toJson(app)).getAsJsonObject();
+        JsonArray moves = json.getAsJsonObject("history").getAsJsonArray("allMoves");
+        for (JsonElement move : moves) {
+            move.getAsJsonObject().remove("captureInfo");
+            move.getAsJsonObject().remove("eliminatedPieces");
+        }
+        // Older exports had no origin square for the moves of promoted pieces
+        moves.get(0).getAsJsonObject().remove("fromPosition");
+
+        App imported = new App();
+        JsonGameSerializer.fromJson(imported, json.toString());
+
+        assertSameGame(app, imported);
+    }
+
+    @Test
+    public void impossibleMoveIsRejected() throws IOException {
+        App app = playRandomGame(20);
+        JsonObject json = JsonParser.parseString(JsonGameSerializer.toJson(app)).getAsJsonObject();
+        JsonObject firstMove = json.getAsJsonObject("history").getAsJsonArray("allMoves").get(0).getAsJsonObject();
+        // From the first move's origin to the square ahead, taken by its own color
+        JsonObject from = firstMove.getAsJsonObject("fromPosition");
+        JsonObject to = firstMove.getAsJsonObject("toPosition");
+        to.addProperty("row", from.get("row").getAsInt() + 1);
+        to.addProperty("column", from.get("column").getAsInt());
+        firstMove.addProperty("moveType", Move.MoveType.SIMPLE_MOVE.name());
+
+        App imported = new App();
+        long hash = imported.getPositionHash();
+
+        assertThrows(IOException.class, () -> JsonGameSerializer.fromJson(imported, json.toString()));
+        assertEquals(hash, imported.getPositionHash());
+        assertEquals(0, imported.getPlyCount());
+    }
+}
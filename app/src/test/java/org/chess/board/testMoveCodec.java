@@ -0,0 +1,77 @@
+package org.chess.board;
+
+import org.chess.App;
+import org.chess.Move;
+import org.chess.RandomGames;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class testMoveCodec {
+
+    private static byte[] encode(App app) throws IOException {
+        History history = app.getBoardSnapshot().history;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MoveCodec.Encoder encoder = new MoveCodec.Encoder(app, bytes);
+        for (int i = 0; i < history.size(); i++)
+            encoder.write(history.getPly(i));
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void movesAreDecodedAsPlayed() throws IOException {
+        App app = RandomGames.play(140, 4);
+        // The game has to exercise the moves that change more than one square
+        assertTrue(RandomGames.count(app, Move.MoveType.KINGSIDE_CASTLING)
+                + RandomGames.count(app, Move.MoveType.QUEENSIDE_CASTLING) > 0);
+        assertTrue(RandomGames.count(app, Move.MoveType.EN_PASSANT) > 0);
+        assertTrue(RandomGames.count(app, Move.MoveType.QUEEN_PROMOTION)
+                + RandomGames.count(app, Move.MoveType.ROOK_PROMOTION)
+                + RandomGames.count(app, Move.MoveType.BISHOP_PROMOTION)
+                + RandomGames.count(app, Move.MoveType.KNIGHT_PROMOTION) > 0);
+
+        History history = app.getBoardSnapshot().history;
+        byte[] bytes = encode(app);
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        MoveCodec.Decoder decoder = new MoveCodec.Decoder(in);
+        for (int i = 0; i < history.size(); i++) {
+            Ply ply = history.getPly(i);
+            MoveCodec.Decoded decoded = decoder.read(ply.getMove().piece().color);
+            assertEquals(BinaryGameSerializer.squareIndex(ply.getFromPos()), decoded.from());
+            assertEquals(BinaryGameSerializer.squareIndex(ply.getMove().toPos()), decoded.to());
+            assertEquals(ply.getMove().type(), decoded.type());
+        }
+        // Nothing left after the last move
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void offsetsSplitTheMoves() throws IOException {
+        App app = RandomGames.play(140, 4);
+        int count = app.getPlyCount();
+        byte[] bytes = encode(app);
+
+        int[] offsets = MoveCodec.moveOffsets(bytes, count);
+        assertEquals(count + 1, offsets.length);
+        assertEquals(0, offsets[0]);
+        assertEquals(bytes.length, offsets[count]);
+        // Each offset is where the decoder stops after the move
+        History history = app.getBoardSnapshot().history;
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        MoveCodec.Decoder decoder = new MoveCodec.Decoder(in);
+        for (int i = 0; i < count; i++) {
+            decoder.read(history.getPly(i).getMove().piece().color);
+            assertEquals(offsets[i + 1], bytes.length - in.available());
+        }
+
+        assertThrows(IOException.class, () -> MoveCodec.moveOffsets(bytes, count + 1));
+        assertThrows(IOException.class, () -> MoveCodec.moveOffsets(bytes, count - 1));
+        assertThrows(IOException.class, () -> MoveCodec.moveOffsets(Arrays.copyOf(bytes, bytes.length - 1), count));
+    }
+}
@@ -0,0 +1,86 @@
+package org.chess.board;
+
+import org.chess.App;
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.Move.MoveType;
+import org.chess.Pos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class testPositionNotation {
+
+    @Test
+    public void initialPositionIsStandard() {
+        App app = new App();
+
+        assertEquals(PositionNotation.STANDARD, PositionNotation.write(app.getBoardSnapshot(), Color.GREEN));
+        assertEquals(PositionNotation.STANDARD, PositionNotation.parse(PositionNotation.STANDARD).toString());
+    }
+
+    @Test
+    public void enPassantAndCastlingSurviveRoundTrip() {
+        App app = new App();
+        Move pawnDouble = app.getBoardSnapshot().getAllMoves(Color.GREEN).stream()
+                .filter(move -> move.type() == MoveType.PAWN_DOUBLE).findFirst().orElseThrow();
+        app.doMove(pawnDouble);
+        Board board = app.getBoardSnapshot();
+
+        PositionNotation.Position position = PositionNotation.of(board, app.getCurrentTurn());
+        Board rebuilt = PositionNotation.parse(position.toString()).toBoard();
+
+        assertEquals(position, PositionNotation.of(rebuilt, app.getCurrentTurn()));
+        assertEquals(board.getPositionHash(), rebuilt.getPositionHash());
+        assertEquals(0, rebuilt.history.size());
+        assertTrue(position.canCastle(Color.GREEN, true));
+        assertFalse(position.toString().endsWith(" - -"));
+    }
+
+    @Test
+    public void enPassantCanBeTakenOnRebuiltBoard() {
+        // Random, but reproducible, moves until someone can take en passant
+        App app = new App();
+        Random random = new Random(3);
+        Move enPassant = null;
+        while (enPassant == null) {
+            if (app.isGameOver())
+                app = new App();
+            List<Move> moves = new ArrayList<>(app.getBoardSnapshot().getAllMoves(app.getCurrentTurn()));
+            enPassant = moves.stream().filter(move -> move.type() == MoveType.EN_PASSANT).findFirst().orElse(null);
+            if (enPassant == null)
+                app.doMove(moves.get(random.nextInt(moves.size())));
+        }
+        Board board = app.getBoardSnapshot();
+        String text = PositionNotation.write(board, app.getCurrentTurn());
+
+        Board rebuilt = PositionNotation.parse(text).toBoard();
+        Pos from = board.getPos(enPassant.piece());
+        Pos to = enPassant.toPos();
+        Move rebuiltEnPassant = rebuilt.getReadonlyMoves(rebuilt.getPiece(from)).stream()
+                .filter(move -> move.type() == MoveType.EN_PASSANT && move.toPos().equals(to))
+                .findFirst().orElseThrow();
+        rebuilt.doMove(rebuiltEnPassant);
+        assertEquals(1, rebuilt.history.size());
+        assertNotNull(rebuilt.undo());
+
+        assertEquals(0, rebuilt.history.size());
+        assertEquals(text, PositionNotation.write(rebuilt, app.getCurrentTurn()));
+    }
+
+    @Test
+    public void invalidNotationIsRejected() {
+        String noKing = PositionNotation.STANDARD.replace("gKgQgB", "gQgQgB");
+        String castlingWithoutRook = PositionNotation.STANDARD.replaceFirst("gRgN", "1gN");
+
+        assertThrows(IllegalArgumentException.class, () -> PositionNotation.parse(""));
+        assertThrows(IllegalArgumentException.class, () -> PositionNotation.parse(noKing));
+        assertThrows(IllegalArgumentException.class, () -> PositionNotation.parse(castlingWithoutRook));
+        assertThrows(IllegalArgumentException.class, () -> PositionNotation.parse(PositionNotation.STANDARD + " "));
+    }
+}
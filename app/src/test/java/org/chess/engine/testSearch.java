@@ -0,0 +1,65 @@
+package org.chess.engine;
+
+import org.chess.Color;
+import org.chess.Move;
+import org.chess.Pos;
+import org.chess.board.Board;
+import org.chess.pieces.King;
+import org.chess.pieces.Pawn;
+import org.chess.pieces.Piece;
+import org.chess.pieces.Queen;
+import org.chess.pieces.Rook;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class testSearch {
+
+    @Test
+    public void takesHangingPiece() {
+        Queen greenQueen = new Queen(Color.GREEN);
+        Queen redQueen = new Queen(Color.RED);
+
+        Map<Pos, Piece> state = new HashMap<>();
+        state.put(new Pos(10, 7), greenQueen);
+        state.put(new Pos(5, 7), redQueen);
+        addKings(state);
+        Board board = new Board(state);
+
+        Move move = new Search(Color.GREEN).findBestMove(board, 1);
+
+        assertEquals(new Pos(5, 7), move.toPos());
+    }
+
+    @Test
+    public void quiescenceSeesRecapture() {
+        // Taking the pawn loses the queen to the red pawn, so the quiescence
+        // search must avoid it even at depth 1.
+        Queen greenQueen = new Queen(Color.GREEN);
+        Pawn redPawn = new Pawn(Color.RED);
+        Pawn redDefender = new Pawn(Color.RED);
+
+        Map<Pos, Piece> state = new HashMap<>();
+        state.put(new Pos(10, 7), greenQueen);
+        state.put(new Pos(5, 7), redPawn);
+        state.put(new Pos(4, 8), redDefender);
+        addKings(state);
+        Board board = new Board(state);
+
+        Move move = new Search(Color.GREEN).findBestMove(board, 1);
+
+        assertNotEquals(new Pos(5, 7), move.toPos());
+    }
+
+    /* Kings away from the action, so that no color counts as eliminated. */
+    private static void addKings(Map<Pos, Piece> state) {
+        state.put(new Pos(14, 11), new King(Color.GREEN, new Rook(Color.GREEN), new Rook(Color.GREEN)));
+        state.put(new Pos(1, 4), new King(Color.RED, new Rook(Color.RED), new Rook(Color.RED)));
+        state.put(new Pos(11, 1), new King(Color.YELLOW, new Rook(Color.YELLOW), new Rook(Color.YELLOW)));
+        state.put(new Pos(4, 14), new King(Color.BLUE, new Rook(Color.BLUE), new Rook(Color.BLUE)));
+    }
+}
@@ -0,0 +1,90 @@
+package org.chess.persistence;
+
+import org.chess.App;
+import org.chess.RandomGames;
+import org.chess.board.BinaryGameSerializer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class testGameArchive {
+
+    @Test
+    public void gamesAreLoadedOneByOne() throws IOException {
+        Path file = Files.createTempDirectory("game-archive").resolve("games.archive");
+        List<App> games = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            games.add(RandomGames.play(20 + 30 * i, i));
+
+        try (GameArchive archive = new GameArchive(file)) {
+            for (int i = 0; i < games.size(); i++)
+                archive.append("game-" + i, games.get(i), 1000 + i);
+            assertEquals(5, archive.size());
+
+            // In any order, each game from its own bytes only
+            for (int i = games.size() - 1; i >= 0; i--) {
+                App loaded = archive.load("game-" + i);
+                assertEquals(games.get(i).getPlyCount(), loaded.getPlyCount());
+                assertEquals(games.get(i).getPositionHash(), loaded.getPositionHash());
+
+                GameArchive.Entry entry = archive.getEntry("game-" + i);
+                assertEquals(games.get(i).getPlyCount(), entry.plies());
+                assertEquals(1000 + i, entry.startedMillis());
+                assertEquals(entry.plies(), BinaryGameSerializer.readSummary(archive.openGame("game-" + i)).plies());
+            }
+            assertNull(archive.load("missing"));
+            assertNull(archive.openGame("missing"));
+            assertNull(archive.getEntry("missing"));
+        }
+    }
+
+    @Test
+    public void entriesSurviveReopening() throws IOException {
+        Path file = Files.createTempDirectory("game-archive").resolve("games.archive");
+        App first = RandomGames.play(40, 1);
+        App second = RandomGames.play(60, 2);
+        try (GameArchive archive = new GameArchive(file)) {
+            archive.append("first", first, 1);
+        }
+        try (GameArchive archive = new GameArchive(file)) {
+            assertEquals(1, archive.size());
+            archive.append("second", second, 2);
+        }
+
+        try (GameArchive archive = new GameArchive(file)) {
+            List<GameArchive.Entry> entries = archive.getEntries();
+            assertEquals(2, entries.size());
+            assertEquals("first", entries.get(0).gameId());
+            assertEquals("second", entries.get(1).gameId());
+            // The second game's data comes right after the first one's
+            assertEquals(entries.get(0).offset() + entries.get(0).length(), entries.get(1).offset());
+            assertEquals(first.getPositionHash(), archive.load("first").getPositionHash());
+            assertEquals(second.getPositionHash(), archive.load("second").getPositionHash());
+        }
+    }
+
+    @Test
+    public void invalidAppendsAreRejected() throws IOException {
+        Path file = Files.createTempDirectory("game-archive").resolve("games.archive");
+        App game = RandomGames.play(10, 1);
+        try (GameArchive archive = new GameArchive(file)) {
+            archive.append("game", game, 0);
+            assertThrows(IllegalArgumentException.class, () -> archive.append("game", game, 0));
+            assertThrows(IllegalArgumentException.class, () -> archive.append("", game, 0));
+            assertThrows(IllegalArgumentException.class,
+                    () -> archive.append("x".repeat(GameArchive.MAX_ID_BYTES + 1), game, 0));
+            assertEquals(1, archive.size());
+        }
+
+        Path other = file.resolveSibling("other");
+        Files.write(other, new byte[100]);
+        assertThrows(IOException.class, () -> new GameArchive(other));
+    }
+}
@@ -0,0 +1,200 @@
+package org.chess.persistence;
+
+import org.chess.App;
+import org.chess.Color;
+import org.chess.RandomGames;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class testGameStore {
+
+    @Test
+    public void referencesAreAppendedAndReplayed() throws IOException {
+        Path directory = Files.createTempDirectory("game-store");
+        App first = RandomGames.play(40, 1);
+        App longer = RandomGames.play(70, 1);
+
+        try (GameStore store = new GameStore(directory)) {
+            store.save("a", first);
+            store.save("b", first);
+            long refBytes = store.getStats().refBytes();
+            // Each save only appends its own record
+            store.save("a", longer);
+            assertTrue(store.getStats().refBytes() > refBytes);
+            assertTrue(store.delete("b"));
+            assertFalse(store.delete("b"));
+        }
+
+        try (GameStore store = new GameStore(directory)) {
+            assertEquals(1, store.getRefs().size());
+            assertEquals(70, store.getRef("a").plies());
+            assertNull(store.getRef("b"));
+            assertEquals(longer.getPositionHash(), store.load("a").getPositionHash());
+
+            long refBytes = store.getStats().refBytes();
+            assertTrue(store.compact() > 0);
+            assertTrue(store.getStats().refBytes() < refBytes);
+            assertEquals(longer.getPositionHash(), store.load("a").getPositionHash());
+        }
+    }
+
+    @Test
+    public void tornReferenceRecordIsCut() throws IOException {
+        Path directory = Files.createTempDirectory("game-store");
+        App game = RandomGames.play(40, 2);
+        try (GameStore store = new GameStore(directory)) {
+            store.save("a", game);
+        }
+        long size = Files.size(directory.resolve("refs"));
+        // Half a record, as left by an interrupted save
+        try (OutputStream out = Files.newOutputStream(directory.resolve("refs"), StandardOpenOption.APPEND)) {
+            out.write(new byte[] { 0, 0, 0, 100, 1, 2, 3 });
+        }
+
+        try (GameStore store = new GameStore(directory)) {
+            assertEquals(size, Files.size(directory.resolve("refs")));
+            assertEquals(40, store.getRef("a").plies());
+            store.save("b", game);
+        }
+        try (GameStore store = new GameStore(directory)) {
+            assertEquals(2, store.getRefs().size());
+        }
+    }
+
+    @Test
+    public void snapshotOfOlderVersionIsRewrittenAsLog() throws IOException {
+        Path directory = Files.createTempDirectory("game-store");
+        // Version 2: every reference at once, here a game without moves
+        try (DataOutputStream data = new DataOutputStream(Files.newOutputStream(directory.resolve("refs")))) {
+            data.writeInt(GameStore.MAGIC);
+            data.writeShort(2);
+            data.writeInt(1);
+            data.writeUTF("new");
+            data.writeLong(0);
+            data.writeLong(0);
+            data.writeInt(0);
+            data.writeInt(0);
+            data.writeByte(Color.GREEN.ordinal());
+            data.writeByte(0);
+            for (int i = 0; i < 4; i++)
+                data.writeLong(App.DEFAULT_TIME_NANOSECS);
+            data.writeLong(0);
+            data.writeUTF("");
+        }
+
+        try (GameStore store = new GameStore(directory)) {
+            assertEquals(0, store.getRef("new").plies());
+            store.save("other", RandomGames.play(10, 3));
+        }
+        try (GameStore store = new GameStore(directory)) {
+            assertEquals(2, store.getRefs().size());
+            assertEquals(0, store.load("new").getPlyCount());
+        }
+    }
+
+    @Test
+    public void gamesWithACommonPrefixShareChunks() throws IOException {
+        Path directory = Files.createTempDirectory("game-store");
+        // The same seed plays the same moves, so the shorter game is a prefix
+        App shorter = RandomGames.play(100, 7);
+        App longer = RandomGames.play(150, 7);
+        assertEquals(150, longer.getPlyCount());
+
+        try (GameStore store = new GameStore(directory)) {
+            store.save("shorter", shorter);
+            assertEquals(4, store.getStats().chunks());
+            long chunkBytes = store.getStats().chunkBytes();
+
+            // Another name for the same game adds no chunk
+            store.save("copy", shorter);
+            assertEquals(chunkBytes, store.getStats().chunkBytes());
+            assertEquals(store.getRef("shorter").gameHash(), store.getRef("copy").gameHash());
+
+            // Only the chunks after the three full ones in common are added
+            store.save("longer", longer);
+            assertEquals(6, store.getStats().chunks());
+            assertNotEquals(store.getRef("shorter").gameHash(), store.getRef("longer").gameHash());
+            assertEquals(shorter.getPositionHash(), store.load("copy").getPositionHash());
+            assertEquals(longer.getPositionHash(), store.load("longer").getPositionHash());
+        }
+    }
+
+    @Test
+    public void compactDropsChunksNoNameReaches() throws IOException {
+        Path directory = Files.createTempDirectory("game-store");
+        App shorter = RandomGames.play(100, 7);
+        App longer = RandomGames.play(150, 7);
+        App other = RandomGames.play(50, 8);
+
+        try (GameStore store = new GameStore(directory)) {
+            store.save("game", shorter);
+            store.save("other", other);
+            // The shorter game's partial last chunk and the other game are left behind
+            store.save("game", longer);
+            assertTrue(store.delete("other"));
+            assertEquals(8, store.getStats().chunks());
+
+            long chunkBytes = store.getStats().chunkBytes();
+            long freed = store.compact();
+            assertEquals(5, store.getStats().chunks());
+            assertTrue(freed > chunkBytes - store.getStats().chunkBytes());
+            assertEquals(longer.getPositionHash(), store.load("game").getPositionHash());
+            // Nothing left to free
+            assertEquals(0, store.compact());
+        }
+        try (GameStore store = new GameStore(directory)) {
+            assertEquals(5, store.getStats().chunks());
+            assertEquals(longer.getPositionHash(), store.load("game").getPositionHash());
+        }
+    }
+
+    @Test
+    public void damagedChunkLogIsCut() throws IOException {
+        Path directory = Files.createTempDirectory("game-store");
+        App shorter = RandomGames.play(40, 9);
+        App longer = RandomGames.play(100, 9);
+        try (GameStore store = new GameStore(directory)) {
+            store.save("shorter", shorter);
+            store.save("longer", longer);
+        }
+        Path chunks = directory.resolve("chunks");
+        long size = Files.size(chunks);
+
+        // Half a chunk, as left by an interrupted save
+        try (OutputStream out = Files.newOutputStream(chunks, StandardOpenOption.APPEND)) {
+            out.write(new byte[] { 1, 2, 3, 4, 5 });
+        }
+        try (GameStore store = new GameStore(directory)) {
+            assertEquals(size, Files.size(chunks));
+            assertEquals(2, store.getRefs().size());
+        }
+
+        // A damaged byte in the longer game's last chunk loses that game only
+        try (FileChannel channel = FileChannel.open(chunks, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, size - 1);
+            last.put(0, (byte) (last.get(0) ^ 0xFF)).position(0);
+            channel.write(last, size - 1);
+        }
+        try (GameStore store = new GameStore(directory)) {
+            assertTrue(Files.size(chunks) < size);
+            assertNull(store.getRef("longer"));
+            assertEquals(shorter.getPositionHash(), store.load("shorter").getPositionHash());
+            store.save("longer", longer);
+        }
+        try (GameStore store = new GameStore(directory)) {
+            assertEquals(longer.getPositionHash(), store.load("longer").getPositionHash());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.chess.persistence;
+
+import org.chess.App;
+import org.chess.Move;
+import org.chess.RandomGames;
+import org.chess.board.Board;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class testMoveJournal {
+
+    /* Any legal move will do; the first in a fixed order keeps the test reproducible. */
+    private static void doFirstMove(App app) {
+        Board board = app.getBoardSnapshot();
+        Move move = board.getAllMoves(app.getCurrentTurn()).stream()
+                .min(Comparator.comparing((Move m) -> board.getPos(m.piece()).toString())
+                        .thenComparing(m -> m.toPos().toString())
+                        .thenComparing(Move::type))
+                .orElseThrow();
+        app.doMove(move);
+    }
+
+    @Test
+    public void undoRecordsAreReplayed() throws Exception {
+        Path directory = Files.createTempDirectory("move-journal");
+        App app = RandomGames.play(30, 5);
+        try (MoveJournal journal = new MoveJournal(directory)) {
+            // The moves before the attach are written at once
+            journal.attach("game", app);
+            doFirstMove(app);
+            doFirstMove(app);
+            assertNotNull(app.undo());
+            assertNotNull(app.undo());
+            assertNotNull(app.undo());
+            doFirstMove(app);
+            journal.flush().get(10, TimeUnit.SECONDS);
+
+            App recovered = MoveJournal.recover(journal.getFile("game"));
+            assertEquals(app.getPlyCount(), recovered.getPlyCount());
+            assertEquals(app.getPositionHash(), recovered.getPositionHash());
+            assertEquals(app.getCurrentTurn(), recovered.getCurrentTurn());
+
+            // An undo that reaches the moves written by the attach
+            for (int i = 0; i < 5; i++)
+                app.undo();
+            journal.flush().get(10, TimeUnit.SECONDS);
+            recovered = MoveJournal.recover(journal.getFile("game"));
+            assertEquals(app.getPlyCount(), recovered.getPlyCount());
+            assertEquals(app.getPositionHash(), recovered.getPositionHash());
+        }
+    }
+
+    @Test
+    public void tornTailIsIgnored() throws Exception {
+        Path directory = Files.createTempDirectory("move-journal");
+        App app = new App();
+        Path file;
+        try (MoveJournal journal = new MoveJournal(directory)) {
+            journal.attach("game", app);
+            for (int i = 0; i < 12; i++)
+                doFirstMove(app);
+            file = journal.getFile("game");
+        }
+        // Half a move record, as left by a crash while writing
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+            out.write(new byte[] { 1, 20, 34, 0, 0 });
+        }
+
+        App recovered = MoveJournal.recover(file);
+        assertEquals(12, recovered.getPlyCount());
+        assertEquals(app.getPositionHash(), recovered.getPositionHash());
+
+        // The next attach rewrites the file without it
+        try (MoveJournal journal = new MoveJournal(directory)) {
+            journal.attach("game", recovered);
+            doFirstMove(recovered);
+            journal.flush().get(10, TimeUnit.SECONDS);
+            assertEquals(13, MoveJournal.recover(file).getPlyCount());
+        }
+    }
+
+    @Test
+    public void invalidJournalsAreRejected() throws IOException {
+        Path file = Files.createTempFile("move-journal", MoveJournal.EXTENSION);
+        Files.write(file, new byte[] { 1, 2, 3, 4, 0, 1 });
+        assertThrows(IOException.class, () -> MoveJournal.recover(file));
+
+        // A valid header followed by an unknown record
+        Files.write(file, new byte[] { 0x43, 0x34, 0x4A, 0x52, 0, 1, 7 });
+        assertThrows(IOException.class, () -> MoveJournal.recover(file));
+    }
+}
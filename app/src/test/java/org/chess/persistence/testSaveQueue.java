@@ -0,0 +1,79 @@
+package org.chess.persistence;
+
+import org.chess.App;
+import org.chess.Move;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class testSaveQueue {
+
+    /* A store that fails with a runtime exception for the game "broken". */
+    private static class FailingStore extends GameStore {
+        FailingStore(Path directory) throws IOException {
+            super(directory);
+        }
+
+        @Override
+        public Ref put(String name, InputStream save) throws IOException {
+            if (name.equals("broken"))
+                throw new IllegalStateException("store is broken");
+            return super.put(name, save);
+        }
+    }
+
+    private static App gameWithOneMove() {
+        App app = new App();
+        Move move = app.getBoardSnapshot().getAllMoves(app.getCurrentTurn()).iterator().next();
+        app.doMove(move);
+        return app;
+    }
+
+    @Test
+    public void runtimeFailureOnlyFailsItsSave() throws Exception {
+        try (GameStore store = new FailingStore(Files.createTempDirectory("save-queue"));
+                SaveQueue saves = new SaveQueue(store)) {
+            App app = gameWithOneMove();
+
+            SaveQueue.Ticket broken = saves.save("broken", app);
+            assertThrows(ExecutionException.class, () -> broken.getCompletion().get(10, TimeUnit.SECONDS));
+            assertEquals(SaveQueue.Status.FAILED, broken.getStatus());
+            assertEquals("store is broken", broken.getError());
+
+            // The writer thread is still alive
+            SaveQueue.Ticket saved = saves.save("saved", app);
+            saves.flush().get(10, TimeUnit.SECONDS);
+            assertEquals(SaveQueue.Status.DONE, saved.getStatus());
+            assertEquals(1, store.getRef("saved").plies());
+            assertEquals(1, saves.getStats().errors());
+        }
+    }
+
+    @Test
+    public void failingListenerDoesNotFailTheSave() throws Exception {
+        try (GameStore store = new GameStore(Files.createTempDirectory("save-queue"));
+                SaveQueue saves = new SaveQueue(store)) {
+            saves.addListener(name -> {
+                throw new IllegalStateException("listener is broken");
+            });
+            App app = gameWithOneMove();
+
+            SaveQueue.Ticket first = saves.save("first", app);
+            first.getCompletion().get(10, TimeUnit.SECONDS);
+            SaveQueue.Ticket second = saves.save("second", app);
+            saves.flush().get(10, TimeUnit.SECONDS);
+
+            assertEquals(SaveQueue.Status.DONE, first.getStatus());
+            assertEquals(SaveQueue.Status.DONE, second.getStatus());
+            assertEquals(2, store.getRefs().size());
+        }
+    }
+}
@@ -62,6 +62,10 @@ public class testKing {
         when(getPiece.apply(any(Pos.class))).thenReturn(null);
         when(getPos.apply(eq(redKing))).thenReturn(redKingPos);
         when(getPos.apply(eq(greenKing))).thenReturn(greenKingPos);
+        when(getPos.apply(eq(greenKingRook))).thenReturn(new Pos(14, 4));
+        when(getPos.apply(eq(greenQueenRook))).thenReturn(new Pos(14, 11));
+        when(getPos.apply(eq(redKingRook))).thenReturn(new Pos(1, 4));
+        when(getPos.apply(eq(redQueenRook))).thenReturn(new Pos(1, 11));
         when(getDangerMap.apply(any(Color.class))).thenReturn((Predicate<Pos>) pos -> false);
         when(movedBefore.test(greenKing)).thenReturn(false);
         when(movedBefore.test(redKing)).thenReturn(false);
@@ -0,0 +1,131 @@
+package org.chess;
+
+import org.chess.Move.MoveType;
+import org.chess.board.BinaryGameSerializer;
+import org.chess.board.Board;
+import org.chess.pieces.King;
+import org.chess.pieces.Pawn;
+import org.chess.pieces.Piece;
+import org.chess.pieces.Queen;
+import org.chess.pieces.Rook;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class testApp {
+
+    @Test
+    public void redoKeepsThePromotedPiece() {
+        Pawn greenPawn = new Pawn(Color.GREEN);
+        King greenKing = new King(Color.GREEN, new Rook(Color.GREEN), new Rook(Color.GREEN));
+        King redKing = new King(Color.RED, new Rook(Color.RED), new Rook(Color.RED));
+
+        Map<Pos, Piece> state = new HashMap<>();
+        state.put(new Pos(2, 7), greenPawn);
+        state.put(new Pos(14, 7), greenKing);
+        state.put(new Pos(8, 8), redKing);
+        Map<Color, Player> players = new EnumMap<>(Color.class);
+        for (Color color : Color.values())
+            players.put(color, new Player(new Clock(App.DEFAULT_TIME_NANOSECS), color));
+        App app = new App(new Board(state), players, Color.GREEN, false);
+
+        app.doMove(new Move(greenPawn, MoveType.QUEEN_PROMOTION, new Pos(1, 7)));
+        Piece queen = app.getPiece(new Pos(1, 7));
+        assertTrue(queen instanceof Queen);
+        app.doMove(new Move(redKing, MoveType.SIMPLE_MOVE, new Pos(8, 9)));
+        Move queenMove = new Move(queen, MoveType.SIMPLE_MOVE, new Pos(1, 6));
+        app.doMove(queenMove);
+
+        for (int i = 0; i < 3; i++)
+            assertNotNull(app.undo());
+        assertSame(greenPawn, app.getPiece(new Pos(2, 7)));
+        assertNull(app.getPiece(new Pos(1, 7)));
+
+        for (int i = 0; i < 3; i++)
+            assertNotNull(app.redo());
+        assertNull(app.redo());
+        assertSame(queen, app.getPiece(new Pos(1, 6)));
+        assertEquals(new Pos(8, 9), app.getBoardSnapshot().getPos(redKing));
+        assertEquals(3, app.getPlyCount());
+        assertEquals(3, app.getBoardSnapshot().history.size());
+        assertEquals(Color.RED, app.getCurrentTurn());
+    }
+
+    @Test
+    public void rejectedMoveLeavesNoHistory() {
+        Pawn greenPawn = new Pawn(Color.GREEN);
+        King greenKing = new King(Color.GREEN, new Rook(Color.GREEN), new Rook(Color.GREEN));
+        King redKing = new King(Color.RED, new Rook(Color.RED), new Rook(Color.RED));
+
+        Map<Pos, Piece> state = new HashMap<>();
+        state.put(new Pos(2, 7), greenPawn);
+        state.put(new Pos(14, 7), greenKing);
+        state.put(new Pos(8, 8), redKing);
+        Board board = new Board(state);
+        long hash = board.getPositionHash();
+
+        Queen stranger = new Queen(Color.GREEN);
+        assertThrows(IllegalArgumentException.class,
+                () -> board.doMove(new Move(stranger, MoveType.SIMPLE_MOVE, new Pos(1, 6))));
+        assertThrows(IllegalArgumentException.class,
+                () -> board.doMove(new Move(greenKing, MoveType.SIMPLE_MOVE, new Pos(2, 7))));
+        assertEquals(0, board.history.size());
+        assertEquals(hash, board.getPositionHash());
+    }
+
+    private static byte[] save(App app) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryGameSerializer.write(app, bytes);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void loadShowsThePositionBeforeTheHistory() throws Exception {
+        App saved = RandomGames.play(140, 4);
+        App app = RandomGames.play(10, 1);
+
+        app.loadGame(new ByteArrayInputStream(save(saved)));
+        // The position is there at once; the history is replayed in the background
+        assertEquals(saved.getPositionHash(), app.getPositionHash());
+        assertEquals(saved.getCurrentTurn(), app.getCurrentTurn());
+
+        app.whenHistoryReady().get(30, TimeUnit.SECONDS);
+        assertTrue(app.isHistoryLoaded());
+        assertEquals(saved.getPlyCount(), app.getPlyCount());
+        assertEquals(saved.getPositionHash(), app.getPositionHash());
+        assertNotNull(app.undo());
+    }
+
+    @Test
+    public void failedHistoryRestoresThePreviousGame() throws Exception {
+        App saved = RandomGames.play(140, 4);
+        App app = RandomGames.play(10, 1);
+        long previousHash = app.getPositionHash();
+        Color previousTurn = app.getCurrentTurn();
+        // The position reads fine, but the moves end early
+        byte[] save = save(saved);
+        byte[] truncated = Arrays.copyOf(save, save.length - 3);
+
+        app.loadGame(new ByteArrayInputStream(truncated));
+        assertEquals(saved.getPositionHash(), app.getPositionHash());
+
+        app.whenHistoryReady().get(30, TimeUnit.SECONDS);
+        assertTrue(app.isHistoryLoaded());
+        assertEquals(previousHash, app.getPositionHash());
+        assertEquals(previousTurn, app.getCurrentTurn());
+        assertEquals(10, app.getPlyCount());
+        // The restored game goes on as before
+        assertNotNull(app.undo());
+        assertEquals(9, app.getPlyCount());
+    }
+}